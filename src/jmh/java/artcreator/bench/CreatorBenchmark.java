@@ -0,0 +1,70 @@
+package artcreator.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import artcreator.creator.impl.CreatorImpl;
+import artcreator.domain.DomainFacade;
+import artcreator.domain.port.TransformCommand;
+import artcreator.statemachine.StateMachineFacade;
+
+/**
+ * One {@code applyTransformation} followed by {@code undoLastTransformation}
+ * on a session holding an imported image, rendered eagerly or lazily.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreatorBenchmark {
+
+	@Param({ "640x480", "1920x1080", "4000x3000" })
+	public String size;
+
+	@Param({ "rotate_left", "mirror_horizontal", "crop_center" })
+	public String operation;
+
+	@Param({ "false", "true" })
+	public boolean lazy;
+
+	private CreatorImpl creator;
+	private File file;
+	private TransformCommand command;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.file = SyntheticImages.write(this.size, "INT_RGB", "png");
+		StateMachineFacade stateMachine = new StateMachineFacade();
+		this.creator = new CreatorImpl(stateMachine.stateMachine(), new DomainFacade().domain());
+		this.creator.importImage(this.file.getPath());
+		this.creator.setLazy(this.lazy);
+		this.command = TransformCommand.parse(this.operation);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	@Benchmark
+	public Object applyAndUndo() {
+		this.creator.applyTransformation(this.command);
+		return this.creator.undoLastTransformation();
+	}
+}
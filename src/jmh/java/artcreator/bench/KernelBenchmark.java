@@ -0,0 +1,109 @@
+package artcreator.bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import artcreator.domain.kernel.PixelKernels;
+import artcreator.domain.port.Palette;
+
+/**
+ * Scalar against vector {@link PixelKernels}, each kernel over a whole
+ * synthetic image (or its pixels as cell colors).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+	@Param({ "scalar", "vector" })
+	public String kernels;
+
+	@Param({ "640x480", "1920x1080" })
+	public String size;
+
+	// grid columns for sumCells, i.e. cells of width / columns pixels
+	@Param({ "40", "200" })
+	public int columns;
+
+	private PixelKernels kernel;
+	private int width, height;
+	private int[] pixels;
+	private int[] x0, x1;
+	private long[] red, green, blue;
+	private float[] lab;
+	private int[] reds, greens, blues, nearest;
+	private int[] half;
+
+	@Setup
+	public void setUp() {
+		this.kernel = "vector".equals(this.kernels) ? PixelKernels.vector() : PixelKernels.scalar();
+		BufferedImage image = SyntheticImages.create(this.size, "INT_RGB");
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		this.x0 = new int[this.columns];
+		this.x1 = new int[this.columns];
+		for (int c = 0; c < this.columns; c++) {
+			this.x0[c] = c * this.width / this.columns;
+			this.x1[c] = (c + 1) * this.width / this.columns;
+		}
+		this.red = new long[this.columns];
+		this.green = new long[this.columns];
+		this.blue = new long[this.columns];
+		this.lab = new float[3 * this.pixels.length];
+		int[] colors = Palette.DEFAULT.getColors();
+		this.reds = new int[colors.length];
+		this.greens = new int[colors.length];
+		this.blues = new int[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			this.reds[i] = (colors[i] >> 16) & 0xFF;
+			this.greens[i] = (colors[i] >> 8) & 0xFF;
+			this.blues[i] = colors[i] & 0xFF;
+		}
+		this.nearest = new int[this.pixels.length];
+		this.half = new int[(this.width / 2) * (this.height / 2)];
+	}
+
+	@Benchmark
+	public long[] sumCells() {
+		for (int y = 0; y < this.height; y++) {
+			this.kernel.sumCells(this.pixels, y * this.width, this.x0, this.x1, this.red, this.green, this.blue);
+		}
+		return this.red;
+	}
+
+	@Benchmark
+	public float[] toLab() {
+		this.kernel.toLab(this.pixels, 0, this.pixels.length, this.lab);
+		return this.lab;
+	}
+
+	@Benchmark
+	public int[] nearestRgb() {
+		this.kernel.nearestRgb(this.pixels, 0, this.pixels.length, this.reds, this.greens, this.blues, this.nearest,
+				0);
+		return this.nearest;
+	}
+
+	@Benchmark
+	public int[] halve() {
+		this.kernel.halve(this.pixels, 0, this.width, this.half, 0, this.width / 2, this.width / 2, this.height / 2);
+		return this.half;
+	}
+}
@@ -0,0 +1,64 @@
+package artcreator.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import artcreator.domain.impl.DomainImpl;
+
+/**
+ * {@code DomainImpl.loadImage} of encoded files, with the decoded-image cache
+ * disabled (every call decodes) and enabled (repeat imports).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+	@Param({ "640x480", "1920x1080", "4000x3000" })
+	public String size;
+
+	@Param({ "png", "jpg" })
+	public String format;
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	private DomainImpl domain;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.file = SyntheticImages.write(this.size, "INT_RGB", this.format);
+		this.domain = new DomainImpl();
+		if (!this.cached) {
+			this.domain.setImageCacheBudget(0);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	@Benchmark
+	public Object loadImage() throws Exception {
+		return this.domain.loadImage(this.file.getPath());
+	}
+}
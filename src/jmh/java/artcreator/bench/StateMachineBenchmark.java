@@ -0,0 +1,56 @@
+package artcreator.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import artcreator.statemachine.StateMachineFacade;
+import artcreator.statemachine.port.State.S;
+import artcreator.statemachine.port.StateMachine;
+import artcreator.statemachine.port.Subject;
+
+/**
+ * {@code setState} through the state machine facade, notifying a growing
+ * number of observers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StateMachineBenchmark {
+
+	@Param({ "1", "8", "64" })
+	public int observers;
+
+	private StateMachine stateMachine;
+	private boolean toggle;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		StateMachineFacade facade = new StateMachineFacade();
+		this.stateMachine = facade.stateMachine();
+		Subject subject = facade.subject();
+		for (int i = 0; i < this.observers; i++) {
+			subject.attach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public boolean setState() {
+		this.toggle = !this.toggle;
+		return this.stateMachine.setState(this.toggle ? S.ImageLoaded : S.Processing);
+	}
+}
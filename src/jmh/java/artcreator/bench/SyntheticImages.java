@@ -0,0 +1,66 @@
+package artcreator.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Deterministic test images for the benchmarks: gradients with some noise,
+ * so that encoders and palette matching see realistic, non-uniform content.
+ */
+final class SyntheticImages {
+
+	private SyntheticImages() {
+	}
+
+	/**
+	 * @param size "WIDTHxHEIGHT", e.g. "1920x1080"
+	 * @param type INT_RGB, INT_ARGB, 3BYTE_BGR or BYTE_GRAY
+	 */
+	static BufferedImage create(String size, String type) {
+		String[] wh = size.split("x");
+		int w = Integer.parseInt(wh[0]);
+		int h = Integer.parseInt(wh[1]);
+		BufferedImage image = new BufferedImage(w, h, imageType(type));
+		SplittableRandom random = new SplittableRandom(42);
+		int[] row = new int[w];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int r = x * 255 / w;
+				int g = y * 255 / h;
+				int b = (r + g) / 2 + random.nextInt(32);
+				row[x] = 0xFF000000 | (r << 16) | (g << 8) | Math.min(255, b);
+			}
+			image.setRGB(0, y, w, 1, row, 0, w);
+		}
+		return image;
+	}
+
+	/** Writes a synthetic image as a temp file in the given format ("png" or "jpg"). */
+	static File write(String size, String type, String format) throws IOException {
+		File file = File.createTempFile("artcreator-bench", "." + format);
+		file.deleteOnExit();
+		if (!ImageIO.write(create(size, type), format, file)) {
+			throw new IOException("No writer for " + format + " and " + type);
+		}
+		return file;
+	}
+
+	static int imageType(String type) {
+		switch (type) {
+		case "INT_RGB":
+			return BufferedImage.TYPE_INT_RGB;
+		case "INT_ARGB":
+			return BufferedImage.TYPE_INT_ARGB;
+		case "3BYTE_BGR":
+			return BufferedImage.TYPE_3BYTE_BGR;
+		case "BYTE_GRAY":
+			return BufferedImage.TYPE_BYTE_GRAY;
+		default:
+			throw new IllegalArgumentException("Unknown image type: " + type);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package artcreator.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import artcreator.domain.impl.DomainImpl;
+import artcreator.domain.port.TransformCommand;
+
+/**
+ * Every {@code DomainImpl.transformImage} operation on in-memory images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark {
+
+	@Param({ "640x480", "1920x1080", "4000x3000" })
+	public String size;
+
+	@Param({ "INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY" })
+	public String type;
+
+	@Param({ "rotate_left", "rotate_right", "mirror_horizontal", "mirror_vertical", "crop_center",
+			"crop:16,16,320,240" })
+	public String operation;
+
+	private DomainImpl domain;
+	private BufferedImage image;
+	private TransformCommand command;
+
+	@Setup
+	public void setUp() {
+		this.domain = new DomainImpl();
+		this.image = SyntheticImages.create(this.size, this.type);
+		this.command = TransformCommand.parse(this.operation);
+	}
+
+	@Benchmark
+	public Object transformImage() {
+		return this.domain.transformImage(this.image, this.command);
+	}
+}
@@ -1,12 +1,18 @@
 package artcreator;
 
+import java.util.Arrays;
 import java.util.TooManyListenersException;
 
+import artcreator.batch.BatchRunner;
 import artcreator.gui.CreatorFrame;
 
 public class Main {
 
 	public static void main(String[] args) throws TooManyListenersException {
+		// Headless: java -jar ... --batch <input> --out <dir> [options]
+		if (args.length > 0 && "--batch".equals(args[0])) {
+			System.exit(BatchRunner.runCommandLine(Arrays.copyOfRange(args, 1, args.length)));
+		}
 		CreatorFrame frame = new CreatorFrame();
 	      frame.setVisible(true);
 		  
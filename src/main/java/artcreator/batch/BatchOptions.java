@@ -0,0 +1,202 @@
+package artcreator.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.TemplateConfig;
+import artcreator.domain.port.TemplateConfig.Dithering;
+import artcreator.domain.port.TemplateConfig.Matching;
+import artcreator.domain.port.TransformCommand;
+
+/**
+ * Command line of the batch mode: where the images come from, where the
+ * templates go, and the recipe applied to every image.
+ */
+public final class BatchOptions {
+
+	public static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: --batch <directory|manifest.txt> --out <directory> [options]",
+			"  --transform <ops>      operations applied to every image, ';'-separated",
+			"                         (rotate_left, rotate_right, mirror_horizontal, mirror_vertical,",
+			"                         crop_center, crop:x,y,w,h)",
+			"  --columns <n>          template columns (default " + TemplateConfig.DEFAULT_COLUMNS + ")",
+			"  --rows <n>             template rows (default: from the aspect ratio)",
+			"  --palette <rgb,...>    palette as hex colors, e.g. 000000,FFFFFF,FF0000 (default: 16 colors)",
+			"  --matching <mode>      RGB, LAB or LAB_LUT (default LAB)",
+			"  --dithering <mode>     NONE, ORDERED, FLOYD_STEINBERG or ATKINSON (default NONE)",
+			"  --format <ext,...>     files written per image: png, svg, pdf, csv, tpl (default png)",
+			"  --cell <n>             cell size in px (PNG) or pt (SVG, PDF) (default 10)",
+			"  --io-threads <n>       threads decoding and writing files (default 4)",
+			"  --cpu-threads <n>      threads transforming and matching (default: cores)",
+			"  --in-flight <n>        images in memory at once (default: io + cpu threads)",
+			"A manifest is a text file with one image path per line; '#' starts a comment.");
+
+	private static final List<String> FORMATS = List.of("png", "svg", "pdf", "csv", "tpl");
+	private static final List<String> IMAGE_EXTENSIONS = List.of(".png", ".jpg", ".jpeg", ".bmp", ".gif");
+
+	private Path input;
+	private Path output;
+	private List<TransformCommand> transform;
+	private int columns = TemplateConfig.DEFAULT_COLUMNS;
+	private int rows;
+	private Palette palette = Palette.DEFAULT;
+	private Matching matching = Matching.LAB;
+	private Dithering dithering = Dithering.NONE;
+	private List<String> formats = List.of("png");
+	private int cellSize = 10;
+	private int ioThreads = 4;
+	private int cpuThreads = Runtime.getRuntime().availableProcessors();
+	private int inFlight;
+
+	private BatchOptions() {
+	}
+
+	/**
+	 * Parses the arguments following {@code --batch}.
+	 * @throws IllegalArgumentException with a message for the user if they are invalid.
+	 */
+	public static BatchOptions parse(String[] args) {
+		BatchOptions options = new BatchOptions();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				if (options.input != null) {
+					throw new IllegalArgumentException("More than one input given: " + arg);
+				}
+				options.input = Path.of(arg);
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			String value = args[++i];
+			switch (arg) {
+			case "--out" -> options.output = Path.of(value);
+			// validated once here instead of failing on every image
+			case "--transform" -> options.transform = TransformCommand.parseAll(value);
+			case "--columns" -> options.columns = positive(arg, value);
+			case "--rows" -> options.rows = positive(arg, value);
+			case "--palette" -> options.palette = palette(value);
+			case "--matching" -> options.matching = Matching.valueOf(value.toUpperCase(Locale.ROOT));
+			case "--dithering" -> options.dithering = Dithering.valueOf(value.toUpperCase(Locale.ROOT));
+			case "--format" -> options.formats = formats(value);
+			case "--cell" -> options.cellSize = positive(arg, value);
+			case "--io-threads" -> options.ioThreads = positive(arg, value);
+			case "--cpu-threads" -> options.cpuThreads = positive(arg, value);
+			case "--in-flight" -> options.inFlight = positive(arg, value);
+			default -> throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		if (options.input == null || options.output == null) {
+			throw new IllegalArgumentException("Input and --out are required.");
+		}
+		if (options.inFlight == 0) {
+			options.inFlight = options.ioThreads + options.cpuThreads;
+		}
+		return options;
+	}
+
+	/** The images to process: every image file of the input directory, or the manifest's entries. */
+	public List<Path> inputs() throws IOException {
+		List<Path> inputs = new ArrayList<>();
+		if (Files.isDirectory(this.input)) {
+			try (Stream<Path> files = Files.list(this.input)) {
+				files.filter(Files::isRegularFile).filter(BatchOptions::isImage).sorted().forEach(inputs::add);
+			}
+		} else {
+			Path base = this.input.toAbsolutePath().getParent();
+			for (String line : Files.readAllLines(this.input)) {
+				String entry = line.strip();
+				if (!entry.isEmpty() && !entry.startsWith("#")) {
+					// relative entries are relative to the manifest
+					inputs.add(base.resolve(entry));
+				}
+			}
+		}
+		return inputs;
+	}
+
+	public Path getOutput() {
+		return this.output;
+	}
+
+	/** The transformation recipe, or null to use images as they are. */
+	public List<TransformCommand> getTransform() {
+		return this.transform;
+	}
+
+	public TemplateConfig getTemplateConfig() {
+		return new TemplateConfig(this.columns, this.rows, this.palette, this.matching, this.dithering);
+	}
+
+	/** File extensions to write for every template, e.g. png and pdf. */
+	public List<String> getFormats() {
+		return this.formats;
+	}
+
+	public int getCellSize() {
+		return this.cellSize;
+	}
+
+	public int getIoThreads() {
+		return this.ioThreads;
+	}
+
+	public int getCpuThreads() {
+		return this.cpuThreads;
+	}
+
+	public int getInFlight() {
+		return this.inFlight;
+	}
+
+	private static boolean isImage(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		return IMAGE_EXTENSIONS.stream().anyMatch(name::endsWith);
+	}
+
+	private static int positive(String option, String value) {
+		try {
+			int n = Integer.parseInt(value);
+			if (n > 0) {
+				return n;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(option + " needs a positive number: " + value);
+	}
+
+	private static List<String> formats(String value) {
+		List<String> formats = new ArrayList<>();
+		for (String format : value.split(",")) {
+			String extension = format.strip().toLowerCase(Locale.ROOT);
+			if (!FORMATS.contains(extension)) {
+				throw new IllegalArgumentException("Unknown format: " + format);
+			}
+			if (!formats.contains(extension)) {
+				formats.add(extension);
+			}
+		}
+		return List.copyOf(formats);
+	}
+
+	private static Palette palette(String value) {
+		String[] hex = value.split(",");
+		int[] rgb = new int[hex.length];
+		for (int i = 0; i < hex.length; i++) {
+			try {
+				rgb[i] = Integer.parseInt(hex[i].strip().replaceFirst("^#", ""), 16);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid palette color: " + hex[i]);
+			}
+		}
+		return Palette.of(rgb);
+	}
+}
@@ -0,0 +1,212 @@
+package artcreator.batch;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import artcreator.creator.CreatorFactory;
+import artcreator.creator.port.Creator;
+import artcreator.domain.DomainFactory;
+import artcreator.domain.port.Domain;
+import artcreator.domain.port.TemplateConfig;
+import artcreator.domain.port.TransformCommand;
+import artcreator.metrics.Metrics;
+
+/**
+ * Headless batch mode: turns many images into templates without the GUI.
+ *
+ * Every image gets its own Creator session and runs through three stages:
+ * import (I/O), transform and generate the template (CPU), write the result
+ * (I/O). I/O and CPU stages run
+ * on separate executors, so decoding the next images overlaps with matching
+ * the current ones. At most {@code --in-flight} images are between decode and
+ * write at any time, which bounds memory regardless of the batch size.
+ * A failing image is logged and skipped; the rest of the batch continues.
+ */
+public final class BatchRunner {
+
+	/** Outcome of a batch run. */
+	public static final class Summary {
+		private final int succeeded;
+		private final int failed;
+		private final long nanos;
+
+		Summary(int succeeded, int failed, long nanos) {
+			this.succeeded = succeeded;
+			this.failed = failed;
+			this.nanos = nanos;
+		}
+
+		public int getSucceeded() {
+			return this.succeeded;
+		}
+
+		public int getFailed() {
+			return this.failed;
+		}
+
+		public long getNanos() {
+			return this.nanos;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = this.nanos / 1e9;
+			return String.format("%d templates, %d failed, %.1f s (%.1f images/s)", this.succeeded, this.failed,
+					seconds, seconds > 0 ? (this.succeeded + this.failed) / seconds : 0);
+		}
+	}
+
+	private final BatchOptions options;
+	private final CreatorFactory creators;
+	private final Domain domain;
+
+	public BatchRunner(BatchOptions options, CreatorFactory creators, Domain domain) {
+		this.options = options;
+		this.creators = creators;
+		this.domain = domain;
+	}
+
+	/**
+	 * Runs the batch described by the arguments following {@code --batch}.
+	 * @return The process exit code: 0 if every image succeeded, 1 on failures, 2 for invalid arguments.
+	 */
+	public static int runCommandLine(String[] args) {
+		BatchOptions options;
+		try {
+			options = BatchOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(BatchOptions.USAGE);
+			return 2;
+		}
+		try {
+			Summary summary = new BatchRunner(options, CreatorFactory.FACTORY, DomainFactory.FACTORY.domain()).run();
+			System.out.println(summary);
+			return summary.getFailed() == 0 ? 0 : 1;
+		} catch (Exception e) {
+			Logger.getGlobal().log(Level.SEVERE, "Batch failed", e);
+			return 1;
+		}
+	}
+
+	public Summary run() throws Exception {
+		List<Path> inputs = this.options.inputs();
+		Files.createDirectories(this.options.getOutput());
+		TemplateConfig config = this.options.getTemplateConfig();
+
+		ThreadPoolExecutor io = fixedPool(this.options.getIoThreads(), "batch-io");
+		ThreadPoolExecutor cpu = fixedPool(this.options.getCpuThreads(), "batch-cpu");
+		Semaphore inFlight = new Semaphore(this.options.getInFlight());
+		AtomicInteger succeeded = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		Set<String> targets = new HashSet<>();
+		List<CompletableFuture<Void>> jobs = new ArrayList<>();
+		long start = System.nanoTime();
+		Metrics metrics = Metrics.global();
+		metrics.gauge("batch.ioQueue", () -> io.getQueue().size());
+		metrics.gauge("batch.cpuQueue", () -> cpu.getQueue().size());
+		metrics.gauge("batch.inFlight", () -> this.options.getInFlight() - inFlight.availablePermits());
+		metrics.gauge("batch.succeeded", succeeded::get);
+		metrics.gauge("batch.failed", failed::get);
+
+		try {
+			for (Path input : inputs) {
+				// written as <target>.<format> for every format
+				Path target = this.options.getOutput().resolve(targetName(input, targets));
+				// blocks while the pipeline is full
+				inFlight.acquire();
+				jobs.add(CompletableFuture.supplyAsync(() -> load(input), io)
+						.thenApplyAsync(session -> process(session, config), cpu)
+						.thenAcceptAsync(template -> export(template, target), io)
+						.handle((done, ex) -> {
+							inFlight.release();
+							if (ex == null) {
+								succeeded.incrementAndGet();
+								Logger.getGlobal().log(Level.INFO, "Wrote {0}.{1}",
+										new Object[] { target, String.join(",", this.options.getFormats()) });
+							} else {
+								failed.incrementAndGet();
+								Logger.getGlobal().log(Level.WARNING, "Skipping " + input, ex.getCause());
+							}
+							return null;
+						}));
+			}
+			CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[0])).join();
+		} finally {
+			io.shutdownNow();
+			cpu.shutdownNow();
+			for (String gauge : List.of("ioQueue", "cpuQueue", "inFlight", "succeeded", "failed")) {
+				metrics.removeGauge("batch." + gauge);
+			}
+		}
+		return new Summary(succeeded.get(), failed.get(), System.nanoTime() - start);
+	}
+
+	// the session is handed from stage to stage, never used by two threads at once
+	private Creator load(Path input) {
+		Creator session = this.creators.session().creator();
+		// transformations are only composed; generateTemplate renders them in one pass
+		session.setLazy(true);
+		session.importImage(input.toString());
+		return session;
+	}
+
+	private Object process(Creator session, TemplateConfig config) {
+		List<TransformCommand> recipe = this.options.getTransform();
+		if (recipe != null) {
+			session.applyTransformation(recipe);
+		}
+		return session.generateTemplate(config);
+	}
+
+	private void export(Object template, Path target) {
+		for (String format : this.options.getFormats()) {
+			String file = target + "." + format;
+			try {
+				this.domain.exportTemplate(template, file, this.options.getCellSize());
+			} catch (Exception e) {
+				throw new RuntimeException("Could not write " + file + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	// the input's name without extension, numbered if two inputs share a name
+	private static String targetName(Path input, Set<String> taken) {
+		String name = input.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String candidate = base;
+		for (int i = 2; !taken.add(candidate); i++) {
+			candidate = base + "-" + i;
+		}
+		return candidate;
+	}
+
+	// a fixed pool whose queue the metrics can see
+	private static ThreadPoolExecutor fixedPool(int threads, String prefix) {
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				named(prefix));
+	}
+
+	private static ThreadFactory named(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
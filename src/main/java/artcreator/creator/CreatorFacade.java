@@ -1,44 +1,159 @@
 package artcreator.creator;
 
+import java.util.concurrent.TimeUnit;
+
 import artcreator.creator.impl.CreatorImpl;
 import artcreator.creator.port.Creator;
 import artcreator.domain.DomainFactory;
+import artcreator.metrics.Metrics;
+import artcreator.metrics.Operation;
 import artcreator.statemachine.StateMachineFactory;
 import artcreator.statemachine.port.StateMachine;
+import artcreator.statemachine.port.Subject;
 
 public class CreatorFacade implements CreatorFactory, Creator {
 
+	// timings of the user-facing operations, shared by all sessions
+	private static final Operation IMPORT = Metrics.global().operation("creator.importImage");
+	private static final Operation PREVIEW = Metrics.global().operation("creator.previewImage");
+	private static final Operation APPLY = Metrics.global().operation("creator.applyTransformation");
+	private static final Operation UNDO = Metrics.global().operation("creator.undo");
+	private static final Operation REDO = Metrics.global().operation("creator.redo");
+	private static final Operation RENDER = Metrics.global().operation("creator.currentImage");
+	private static final Operation TEMPLATE = Metrics.global().operation("creator.generateTemplate");
+	private static final Operation EXPORT = Metrics.global().operation("creator.exportTemplate");
+
+	// the default creator uses the global state machine the GUI observes
+	private final StateMachineFactory stateMachines;
 	private CreatorImpl creatorImpl;
 	private StateMachine stateMachine;
 
+	public CreatorFacade() {
+		this(StateMachineFactory.FACTORY);
+	}
+
+	private CreatorFacade(StateMachineFactory stateMachines) {
+		this.stateMachines = stateMachines;
+	}
+
 	@Override
-	public Creator creator() {
+	public synchronized Creator creator() {
 		if (this.creatorImpl == null) {
-			this.stateMachine = StateMachineFactory.FACTORY.stateMachine();
+			this.stateMachine = this.stateMachines.stateMachine();
 			this.creatorImpl = new CreatorImpl(stateMachine, DomainFactory.FACTORY.domain());
+			if (this.stateMachines == StateMachineFactory.FACTORY) {
+				publishGauges(this.creatorImpl);
+			}
 		}
 		return this;
 	}
 
+	@Override
+	public CreatorFactory session() {
+		CreatorFacade session = new CreatorFacade(StateMachineFactory.FACTORY.session());
+		session.creator();
+		return session;
+	}
+
+	// only the GUI's creator; sessions come and go
+	private static void publishGauges(CreatorImpl creator) {
+		Metrics metrics = Metrics.global();
+		metrics.gauge("creator.historyBytes", creator::getHistoryMemoryInUse);
+		metrics.gauge("creator.undoMeanNanos", () -> creator.getUndoLatency().getMeanNanos());
+		metrics.gauge("creator.speculationHits", () -> creator.getSpeculationStats().getHits());
+		metrics.gauge("creator.speculationMisses", () -> creator.getSpeculationStats().getMisses());
+		metrics.gauge("creator.speculationWasted", () -> creator.getSpeculationStats().getWasted());
+		metrics.gauge("creator.speculationBytes", () -> creator.getSpeculationStats().getBytes());
+	}
+
+	@Override
+	public Subject subject() {
+		return this.stateMachines.subject();
+	}
+
 	// --- Delegation Methods ---
 
 	@Override
 	public Object importImage(String path) {
-		return this.creatorImpl.importImage(path);
+		try (Operation.Sample sample = IMPORT.start()) {
+			return sample.done(this.creatorImpl.importImage(path));
+		}
+	}
+
+	@Override
+	public Object previewImage(String path, int maxDimension) {
+		try (Operation.Sample sample = PREVIEW.start()) {
+			return sample.done(this.creatorImpl.previewImage(path, maxDimension));
+		}
 	}
 
 	@Override
 	public Object applyTransformation(Object transformConfig) {
-		return this.creatorImpl.applyTransformation(transformConfig);
+		try (Operation.Sample sample = APPLY.start()) {
+			return sample.done(this.creatorImpl.applyTransformation(transformConfig));
+		}
 	}
 
 	@Override
 	public Object undoLastTransformation() throws IllegalStateException {
-		return this.creatorImpl.undoLastTransformation();
+		try (Operation.Sample sample = UNDO.start()) {
+			return sample.done(this.creatorImpl.undoLastTransformation());
+		}
+	}
+
+	@Override
+	public Object redoLastTransformation() throws IllegalStateException {
+		try (Operation.Sample sample = REDO.start()) {
+			return sample.done(this.creatorImpl.redoLastTransformation());
+		}
+	}
+
+	@Override
+	public Object currentImage() {
+		try (Operation.Sample sample = RENDER.start()) {
+			return sample.done(this.creatorImpl.currentImage());
+		}
+	}
+
+	@Override
+	public void setLazy(boolean lazy) {
+		this.creatorImpl.setLazy(lazy);
+	}
+
+	@Override
+	public void setSpeculative(boolean speculative) {
+		this.creatorImpl.setSpeculative(speculative);
+	}
+
+	@Override
+	public Object peekImage() {
+		return this.creatorImpl.peekImage();
 	}
 
 	@Override
 	public Object generateTemplate(Object templateConfig) {
-		return this.creatorImpl.generateTemplate(templateConfig);
+		try (Operation.Sample sample = TEMPLATE.start()) {
+			return sample.done(this.creatorImpl.generateTemplate(templateConfig));
+		}
+	}
+
+	@Override
+	public Object generateTemplate(Object templateConfig, long timeout, TimeUnit unit) {
+		try (Operation.Sample sample = TEMPLATE.start()) {
+			return sample.done(this.creatorImpl.generateTemplate(templateConfig, timeout, unit));
+		}
+	}
+
+	@Override
+	public void exportTemplate(Object template, String path, int cellSize) {
+		try (Operation.Sample sample = EXPORT.start()) {
+			this.creatorImpl.exportTemplate(template, path, cellSize);
+			sample.done();
+		}
+	}
+
+	@Override
+	public boolean cancel() {
+		return this.creatorImpl.cancel();
 	}
 }
\ No newline at end of file
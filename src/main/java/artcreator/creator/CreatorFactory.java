@@ -1,10 +1,21 @@
 package artcreator.creator;
 
 import artcreator.creator.port.Creator;
+import artcreator.statemachine.port.Subject;
 
 public interface CreatorFactory {
 	
 	CreatorFactory FACTORY = new CreatorFacade();
 	Creator creator();
 
+	/**
+	 * Creates an independent session with its own image, history and state
+	 * machine. Sessions can work on different images in parallel; a single
+	 * session must not be used by several threads at once.
+	 */
+	CreatorFactory session();
+
+	/** The subject to observe this factory's creator's state. */
+	Subject subject();
+
 }
@@ -1,111 +1,498 @@
 package artcreator.creator.impl;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import artcreator.creator.port.Creator;
 import artcreator.domain.port.Domain;
+import artcreator.domain.port.ImageTransform;
+import artcreator.domain.port.TransformCommand;
+import artcreator.statemachine.port.State;
 import artcreator.statemachine.port.State.S;
 import artcreator.statemachine.port.StateMachine;
 
+/**
+ * One editing session: a source image, the transformation composed on it and
+ * its undo/redo history.
+ *
+ * Operations that change the session or render pixels run one at a time.
+ * Each claims the session by moving the state machine atomically into
+ * {@link S#Processing} (or {@link S#GeneratingTemplate}) and leaves it in the
+ * resulting state, or the previous one if it fails. A call made while
+ * another operation runs fails fast with an {@link IllegalStateException}
+ * instead of blocking; callers that need queuing (the GUI) serialize their
+ * calls themselves. No lock is held while pixels are processed, and the
+ * state machine's atomic transitions publish the session's fields to the
+ * thread running the next operation.
+ *
+ * Template generation can be cancelled from any thread with {@link #cancel()}
+ * or bounded by a timeout; the workers poll for either once per row of cells.
+ */
 public class CreatorImpl implements Creator {
 
 	private final StateMachine stateMachine;
 	private final Domain domain;
 
-	// We hold the current image in the logic
-	private Object currentImage;
-	// Keep up to 3 transformations in history for undo
-	private final Deque<Object> transformationHistory = new ArrayDeque<>();
-	private static final int MAX_HISTORY_SIZE = 3;
+	// The image as imported; transformations are composed on top of it
+	private volatile Object sourceImage;
+	// replaced with the source image, so the domain reuses template stages only for the same pixels
+	private volatile Object sourceVersion;
+	private volatile ImageTransform transform;
+	// We hold the current image in the logic (null while transforms are pending)
+	private volatile Object currentImage;
+	// Lazy mode: applyTransformation only composes, pixels are rendered on demand
+	private volatile boolean lazy;
+	// Undo/redo history, bounded by memory rather than by entry count
+	private final TransformationHistory transformationHistory;
+	private final LatencyStats undoLatency = new LatencyStats();
+	// read by metrics from other threads, refreshed whenever the history changes
+	private volatile long historyMemoryInUse;
+	// Previews of the states one click away, rendered in the background
+	private final Speculator speculator;
+	private volatile boolean speculative;
+	// the running template generation, if any; cancel() may come from any thread
+	private volatile Cancellation running;
+
+	// the clicks worth speculating on, besides undo and redo
+	private static final List<TransformCommand> SPECULATED_OPERATIONS = List.of(TransformCommand.ROTATE_LEFT,
+			TransformCommand.ROTATE_RIGHT, TransformCommand.MIRROR_HORIZONTAL, TransformCommand.MIRROR_VERTICAL);
 
 	public CreatorImpl(StateMachine stateMachine, Domain domain) {
+		this(stateMachine, domain, TransformationHistory.DEFAULT_BUDGET_BYTES);
+	}
+
+	public CreatorImpl(StateMachine stateMachine, Domain domain, long historyBudgetBytes) {
 		this.stateMachine = stateMachine;
 		this.domain = domain;
+		this.transformationHistory = new TransformationHistory(domain, historyBudgetBytes);
+		this.speculator = new Speculator(domain, Speculator.DEFAULT_BUDGET_BYTES);
 	}
 
 	@Override
 	public Object importImage(String path) throws IllegalStateException {
-		// 1. Validation (as per Sequence Diagram)
-		if (this.stateMachine.getState() == S.Processing) {
-			throw new IllegalStateException("System is busy processing. Cannot import now.");
-		}
+		// 1. Validation (as per Sequence Diagram): claims the session or fails if it is busy
+		State before = enter(S.Processing, "Cannot import now.");
+		State after = before;
 
 		try {
 			// 2. Delegation to Domain
 			Logger.getGlobal().log(Level.INFO, "Loading image from: {0}", path);
 			Object newImage = domain.loadImage(path);
 
-			// 3. State Update
+			// 3. State Update (replacing a loaded image is undoable via a snapshot)
+			ImageTransform loaded = domain.identityTransform(newImage);
+			if (this.sourceImage != null) {
+				this.transformationHistory.record(this.sourceImage, this.transform, newImage, loaded);
+			}
+			this.sourceImage = newImage;
+			this.sourceVersion = new Object();
+			this.transform = loaded;
 			this.currentImage = newImage;
-			this.stateMachine.setState(S.ImageLoaded);
+			after = S.ImageLoaded;
+			changed();
 
-			return this.currentImage;
+			return newImage;
 
 		} catch (Exception e) {
 			// Logging and re-throwing
 			Logger.getGlobal().log(Level.SEVERE, "Import failed", e);
 			throw new RuntimeException("Could not import image: " + e.getMessage(), e);
+		} finally {
+			leave(after);
+		}
+	}
+
+	@Override
+	public Object previewImage(String path, int maxDimension) {
+		try {
+			return domain.loadPreview(path, maxDimension);
+		} catch (Exception e) {
+			Logger.getGlobal().log(Level.WARNING, "Preview failed", e);
+			throw new RuntimeException("Could not preview image: " + e.getMessage(), e);
 		}
 	}
 
 	@Override
 	public Object applyTransformation(Object config) throws IllegalStateException {
 		// 1. Validate State (Must have an image loaded)
-		// We check if we are in ImageLoaded OR TemplateReady (as you might want to adjust after generation)
-		// But strictly per diagram: ImageLoaded
-		if (!this.stateMachine.getState().isSubStateOf(S.ImageLoaded)) {
+		// We check if we are in ImageLoaded OR TemplateReady (to adjust the image after generation)
+		if (!hasImageState()) {
 			throw new IllegalStateException("No image loaded to transform.");
 		}
 
-		if (this.currentImage == null) {
-			throw new IllegalStateException("Internal Error: Image reference is null despite valid state.");
-		}
-
-		String operation = (String) config; // "rotate_left" or "rotate_right"
+		List<TransformCommand> operations = toCommands(config); // e.g. ROTATE_LEFT or "rotate_left;crop:0,0,10,10"
 
+		State before = enter(S.Processing, "Cannot transform now.");
+		State after = before;
 		try {
-			// 2. Save current image to history (maintaining up to MAX_HISTORY_SIZE entries)
-			this.transformationHistory.push(this.currentImage);
-			if (this.transformationHistory.size() > MAX_HISTORY_SIZE) {
-				this.transformationHistory.removeLast();
+			// the state may have changed between the check and claiming the session
+			if (!hasImageState(before)) {
+				throw new IllegalStateException("No image loaded to transform.");
+			}
+			if (this.sourceImage == null) {
+				throw new IllegalStateException("Internal Error: Image reference is null despite valid state.");
 			}
-			Logger.getGlobal().log(Level.INFO, "Applying transformation: {0}", operation);
-			Object modifiedImage = domain.transformImage(this.currentImage, operation);
 
-			// 3. Update Internal State
-			this.currentImage = modifiedImage;
+			// 2. Compose all operations onto the current transformation (no pixels touched yet)
+			ImageTransform composed = this.transform;
+			for (TransformCommand operation : operations) {
+				Logger.getGlobal().log(Level.INFO, "Applying transformation: {0}", operation);
+				composed = composed.then(operation);
+			}
 
-			// 4. Trigger UI Update (Notify observers)
-			// Even though the enum S.ImageLoaded hasn't changed, re-setting it forces notify()
-			this.stateMachine.setState(S.ImageLoaded);
+			// 3. Record the step; geometric edits only keep the previous transformation
+			this.transformationHistory.record(this.sourceImage, this.transform, this.sourceImage, composed);
 
-			return this.currentImage;
+			// 4. Update Internal State
+			this.transform = composed;
+			this.currentImage = null;
 
+			// 5. Trigger UI Update (Notify observers when the session is left)
+			after = S.ImageLoaded;
+			changed();
+
+			return this.lazy ? composed : render();
+
+		} catch (IllegalStateException e) {
+			throw e;
 		} catch (Exception e) {
 			Logger.getGlobal().log(Level.SEVERE, "Transformation failed", e);
 			throw new RuntimeException("Transformation failed: " + e.getMessage());
+		} finally {
+			leave(after);
 		}
 	}
 
 	@Override
 	public Object undoLastTransformation() throws IllegalStateException {
-		if (this.transformationHistory.isEmpty()) {
-			throw new IllegalStateException("No transformation to undo.");
+		long start = System.nanoTime();
+		State before = enter(S.Processing, "Cannot undo now.");
+		State after = before;
+		try {
+			TransformationHistory.Step step = this.transformationHistory.undo();
+			if (step == null) {
+				throw new IllegalStateException("No transformation to undo.");
+			}
+			Object restored = restore(step.beforeImage, step.before, "Undo");
+			after = S.ImageLoaded;
+			recordUndoLatency(start);
+			return restored;
+		} finally {
+			leave(after);
+		}
+	}
+
+	@Override
+	public Object redoLastTransformation() throws IllegalStateException {
+		long start = System.nanoTime();
+		State before = enter(S.Processing, "Cannot redo now.");
+		State after = before;
+		try {
+			TransformationHistory.Step step = this.transformationHistory.redo();
+			if (step == null) {
+				throw new IllegalStateException("No transformation to redo.");
+			}
+			Object restored = restore(step.afterImage, step.after, "Redo");
+			after = S.ImageLoaded;
+			recordUndoLatency(start);
+			return restored;
+		} finally {
+			leave(after);
+		}
+	}
+
+	// the caller has claimed the session
+	private Object restore(TransformationHistory.Snapshot snapshot, ImageTransform restored, String action) {
+		try {
+			// maps the image back from disk if it was spilled
+			Object image = this.transformationHistory.resolve(snapshot);
+			if (image != this.sourceImage) {
+				this.sourceImage = image;
+				this.sourceVersion = new Object();
+			}
+			this.transform = restored;
+			this.currentImage = null;
+			changed();
+			return this.lazy ? restored : render();
+		} catch (Exception e) {
+			throw new RuntimeException(action + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	private void recordUndoLatency(long start) {
+		long nanos = System.nanoTime() - start;
+		this.undoLatency.record(nanos);
+		Logger.getGlobal().log(Level.FINE, "Undo/redo took {0} ms", nanos / 1_000_000.0);
+	}
+
+	/** Latency of undo/redo, including mapping spilled snapshots back in. */
+	public LatencyStats getUndoLatency() {
+		return this.undoLatency;
+	}
+
+	/**
+	 * Sets the memory budget of the undo/redo history. Oldest steps are dropped
+	 * when retained snapshots exceed it.
+	 */
+	public void setHistoryBudget(long bytes) {
+		// may spill snapshots, so it counts as an operation
+		State before = enter(S.Processing, "Cannot change the history budget now.");
+		try {
+			this.transformationHistory.setBudgetBytes(bytes);
+			this.historyMemoryInUse = this.transformationHistory.memoryInUse();
+		} finally {
+			leave(before);
+		}
+	}
+
+	/** Bytes currently retained by the undo/redo history; safe to call from any thread. */
+	public long getHistoryMemoryInUse() {
+		return this.historyMemoryInUse;
+	}
+
+	/**
+	 * Sets the heap budget of the speculative previews. Previews that would
+	 * exceed it are not kept.
+	 */
+	public void setSpeculationBudget(long bytes) {
+		this.speculator.setBudgetBytes(bytes);
+	}
+
+	/** Hit rate and wasted work of the speculative previews. */
+	public SpeculationStats getSpeculationStats() {
+		return this.speculator.stats();
+	}
+
+	@Override
+	public void setSpeculative(boolean speculative) {
+		this.speculative = speculative;
+		if (speculative) {
+			speculate();
+		} else {
+			this.speculator.clear();
+		}
+	}
+
+	@Override
+	public Object peekImage() {
+		Object source = this.sourceImage;
+		if (!this.speculative || source == null) {
+			return null;
+		}
+		return this.speculator.peek(source, this.transform);
+	}
+
+	// after every edit, undo or import; the caller has claimed the session
+	private void changed() {
+		this.historyMemoryInUse = this.transformationHistory.memoryInUse();
+		speculate();
+	}
+
+	/**
+	 * Starts rendering previews of the states one click away: the speculated
+	 * operations, and undo/redo where they keep the source image.
+	 */
+	private void speculate() {
+		if (!this.speculative || this.sourceImage == null) {
+			return;
+		}
+		List<ImageTransform> likely = new ArrayList<>();
+		// the newest steps lead from/to the current state; geometric ones share its source image
+		TransformationHistory.Step undo = this.transformationHistory.peekUndo();
+		if (undo != null && undo.isGeometric()) {
+			likely.add(undo.before);
+		}
+		TransformationHistory.Step redo = this.transformationHistory.peekRedo();
+		if (redo != null && redo.isGeometric()) {
+			likely.add(redo.after);
+		}
+		for (TransformCommand operation : SPECULATED_OPERATIONS) {
+			likely.add(this.transform.then(operation));
+		}
+		this.speculator.update(this.sourceImage, this.transform, likely);
+	}
+
+	@Override
+	public Object currentImage() {
+		Object image = this.currentImage;
+		if (image != null || this.sourceImage == null) {
+			return image;
+		}
+		State before = enter(S.Processing, "Cannot render now.");
+		try {
+			return render();
+		} finally {
+			leave(before);
+		}
+	}
+
+	// Materializes all pending transformations in one pass; the caller has claimed the session
+	private Object render() {
+		if (this.currentImage == null && this.sourceImage != null) {
+			this.currentImage = this.domain.renderImage(this.sourceImage, this.transform);
+		}
+		return this.currentImage;
+	}
+
+	@Override
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	/**
+	 * Accepts a single {@link TransformCommand} or operation string, a
+	 * ';'-separated sequence, or a List/array of commands and strings.
+	 * Strings are parsed here, once per call.
+	 */
+	private static List<TransformCommand> toCommands(Object config) {
+		List<TransformCommand> commands = new ArrayList<>();
+		if (config instanceof TransformCommand) {
+			commands.add((TransformCommand) config);
+		} else if (config instanceof String) {
+			for (String op : ((String) config).split(";")) {
+				if (!op.isBlank())
+					commands.add(TransformCommand.parse(op));
+			}
+		} else if (config instanceof Collection<?>) {
+			for (Object op : (Collection<?>) config)
+				commands.addAll(toCommands(op));
+		} else if (config instanceof Object[]) {
+			for (Object op : (Object[]) config)
+				commands.addAll(toCommands(op));
+		} else {
+			throw new IllegalArgumentException("Unsupported transformation config: " + config);
+		}
+		if (commands.isEmpty()) {
+			throw new IllegalArgumentException("No transformation given.");
+		}
+		return commands;
+	}
+
+	@Override
+	public Object generateTemplate(Object config) throws IllegalStateException {
+		return generateTemplate(config, 0, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Object generateTemplate(Object config, long timeout, TimeUnit unit) throws IllegalStateException {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+		}
+		if (!hasImageState()) {
+			throw new IllegalStateException("No image loaded to generate a template from.");
 		}
+		// enter Processing (GeneratingTemplate) atomically: fails if another operation runs
+		State before = enter(S.GeneratingTemplate, "Cannot generate a template now.");
+		State after = before;
+		Cancellation cancellation = new Cancellation(unit.toNanos(timeout));
+		this.running = cancellation;
 		try {
-			Object restored = this.transformationHistory.pop();
-			this.currentImage = restored;
-			// notify UI/state
-			this.stateMachine.setState(S.ImageLoaded);
-			return this.currentImage;
+			if (!hasImageState(before) || this.sourceImage == null) {
+				throw new IllegalStateException("No image loaded to generate a template from.");
+			}
+			Logger.getGlobal().log(Level.INFO, "Generating template");
+			// pending transformations must be materialized before pixels are read
+			Object template = domain.generateTemplate(render(), this.sourceVersion, config, cancellation);
+			after = S.TemplateReady;
+			return template;
+		} catch (CancellationException e) {
+			Logger.getGlobal().log(Level.INFO, "Template generation cancelled");
+			if (!cancellation.cancelled && cancellation.timedOut()) {
+				String message = "Template generation timed out after " + unit.toMillis(timeout) + " ms.";
+				throw new RuntimeException(message, new TimeoutException(message));
+			}
+			throw e;
+		} catch (IllegalStateException e) {
+			throw e;
 		} catch (Exception e) {
-			throw new RuntimeException("Undo failed: " + e.getMessage(), e);
+			Logger.getGlobal().log(Level.SEVERE, "Template generation failed", e);
+			throw new RuntimeException("Template generation failed: " + e.getMessage(), e);
+		} finally {
+			this.running = null;
+			leave(after);
+		}
+	}
+
+	@Override
+	public void exportTemplate(Object template, String path, int cellSize) {
+		// the template is immutable and the session is not touched, so no claim is needed
+		try {
+			this.domain.exportTemplate(template, path, cellSize);
+			Logger.getGlobal().log(Level.INFO, "Exported template to {0}", path);
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.SEVERE, "Export failed", e);
+			throw new RuntimeException("Could not export template: " + e.getMessage(), e);
 		}
 	}
 
 	@Override
-	public Object generateTemplate(Object config) { return null; }
+	public boolean cancel() {
+		Cancellation cancellation = this.running;
+		if (cancellation == null) {
+			return false;
+		}
+		cancellation.cancelled = true;
+		return true;
+	}
+
+	/**
+	 * Claims the session for one operation by moving from a state outside
+	 * Processing into {@code busy} in one atomic step.
+	 * @return The state to go back to if the operation fails.
+	 * @throws IllegalStateException if another operation is running.
+	 */
+	private State enter(State busy, String action) {
+		for (;;) {
+			State current = this.stateMachine.getState();
+			if (current.isSubStateOf(S.Processing)) {
+				throw new IllegalStateException("System is busy processing. " + action);
+			}
+			if (this.stateMachine.compareAndSet(current, busy)) {
+				return current;
+			}
+		}
+	}
+
+	// releases the session; re-entering a state also notifies the observers
+	private void leave(State next) {
+		this.stateMachine.setState(next);
+	}
+
+	private boolean hasImageState() {
+		return hasImageState(this.stateMachine.getState());
+	}
+
+	private static boolean hasImageState(State state) {
+		return state.isSubStateOf(S.ImageLoaded) || state.isSubStateOf(S.TemplateReady);
+	}
+
+	/** Cancellation flag and deadline of one template generation, polled by the workers. */
+	private static final class Cancellation implements BooleanSupplier {
+		// System.nanoTime() deadline; only used if timed
+		private final long deadline;
+		private final boolean timed;
+		private volatile boolean cancelled;
+
+		Cancellation(long timeoutNanos) {
+			this.timed = timeoutNanos > 0;
+			this.deadline = System.nanoTime() + timeoutNanos;
+		}
+
+		boolean timedOut() {
+			return this.timed && System.nanoTime() - this.deadline >= 0;
+		}
+
+		@Override
+		public boolean getAsBoolean() {
+			return this.cancelled || timedOut();
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package artcreator.creator.impl;
+
+/**
+ * Minimal latency bookkeeping (count, last, mean, max) for one operation.
+ */
+public final class LatencyStats {
+
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long lastNanos;
+
+	synchronized void record(long nanos) {
+		this.count++;
+		this.totalNanos += nanos;
+		this.maxNanos = Math.max(this.maxNanos, nanos);
+		this.lastNanos = nanos;
+	}
+
+	public synchronized long getCount() {
+		return this.count;
+	}
+
+	public synchronized long getLastNanos() {
+		return this.lastNanos;
+	}
+
+	public synchronized long getMeanNanos() {
+		return this.count == 0 ? 0 : this.totalNanos / this.count;
+	}
+
+	public synchronized long getMaxNanos() {
+		return this.maxNanos;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("count=%d last=%.2fms mean=%.2fms max=%.2fms", this.count, this.lastNanos / 1e6,
+				getMeanNanos() / 1e6, this.maxNanos / 1e6);
+	}
+}
@@ -0,0 +1,96 @@
+package artcreator.creator.impl;
+
+/**
+ * Snapshot of the speculative preview renderer's counters. Instances are
+ * immutable.
+ */
+public final class SpeculationStats {
+
+	private final long hits;
+	private final long misses;
+	private final long rendered;
+	private final long wasted;
+	private final long cancelled;
+	private final long skipped;
+	private final long renderNanos;
+	private final long wastedNanos;
+	private final long bytes;
+	private final long budgetBytes;
+
+	SpeculationStats(long hits, long misses, long rendered, long wasted, long cancelled, long skipped,
+			long renderNanos, long wastedNanos, long bytes, long budgetBytes) {
+		this.hits = hits;
+		this.misses = misses;
+		this.rendered = rendered;
+		this.wasted = wasted;
+		this.cancelled = cancelled;
+		this.skipped = skipped;
+		this.renderNanos = renderNanos;
+		this.wastedNanos = wastedNanos;
+		this.bytes = bytes;
+		this.budgetBytes = budgetBytes;
+	}
+
+	/** Lookups that found the preview ready. */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/** Lookups that found nothing, or a preview still being rendered. */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/** Hits per lookup, 0 before the first lookup. */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : (double) this.hits / lookups;
+	}
+
+	/** Previews rendered in the background. */
+	public long getRendered() {
+		return this.rendered;
+	}
+
+	/** Rendered previews that were dropped without ever being used. */
+	public long getWasted() {
+		return this.wasted;
+	}
+
+	/** Renders that were dropped before they finished. */
+	public long getCancelled() {
+		return this.cancelled;
+	}
+
+	/** Renders whose result did not fit into the budget. */
+	public long getSkipped() {
+		return this.skipped;
+	}
+
+	/** Time spent rendering previews in the background. */
+	public long getRenderNanos() {
+		return this.renderNanos;
+	}
+
+	/** The part of {@link #getRenderNanos()} spent on wasted previews. */
+	public long getWastedNanos() {
+		return this.wastedNanos;
+	}
+
+	/** Heap bytes held by rendered previews. */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	public long getBudgetBytes() {
+		return this.budgetBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"hits=%d misses=%d hitRate=%.0f%% rendered=%d wasted=%d cancelled=%d skipped=%d render=%.1fms wastedRender=%.1fms bytes=%d/%d",
+				this.hits, this.misses, getHitRate() * 100, this.rendered, this.wasted, this.cancelled, this.skipped,
+				this.renderNanos / 1e6, this.wastedNanos / 1e6, this.bytes, this.budgetBytes);
+	}
+}
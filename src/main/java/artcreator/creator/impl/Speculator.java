@@ -0,0 +1,238 @@
+package artcreator.creator.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import artcreator.domain.port.Domain;
+import artcreator.domain.port.ImageTransform;
+import artcreator.domain.port.Orientation;
+import artcreator.metrics.Metrics;
+
+/**
+ * Renders the states one click away ahead of time, at preview resolution, so
+ * a rotate, mirror or undo click only swaps in a ready image.
+ *
+ * After every change the session passes its source image, its current
+ * transformation and the likely next ones. Previews are keyed by the composed
+ * {@link ImageTransform} and rendered from a downscaled copy of the source on
+ * low-priority threads that leave one core to the interactive work. Previews
+ * that are no longer one click away are dropped (renders not yet started are
+ * cancelled); a new source image drops everything. Retained previews stay
+ * within a byte budget.
+ *
+ * Thread-safe: the session calls in from its own thread, renders complete on
+ * the pool.
+ */
+final class Speculator {
+
+	/** Default heap budget for speculative previews: 32 MB. */
+	static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+	/** Previews are rendered with at most this width and height. */
+	static final int PREVIEW_MAX_DIMENSION = 1024;
+
+	private static final ThreadPoolExecutor POOL;
+
+	static {
+		AtomicInteger count = new AtomicInteger();
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		POOL = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				runnable -> {
+					Thread thread = new Thread(runnable, "creator-speculation-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				});
+		Metrics.global().gauge("creator.speculationQueue", () -> POOL.getQueue().size());
+	}
+
+	private static final class Preview {
+		final ImageTransform transform;
+		CompletableFuture<Void> task;
+		// null until rendered
+		Object image;
+		long bytes;
+		long nanos;
+		boolean used;
+
+		Preview(ImageTransform transform) {
+			this.transform = transform;
+		}
+	}
+
+	private final Domain domain;
+
+	// guarded by this
+	private long budgetBytes;
+	private Object source;
+	private CompletableFuture<Object> scaledSource;
+	private final Map<ImageTransform, Preview> previews = new HashMap<>();
+	private long bytes;
+
+	private long hits;
+	private long misses;
+	private long rendered;
+	private long wasted;
+	private long cancelled;
+	private long skipped;
+	private long renderNanos;
+	private long wastedNanos;
+
+	Speculator(Domain domain, long budgetBytes) {
+		this.domain = domain;
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Speculates from a new state: keeps or starts the previews of the current
+	 * transformation and of the likely next ones, drops all others.
+	 */
+	synchronized void update(Object source, ImageTransform current, List<ImageTransform> likely) {
+		if (source != this.source) {
+			clear();
+			this.source = source;
+			this.scaledSource = CompletableFuture.supplyAsync(
+					() -> this.domain.scaleImage(source, PREVIEW_MAX_DIMENSION), POOL);
+		}
+		// the current state's preview is kept for the undo after the next click
+		Set<ImageTransform> wanted = new LinkedHashSet<>(likely);
+		wanted.add(current);
+		for (Preview preview : new ArrayList<>(this.previews.values())) {
+			if (!wanted.contains(preview.transform)) {
+				discard(preview);
+			}
+		}
+		for (ImageTransform transform : wanted) {
+			if (!this.previews.containsKey(transform) && this.bytes < this.budgetBytes) {
+				start(transform);
+			}
+		}
+	}
+
+	/**
+	 * Returns the preview of the source under the transformation if it has been
+	 * rendered; never waits for a render.
+	 */
+	synchronized Object peek(Object source, ImageTransform transform) {
+		Preview preview = source == this.source ? this.previews.get(transform) : null;
+		if (preview == null || preview.image == null) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		preview.used = true;
+		return preview.image;
+	}
+
+	/** Drops all previews; for a session that stops speculating or loses its image. */
+	synchronized void clear() {
+		for (Preview preview : new ArrayList<>(this.previews.values())) {
+			discard(preview);
+		}
+		if (this.scaledSource != null) {
+			this.scaledSource.cancel(false);
+		}
+		this.scaledSource = null;
+		this.source = null;
+	}
+
+	synchronized void setBudgetBytes(long budgetBytes) {
+		if (budgetBytes < 0) {
+			throw new IllegalArgumentException("Speculation budget must not be negative: " + budgetBytes);
+		}
+		this.budgetBytes = budgetBytes;
+	}
+
+	synchronized SpeculationStats stats() {
+		return new SpeculationStats(this.hits, this.misses, this.rendered, this.wasted, this.cancelled, this.skipped,
+				this.renderNanos, this.wastedNanos, this.bytes, this.budgetBytes);
+	}
+
+	// caller holds the lock
+	private void start(ImageTransform transform) {
+		Preview preview = new Preview(transform);
+		this.previews.put(transform, preview);
+		preview.task = this.scaledSource.thenAcceptAsync(scaled -> render(preview, scaled), POOL)
+				.exceptionally(ex -> {
+					Logger.getGlobal().log(Level.FINE, "Speculative render failed", ex);
+					synchronized (this) {
+						if (this.previews.get(transform) == preview) {
+							this.previews.remove(transform);
+						}
+					}
+					return null;
+				});
+	}
+
+	// caller holds the lock
+	private void discard(Preview preview) {
+		this.previews.remove(preview.transform);
+		if (preview.image != null) {
+			this.bytes -= preview.bytes;
+			if (!preview.used) {
+				this.wasted++;
+				this.wastedNanos += preview.nanos;
+			}
+		} else if (preview.task != null && preview.task.cancel(false)) {
+			this.cancelled++;
+		}
+	}
+
+	private void render(Preview preview, Object scaled) {
+		synchronized (this) {
+			// dropped while waiting for a thread
+			if (this.previews.get(preview.transform) != preview) {
+				return;
+			}
+		}
+		long start = System.nanoTime();
+		Object image = this.domain.renderImage(scaled, scale(preview.transform, scaled));
+		long nanos = System.nanoTime() - start;
+		// crops without a rotation are views of the scaled source and cost nothing extra
+		long size = preview.transform.getOrientation() == Orientation.IDENTITY ? 0 : this.domain.imageSize(image);
+		synchronized (this) {
+			this.rendered++;
+			this.renderNanos += nanos;
+			if (this.previews.get(preview.transform) != preview) {
+				// dropped while rendering
+				this.wasted++;
+				this.wastedNanos += nanos;
+			} else if (this.bytes + size > this.budgetBytes) {
+				this.previews.remove(preview.transform);
+				this.skipped++;
+				this.wastedNanos += nanos;
+			} else {
+				preview.image = image;
+				preview.bytes = size;
+				preview.nanos = nanos;
+				this.bytes += size;
+			}
+		}
+	}
+
+	// the transformation composed for the full source, mapped onto its scaled copy
+	private ImageTransform scale(ImageTransform transform, Object scaled) {
+		ImageTransform identity = this.domain.identityTransform(scaled);
+		double sx = (double) identity.width() / transform.getSourceWidth();
+		double sy = (double) identity.height() / transform.getSourceHeight();
+		ImageTransform cropped = identity;
+		if (transform.isCropped()) {
+			int x = (int) Math.floor(transform.getCropX() * sx);
+			int y = (int) Math.floor(transform.getCropY() * sy);
+			int w = (int) Math.ceil((transform.getCropX() + transform.getCropWidth()) * sx) - x;
+			int h = (int) Math.ceil((transform.getCropY() + transform.getCropHeight()) * sy) - y;
+			cropped = identity.crop(x, y, w, h);
+		}
+		return cropped.then(transform.getOrientation());
+	}
+}
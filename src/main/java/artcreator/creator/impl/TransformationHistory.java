@@ -0,0 +1,284 @@
+package artcreator.creator.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import artcreator.domain.port.Domain;
+import artcreator.domain.port.ImageTransform;
+
+/**
+ * Undo/redo history bounded by memory instead of entry count.
+ *
+ * A step records the session state (source image + composed transformation)
+ * before and after an edit. Geometric edits keep the same source image, so the
+ * step only stores two small {@link ImageTransform}s: rotations and mirrors
+ * are undone by the previous orientation, a crop by its parent region. Only
+ * edits that replace the source image pin a full {@link Snapshot}.
+ *
+ * Snapshots count against the heap budget. When it is exceeded the oldest
+ * snapshots are spilled to disk through {@link Domain#spillImage(Object)} and
+ * mapped back on undo, so history depth is limited by disk rather than heap.
+ * A snapshot that cannot be spilled stays on the heap and is skipped from
+ * then on; only if no snapshot can be spilled are the oldest steps dropped.
+ */
+class TransformationHistory {
+
+	/** Default heap budget for retained snapshots and entries: 256 MB. */
+	static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+
+	// rough heap cost of one step without pixels
+	static final long STEP_OVERHEAD_BYTES = 96;
+
+	/** An image referenced by one or more steps, either on the heap or spilled. */
+	static final class Snapshot {
+		private Object image;
+		private Object spilled;
+		private int refs;
+		// spilling it failed once (e.g. an image layout the store cannot write); stays on the heap
+		private boolean unspillable;
+
+		private Snapshot(Object image) {
+			this.image = image;
+		}
+
+		boolean isSpilled() {
+			return this.image == null;
+		}
+	}
+
+	static final class Step {
+		final Snapshot beforeImage;
+		final ImageTransform before;
+		final Snapshot afterImage;
+		final ImageTransform after;
+
+		private Step(Snapshot beforeImage, ImageTransform before, Snapshot afterImage, ImageTransform after) {
+			this.beforeImage = beforeImage;
+			this.before = before;
+			this.afterImage = afterImage;
+			this.after = after;
+		}
+
+		/** True if undoing or redoing this step needs no pixel snapshot. */
+		boolean isGeometric() {
+			return this.beforeImage == this.afterImage;
+		}
+	}
+
+	private final Domain domain;
+	private final Deque<Step> undo = new ArrayDeque<>();
+	private final Deque<Step> redo = new ArrayDeque<>();
+	// snapshots whose pixels are on the heap, keyed by image identity
+	private final Map<Object, Snapshot> onHeap = new IdentityHashMap<>();
+	private long budgetBytes;
+	private long heapBytes;
+	private boolean spilling = true;
+	// the live source image is held by the session anyway: never charged or spilled
+	private Snapshot live;
+
+	TransformationHistory(Domain domain, long budgetBytes) {
+		this.domain = domain;
+		this.budgetBytes = budgetBytes;
+	}
+
+	/** Records a new step; clears the redo branch. */
+	void record(Object beforeImage, ImageTransform before, Object afterImage, ImageTransform after) {
+		clearRedo();
+		Snapshot b = snapshotOf(beforeImage);
+		Snapshot a = (afterImage == beforeImage) ? b : snapshotOf(afterImage);
+		Step step = new Step(b, before, a, after);
+		pin(step);
+		this.undo.push(step);
+		this.live = a;
+		trim();
+	}
+
+	/** Pops the newest step for undo, or returns null if there is none. */
+	Step undo() {
+		Step step = this.undo.poll();
+		if (step != null) {
+			this.redo.push(step);
+			this.live = step.beforeImage;
+			// the image left behind is charged from now on
+			trim();
+		}
+		return step;
+	}
+
+	/** Pops the newest undone step for redo, or returns null if there is none. */
+	Step redo() {
+		Step step = this.redo.poll();
+		if (step != null) {
+			this.undo.push(step);
+			this.live = step.afterImage;
+			trim();
+		}
+		return step;
+	}
+
+	/** The step {@link #undo()} would return, or null; the history is not changed. */
+	Step peekUndo() {
+		return this.undo.peek();
+	}
+
+	/** The step {@link #redo()} would return, or null; the history is not changed. */
+	Step peekRedo() {
+		return this.redo.peek();
+	}
+
+	/** Returns the snapshot's image, mapping it back from disk if necessary. */
+	Object resolve(Snapshot snapshot) throws IOException {
+		if (snapshot.isSpilled()) {
+			snapshot.image = this.domain.restoreImage(snapshot.spilled);
+			this.onHeap.put(snapshot.image, snapshot);
+			this.heapBytes += this.domain.imageSize(snapshot.image);
+			// the restored image is live now; older ones may have to make room
+			trim();
+		}
+		return snapshot.image;
+	}
+
+	void clear() {
+		this.undo.forEach(this::unpin);
+		this.redo.forEach(this::unpin);
+		this.undo.clear();
+		this.redo.clear();
+		this.live = null;
+	}
+
+	boolean canUndo() {
+		return !this.undo.isEmpty();
+	}
+
+	boolean canRedo() {
+		return !this.redo.isEmpty();
+	}
+
+	int size() {
+		return this.undo.size() + this.redo.size();
+	}
+
+	void setBudgetBytes(long budgetBytes) {
+		if (budgetBytes < 0) {
+			throw new IllegalArgumentException("History budget must not be negative: " + budgetBytes);
+		}
+		this.budgetBytes = budgetBytes;
+		trim();
+	}
+
+	long getBudgetBytes() {
+		return this.budgetBytes;
+	}
+
+	/** Enables or disables spilling; without it the oldest steps are dropped. */
+	void setSpilling(boolean spilling) {
+		this.spilling = spilling;
+	}
+
+	/** Heap bytes retained by the history, excluding the live source image. */
+	long memoryInUse() {
+		boolean liveCharged = this.live != null && this.live.refs > 0 && !this.live.isSpilled();
+		long liveBytes = liveCharged ? this.domain.imageSize(this.live.image) : 0;
+		return this.heapBytes - liveBytes + size() * STEP_OVERHEAD_BYTES;
+	}
+
+	// spills, and if that is impossible drops, the oldest snapshots until the budget holds
+	private void trim() {
+		while (memoryInUse() > this.budgetBytes) {
+			if (spillOldest()) {
+				continue;
+			}
+			if (this.undo.isEmpty()) {
+				break;
+			}
+			unpin(this.undo.removeLast());
+		}
+	}
+
+	private boolean spillOldest() {
+		if (!this.spilling) {
+			return false;
+		}
+		// undo stack from the bottom, then the redo stack from the bottom
+		for (Iterator<Step> it = this.undo.descendingIterator(); it.hasNext();) {
+			Step step = it.next();
+			if (spill(step.beforeImage) || spill(step.afterImage))
+				return true;
+		}
+		for (Iterator<Step> it = this.redo.descendingIterator(); it.hasNext();) {
+			Step step = it.next();
+			if (spill(step.afterImage) || spill(step.beforeImage))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean spill(Snapshot snapshot) {
+		if (snapshot.isSpilled() || snapshot.unspillable || snapshot == this.live || !this.spilling) {
+			return false;
+		}
+		try {
+			if (snapshot.spilled == null) {
+				snapshot.spilled = this.domain.spillImage(snapshot.image);
+			}
+		} catch (IOException | RuntimeException e) {
+			Logger.getGlobal().log(Level.WARNING, "Could not spill a history snapshot, keeping it on the heap", e);
+			snapshot.unspillable = true;
+			return false;
+		}
+		this.onHeap.remove(snapshot.image);
+		this.heapBytes -= this.domain.imageSize(snapshot.image);
+		snapshot.image = null;
+		return true;
+	}
+
+	private Snapshot snapshotOf(Object image) {
+		Snapshot snapshot = this.onHeap.get(image);
+		if (snapshot == null) {
+			snapshot = new Snapshot(image);
+			this.onHeap.put(image, snapshot);
+			this.heapBytes += this.domain.imageSize(image);
+		}
+		return snapshot;
+	}
+
+	private void clearRedo() {
+		while (!this.redo.isEmpty()) {
+			unpin(this.redo.pop());
+		}
+	}
+
+	private void pin(Step step) {
+		step.beforeImage.refs++;
+		if (!step.isGeometric()) {
+			step.afterImage.refs++;
+		}
+	}
+
+	private void unpin(Step step) {
+		unpin(step.beforeImage);
+		if (!step.isGeometric()) {
+			unpin(step.afterImage);
+		}
+	}
+
+	private void unpin(Snapshot snapshot) {
+		if (--snapshot.refs > 0) {
+			return;
+		}
+		if (!snapshot.isSpilled()) {
+			this.onHeap.remove(snapshot.image);
+			this.heapBytes -= this.domain.imageSize(snapshot.image);
+		}
+		if (snapshot.spilled != null) {
+			this.domain.releaseImage(snapshot.spilled);
+			snapshot.spilled = null;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package artcreator.creator.port;
 
+import java.util.concurrent.TimeUnit;
+
 // Assuming these types exist in domain.port or act as placeholders
 // In a real scenario, you would import artcreator.domain.port.ArtImage etc.
 
@@ -13,22 +15,71 @@ public interface Creator {
 	 */
 	Object importImage(String path) throws IllegalStateException;
 
+	/**
+	 * Decodes a quick, reduced-resolution preview of an image file without
+	 * importing it. Does not change the state.
+	 * @param path The file path to the image.
+	 * @param maxDimension Upper bound for the preview's width and height.
+	 * @return The preview image object.
+	 */
+	Object previewImage(String path, int maxDimension);
+
 	/**
 	 * Applies geometric transformations (crop, rotate) to the current image.
-	 * @param transformConfig Configuration object (e.g., specific enum or params).
-	 * @return The modified domain image object.
+	 * A sequence of operations (List, array or ';'-separated string) is composed
+	 * and rendered in a single pass.
+	 * @param transformConfig A {@code TransformCommand}, an operation string, or a List/array of them.
+	 * @return The modified domain image object, or the composed transformation in lazy mode.
 	 * @throws IllegalStateException if no image is loaded.
 	 */
 	Object applyTransformation(Object transformConfig) throws IllegalStateException;
 
 	/**
-	 * Undo the last transformation (single-level undo).
+	 * Undo the last transformation. History depth is limited by a memory budget;
+	 * geometric edits cost almost nothing.
 	 * 
 	 * @return The restored image object.
 	 * @throws IllegalStateException if undo is not possible.
 	 */
 	Object undoLastTransformation() throws IllegalStateException;
 
+	/**
+	 * Redo the last undone transformation. Applying a new transformation
+	 * discards the redo history.
+	 * 
+	 * @return The restored image object.
+	 * @throws IllegalStateException if redo is not possible.
+	 */
+	Object redoLastTransformation() throws IllegalStateException;
+
+	/**
+	 * Returns the current image, rendering any pending transformations first.
+	 * @return The current domain image object, or null if no image is loaded.
+	 */
+	Object currentImage();
+
+	/**
+	 * In lazy mode transformations are only composed; pixels are rendered when
+	 * {@link #currentImage()} or {@link #generateTemplate(Object)} needs them.
+	 * @param lazy true to defer rendering.
+	 */
+	void setLazy(boolean lazy);
+
+	/**
+	 * With speculation on, the results of the likely next clicks (rotations,
+	 * mirrors, undo, redo) are rendered at preview resolution in the
+	 * background after every change. Off by default.
+	 * @param speculative true to speculate.
+	 */
+	void setSpeculative(boolean speculative);
+
+	/**
+	 * Returns a preview-resolution image of the current state if speculation
+	 * has already rendered it. Never renders or waits.
+	 * @return The preview image object, or null.
+	 */
+	Object peekImage();
+
 	/**
 	 * Generates the art template based on material and color parameters.
 	 * @param templateConfig Configuration for the template (material, size, colors).
@@ -37,4 +88,34 @@ public interface Creator {
 	 */
 	Object generateTemplate(Object templateConfig) throws IllegalStateException;
 
+	/**
+	 * Writes a generated template to a file. Does not change the state and
+	 * may run while the session is busy.
+	 * @param template A template returned by {@link #generateTemplate(Object)}.
+	 * @param path The target file; its extension (.png, .svg, .pdf or .csv) selects the format.
+	 * @param cellSize Edge length of one cell in pixels (PNG) or points (SVG, PDF).
+	 * @throws IllegalArgumentException if the format or cell size is not supported.
+	 */
+	void exportTemplate(Object template, String path, int cellSize);
+
+	/**
+	 * Generates the art template, giving up after a timeout.
+	 * @param templateConfig Configuration for the template (material, size, colors).
+	 * @param timeout Maximum time to spend, 0 for no limit.
+	 * @param unit Unit of the timeout.
+	 * @return The final template object ready for preview/export.
+	 * @throws IllegalStateException if no image is loaded or another operation is running.
+	 * @throws RuntimeException caused by a {@code TimeoutException} if the timeout expired.
+	 * @throws java.util.concurrent.CancellationException if {@link #cancel()} was called.
+	 */
+	Object generateTemplate(Object templateConfig, long timeout, TimeUnit unit) throws IllegalStateException;
+
+	/**
+	 * Cancels a running template generation; it ends with a
+	 * {@code CancellationException} and the state returns to where it was.
+	 * May be called from any thread.
+	 * @return true if a generation was running.
+	 */
+	boolean cancel();
+
 }
\ No newline at end of file
@@ -1,13 +1,46 @@
 package artcreator.domain;
 
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
 import artcreator.domain.impl.DomainImpl;
+import artcreator.domain.port.CacheStats;
 import artcreator.domain.port.Domain;
+import artcreator.domain.port.ImageTransform;
+import artcreator.domain.port.TransformCommand;
+import artcreator.metrics.Metrics;
+import artcreator.metrics.Operation;
 
 public class DomainFacade implements DomainFactory, Domain {
 
+	// Zeitmessung der teuren Operationen
+	private static final Operation LOAD = Metrics.global().operation("domain.loadImage");
+	private static final Operation LOAD_PREVIEW = Metrics.global().operation("domain.loadPreview");
+	private static final Operation TRANSFORM = Metrics.global().operation("domain.transformImage");
+	private static final Operation RENDER = Metrics.global().operation("domain.renderImage");
+	private static final Operation SCALE = Metrics.global().operation("domain.scaleImage");
+	private static final Operation TEMPLATE = Metrics.global().operation("domain.generateTemplate");
+	private static final Operation EXPORT = Metrics.global().operation("domain.exportTemplate");
+	private static final Operation LOAD_TEMPLATE = Metrics.global().operation("domain.loadTemplate");
+	private static final Operation SPILL = Metrics.global().operation("domain.spillImage");
+	private static final Operation RESTORE = Metrics.global().operation("domain.restoreImage");
+
 	// Instanz der eigentlichen Implementierung
 	private DomainImpl domainImpl = new DomainImpl();
 
+	public DomainFacade() {
+		DomainImpl impl = this.domainImpl;
+		Metrics metrics = Metrics.global();
+		metrics.gauge("domain.imageCacheBytes", () -> impl.imageCacheStats().getBytes());
+		metrics.gauge("domain.imageCacheEntries", () -> impl.imageCacheStats().getEntries());
+		metrics.gauge("domain.imageCacheHits", () -> impl.imageCacheStats().getHits());
+		metrics.gauge("domain.imageCacheMisses", () -> impl.imageCacheStats().getMisses());
+		metrics.gauge("domain.templateIntegralBytes", impl::templateIntegralBytes);
+		// Vorlagen werden im gemeinsamen ForkJoinPool berechnet
+		metrics.gauge("domain.commonPoolQueued", () -> ForkJoinPool.commonPool().getQueuedTaskCount());
+	}
+
 	@Override
 	public synchronized Domain domain() {
 		if (this.domainImpl == null) {
@@ -29,11 +62,113 @@ public class DomainFacade implements DomainFactory, Domain {
 	 */
 	@Override
 	public Object loadImage(String path) throws Exception {
-		return this.domainImpl.loadImage(path);
+		try (Operation.Sample sample = LOAD.start()) {
+			return sample.done(this.domainImpl.loadImage(path));
+		}
+	}
+
+	@Override
+	public CacheStats imageCacheStats() {
+		return this.domainImpl.imageCacheStats();
+	}
+
+	@Override
+	public Object loadPreview(String path, int maxDimension) throws Exception {
+		try (Operation.Sample sample = LOAD_PREVIEW.start()) {
+			return sample.done(this.domainImpl.loadPreview(path, maxDimension));
+		}
+	}
+
+	@Override
+	public Object transformImage(Object image, TransformCommand command) {
+		try (Operation.Sample sample = TRANSFORM.start()) {
+			return sample.done(this.domainImpl.transformImage(image, command));
+		}
 	}
 
 	@Override
 	public Object transformImage(Object image, String operation) {
-		return this.domainImpl.transformImage(image, operation);
+		try (Operation.Sample sample = TRANSFORM.start()) {
+			return sample.done(this.domainImpl.transformImage(image, TransformCommand.parse(operation)));
+		}
+	}
+
+	@Override
+	public ImageTransform identityTransform(Object image) {
+		return this.domainImpl.identityTransform(image);
+	}
+
+	@Override
+	public Object renderImage(Object image, ImageTransform transform) {
+		try (Operation.Sample sample = RENDER.start()) {
+			return sample.done(this.domainImpl.renderImage(image, transform));
+		}
+	}
+
+	@Override
+	public Object scaleImage(Object image, int maxDimension) {
+		try (Operation.Sample sample = SCALE.start()) {
+			return sample.done(this.domainImpl.scaleImage(image, maxDimension));
+		}
+	}
+
+	@Override
+	public Object generateTemplate(Object image, Object config) {
+		try (Operation.Sample sample = TEMPLATE.start()) {
+			return sample.done(this.domainImpl.generateTemplate(image, config));
+		}
+	}
+
+	@Override
+	public Object generateTemplate(Object image, Object config, BooleanSupplier cancelled) {
+		try (Operation.Sample sample = TEMPLATE.start()) {
+			return sample.done(this.domainImpl.generateTemplate(image, config, cancelled));
+		}
+	}
+
+	@Override
+	public Object generateTemplate(Object image, Object version, Object config, BooleanSupplier cancelled) {
+		try (Operation.Sample sample = TEMPLATE.start()) {
+			return sample.done(this.domainImpl.generateTemplate(image, version, config, cancelled));
+		}
+	}
+
+	@Override
+	public void exportTemplate(Object template, String path, int cellSize) throws IOException {
+		try (Operation.Sample sample = EXPORT.start()) {
+			this.domainImpl.exportTemplate(template, path, cellSize);
+			sample.done();
+		}
+	}
+
+	@Override
+	public Object loadTemplate(String path) throws IOException {
+		try (Operation.Sample sample = LOAD_TEMPLATE.start()) {
+			return sample.done(this.domainImpl.loadTemplate(path));
+		}
+	}
+
+	@Override
+	public long imageSize(Object image) {
+		return this.domainImpl.imageSize(image);
+	}
+
+	@Override
+	public Object spillImage(Object image) throws IOException {
+		try (Operation.Sample sample = SPILL.start()) {
+			return sample.done(this.domainImpl.spillImage(image));
+		}
+	}
+
+	@Override
+	public Object restoreImage(Object spilled) throws IOException {
+		try (Operation.Sample sample = RESTORE.start()) {
+			return sample.done(this.domainImpl.restoreImage(spilled));
+		}
+	}
+
+	@Override
+	public void releaseImage(Object spilled) {
+		this.domainImpl.releaseImage(spilled);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,305 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import artcreator.domain.port.CacheStats;
+
+/**
+ * Decoded images keyed by file content, so re-importing a file skips the
+ * decoder.
+ *
+ * A file is identified by path, modification time and size; the first time
+ * such a triple is seen its content is hashed (CRC32C and CRC32, 64 bits
+ * together, plus the length). Images are cached by that content key, so a
+ * copy of a file at another path is a hit as well. Images are kept under a
+ * heap budget with least-recently-used eviction.
+ *
+ * Optionally, decoded pixels are also written to a directory as raw rasters
+ * (a 32 byte header followed by the data buffer). They are memory-mapped and
+ * copied back on a memory miss, which is much cheaper than decoding a
+ * compressed file again.
+ *
+ * Cached images are shared between loads and must not be modified.
+ */
+final class DecodedImageCache {
+
+	/** Decodes the image on a miss. */
+	interface Loader {
+		BufferedImage load() throws IOException;
+	}
+
+	// 'ACRI' + format version
+	private static final int MAGIC = 0x41435249;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int CHUNK_BYTES = 1 << 20;
+	// path/mtime/size -> content key; only small strings, but still bounded
+	private static final int MAX_FINGERPRINTS = 4096;
+
+	private final Map<List<Object>, String> contentKeys = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest) {
+			return size() > MAX_FINGERPRINTS;
+		}
+	};
+	// access order: the first entry is the least recently used
+	private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+	private long budgetBytes;
+	private long bytes;
+	private Path directory;
+
+	private long hits;
+	private long diskHits;
+	private long misses;
+	private long evictions;
+
+	DecodedImageCache(long budgetBytes, Path directory) {
+		this.budgetBytes = budgetBytes;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the decoded image of the file from memory, from the disk cache or
+	 * from the loader, in that order. Decoding happens outside the lock, so
+	 * loads of different files do not wait for each other.
+	 */
+	BufferedImage get(File file, Loader loader) throws IOException {
+		String key = contentKey(file);
+		Path raw;
+		synchronized (this) {
+			BufferedImage cached = this.images.get(key);
+			if (cached != null) {
+				this.hits++;
+				return cached;
+			}
+			raw = this.directory == null ? null : this.directory.resolve(key + ".raw");
+		}
+
+		BufferedImage image = raw == null ? null : readRaw(raw);
+		boolean fromDisk = image != null;
+		if (image == null) {
+			image = loader.load();
+			if (raw != null) {
+				writeRaw(raw, image);
+			}
+		}
+
+		synchronized (this) {
+			if (fromDisk) {
+				this.diskHits++;
+			} else {
+				this.misses++;
+			}
+			put(key, image);
+		}
+		return image;
+	}
+
+	synchronized void setBudgetBytes(long budgetBytes) {
+		if (budgetBytes < 0) {
+			throw new IllegalArgumentException("Cache budget must not be negative: " + budgetBytes);
+		}
+		this.budgetBytes = budgetBytes;
+		evict();
+	}
+
+	/** Sets the directory of the persistent cache, or null to disable it. */
+	synchronized void setDirectory(Path directory) {
+		this.directory = directory;
+	}
+
+	synchronized void clear() {
+		this.images.clear();
+		this.bytes = 0;
+	}
+
+	synchronized CacheStats stats() {
+		return new CacheStats(this.hits, this.diskHits, this.misses, this.evictions, this.images.size(), this.bytes,
+				this.budgetBytes);
+	}
+
+	private void put(String key, BufferedImage image) {
+		long size = sizeOf(image);
+		if (size > this.budgetBytes) {
+			return;
+		}
+		BufferedImage previous = this.images.put(key, image);
+		if (previous != null) {
+			this.bytes -= sizeOf(previous);
+		}
+		this.bytes += size;
+		evict();
+	}
+
+	private void evict() {
+		for (Iterator<BufferedImage> it = this.images.values().iterator(); this.bytes > this.budgetBytes
+				&& it.hasNext();) {
+			this.bytes -= sizeOf(it.next());
+			it.remove();
+			this.evictions++;
+		}
+	}
+
+	private String contentKey(File file) throws IOException {
+		Path path = file.toPath().toAbsolutePath().normalize();
+		if (!Files.exists(path)) {
+			throw new FileNotFoundException("File not found: " + file.getPath());
+		}
+		long size = Files.size(path);
+		List<Object> fingerprint = List.of(path.toString(), Files.getLastModifiedTime(path).toMillis(), size);
+		synchronized (this) {
+			String key = this.contentKeys.get(fingerprint);
+			if (key != null) {
+				return key;
+			}
+		}
+		String key = hash(path, size);
+		synchronized (this) {
+			this.contentKeys.put(fingerprint, key);
+		}
+		return key;
+	}
+
+	private static String hash(Path path, long size) throws IOException {
+		CRC32C crc32c = new CRC32C();
+		CRC32 crc32 = new CRC32();
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (ch.read(chunk.clear()) > 0) {
+				chunk.flip();
+				crc32c.update(chunk.duplicate());
+				crc32.update(chunk);
+			}
+		}
+		return String.format("%08x%08x-%x", crc32c.getValue(), crc32.getValue(), size);
+	}
+
+	static long sizeOf(BufferedImage image) {
+		DataBuffer db = image.getRaster().getDataBuffer();
+		return (long) db.getSize() * db.getNumBanks() * (DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+	}
+
+	// --- raw disk format: magic, version, image type, width, height, elements, 8 spare bytes; then the data
+
+	private static void writeRaw(Path raw, BufferedImage image) {
+		if (!isStandardLayout(image)) {
+			return;
+		}
+		DataBuffer db = image.getRaster().getDataBuffer();
+		int bytesPerElement = DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+		Path tmp = null;
+		try {
+			Files.createDirectories(raw.getParent());
+			tmp = Files.createTempFile(raw.getParent(), "decoded", ".tmp");
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				chunk.putInt(MAGIC).putInt(VERSION).putInt(image.getType()).putInt(image.getWidth())
+						.putInt(image.getHeight()).putInt(db.getSize()).putLong(0).flip();
+				writeFully(ch, chunk);
+				int perChunk = CHUNK_BYTES / bytesPerElement;
+				for (int i = 0; i < db.getSize(); i += perChunk) {
+					int n = Math.min(perChunk, db.getSize() - i);
+					chunk.clear();
+					if (db instanceof DataBufferInt dbi) {
+						chunk.asIntBuffer().put(dbi.getData(), i, n);
+					} else if (db instanceof DataBufferByte dbb) {
+						chunk.put(dbb.getData(), i, n);
+					} else {
+						chunk.asShortBuffer().put(((DataBufferUShort) db).getData(), i, n);
+					}
+					chunk.position(0).limit(n * bytesPerElement);
+					writeFully(ch, chunk);
+				}
+			}
+			Files.move(tmp, raw, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Could not write decoded image cache file " + raw, e);
+			try {
+				if (tmp != null) {
+					Files.deleteIfExists(tmp);
+				}
+			} catch (IOException ignored) {
+				// nothing left to clean up
+			}
+		}
+	}
+
+	private static BufferedImage readRaw(Path raw) {
+		if (!Files.isRegularFile(raw)) {
+			return null;
+		}
+		try (FileChannel ch = FileChannel.open(raw, StandardOpenOption.READ)) {
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.remaining() < HEADER_BYTES || map.getInt() != MAGIC || map.getInt() != VERSION) {
+				throw new IOException("Not a decoded image cache file");
+			}
+			BufferedImage image = new BufferedImage(map.getInt(12), map.getInt(16), map.getInt(8));
+			int elements = map.getInt(20);
+			DataBuffer db = image.getRaster().getDataBuffer();
+			int bytesPerElement = DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+			if (db.getSize() != elements || map.capacity() != HEADER_BYTES + (long) elements * bytesPerElement) {
+				throw new IOException("Decoded image cache file does not match its header");
+			}
+			map.position(HEADER_BYTES);
+			if (db instanceof DataBufferInt dbi) {
+				map.asIntBuffer().get(dbi.getData());
+			} else if (db instanceof DataBufferByte dbb) {
+				map.get(dbb.getData());
+			} else {
+				map.asShortBuffer().get(((DataBufferUShort) db).getData());
+			}
+			return image;
+		} catch (IOException | RuntimeException e) {
+			Logger.getGlobal().log(Level.WARNING, "Ignoring unreadable decoded image cache file " + raw, e);
+			return null;
+		}
+	}
+
+	// only predefined image types can be rebuilt from type, width and height
+	private static boolean isStandardLayout(BufferedImage image) {
+		int type = image.getType();
+		if (type == BufferedImage.TYPE_CUSTOM || type == BufferedImage.TYPE_BYTE_BINARY
+				|| type == BufferedImage.TYPE_BYTE_INDEXED) {
+			return false;
+		}
+		DataBuffer db = image.getRaster().getDataBuffer();
+		if (db.getNumBanks() != 1 || db.getOffset() != 0 || image.getRaster().getParent() != null) {
+			return false;
+		}
+		DataBuffer expected = new BufferedImage(1, 1, type).getRaster().getDataBuffer();
+		return expected.getClass() == db.getClass()
+				&& (long) db.getSize() == (long) image.getWidth() * image.getHeight() * expected.getSize();
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			ch.write(buffer);
+		}
+	}
+}
@@ -1,131 +1,264 @@
 package artcreator.domain.impl;
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
+import artcreator.domain.kernel.PixelKernels;
+import artcreator.domain.port.CacheStats;
+import artcreator.domain.port.ImageTransform;
+import artcreator.domain.port.Orientation;
+import artcreator.domain.port.Template;
+import artcreator.domain.port.TemplateConfig;
+import artcreator.domain.port.TransformCommand;
 
 public class DomainImpl {
 
+	/** Heap budget of the decoded-image cache, in bytes. */
+	public static final String CACHE_BYTES_PROPERTY = "artcreator.imageCache.bytes";
+	/** Directory for decoded images that survive restarts; unset to keep them in memory only. */
+	public static final String CACHE_DIR_PROPERTY = "artcreator.imageCache.dir";
+	private static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+	/** Bytes all integral images kept for regenerating templates may take; 0 turns them off. */
+	public static final String INTEGRAL_BYTES_PROPERTY = "artcreator.template.integralBytes";
+	private static final long DEFAULT_INTEGRAL_BYTES = 64L * 1024 * 1024;
+	private static final int IDLE_DECODERS = 4;
+
+	private final SpillStore spillStore = new SpillStore();
+	private final TemplateEngine templateEngine = new TemplateEngine(ForkJoinPool.commonPool(),
+			Long.getLong(INTEGRAL_BYTES_PROPERTY, DEFAULT_INTEGRAL_BYTES));
+	// idle decoders of recently previewed files, least recently used first; a
+	// preview takes one out, so concurrent previews never share a decoder
+	private final Map<File, ImageDecoder> idleDecoders = new LinkedHashMap<>(16, 0.75f, true);
+	private final DecodedImageCache imageCache = new DecodedImageCache(
+			Long.getLong(CACHE_BYTES_PROPERTY, DEFAULT_CACHE_BYTES),
+			System.getProperty(CACHE_DIR_PROPERTY) == null ? null : Path.of(System.getProperty(CACHE_DIR_PROPERTY)));
+
 	public Object mkObject() { return null; }
 
 	public Object loadImage(String path) throws Exception {
+		return this.imageCache.get(new File(path), () -> {
+			// a decoder of its own: full loads may run in parallel
+			try (ImageDecoder full = ImageDecoder.open(new File(path))) {
+				return full.full();
+			}
+		});
+	}
+
+	public Object loadPreview(String path, int maxDimension) throws Exception {
 		File file = new File(path);
-		if (!file.exists()) throw new java.io.FileNotFoundException("File not found: " + path);
-		return ImageIO.read(file);
+		ImageDecoder decoder = takeDecoder(file);
+		try {
+			BufferedImage preview = decoder.preview(maxDimension);
+			putBackDecoder(file, decoder);
+			return preview;
+		} catch (IOException | RuntimeException e) {
+			close(decoder);
+			throw e;
+		}
 	}
 
-	public Object transformImage(Object imageObj, String operation) {
-		if (!(imageObj instanceof BufferedImage)) {
-			throw new IllegalArgumentException("Invalid image object provided.");
+	// an idle decoder of the unmodified file, or a new one
+	private ImageDecoder takeDecoder(File file) throws IOException {
+		ImageDecoder idle;
+		synchronized (this.idleDecoders) {
+			idle = this.idleDecoders.remove(file);
+		}
+		if (idle != null) {
+			if (idle.isCurrentFor(file)) {
+				return idle;
+			}
+			close(idle);
 		}
+		return ImageDecoder.open(file);
+	}
+
+	private void putBackDecoder(File file, ImageDecoder decoder) {
+		ImageDecoder replaced, evicted = null;
+		synchronized (this.idleDecoders) {
+			replaced = this.idleDecoders.put(file, decoder);
+			if (this.idleDecoders.size() > IDLE_DECODERS) {
+				Iterator<ImageDecoder> eldest = this.idleDecoders.values().iterator();
+				evicted = eldest.next();
+				eldest.remove();
+			}
+		}
+		close(replaced);
+		close(evicted);
+	}
 
-		BufferedImage src = (BufferedImage) imageObj;
-
-		String op = operation.toLowerCase();
-		switch (op) {
-			case "rotate_left":
-				return rotate(src, -90);
-			case "rotate_right":
-				return rotate(src, 90);
-			case "mirror":
-				// default mirror horizontally
-				return mirror(src, true);
-			case "mirror_horizontal":
-				return mirror(src, true);
-			case "mirror_vertical":
-				return mirror(src, false);
-			case "crop_center":
-				// center crop: take half width/height centered
-				int cw = Math.max(1, src.getWidth() / 2);
-				int ch = Math.max(1, src.getHeight() / 2);
-				int cx = Math.max(0, (src.getWidth() - cw) / 2);
-				int cy = Math.max(0, (src.getHeight() - ch) / 2);
-				return src.getSubimage(cx, cy, cw, ch);
-			default:
-				// support crop with explicit params: "crop:x,y,w,h"
-				if (op.startsWith("crop:")) {
-					try {
-						String[] parts = operation.substring(operation.indexOf(':') + 1).split(",");
-						if (parts.length == 4) {
-							int x = Integer.parseInt(parts[0].trim());
-							int y = Integer.parseInt(parts[1].trim());
-							int w2 = Integer.parseInt(parts[2].trim());
-							int h2 = Integer.parseInt(parts[3].trim());
-							// clamp
-							x = Math.max(0, Math.min(x, src.getWidth() - 1));
-							y = Math.max(0, Math.min(y, src.getHeight() - 1));
-							w2 = Math.max(1, Math.min(w2, src.getWidth() - x));
-							h2 = Math.max(1, Math.min(h2, src.getHeight() - y));
-							return src.getSubimage(x, y, w2, h2);
-						}
-					} catch (Exception ex) {
-						throw new IllegalArgumentException("Invalid crop parameters: " + ex.getMessage(), ex);
-					}
-				}
-				throw new IllegalArgumentException("Unknown transformation: " + operation);
+	private static void close(ImageDecoder decoder) {
+		if (decoder == null) {
+			return;
 		}
+		try {
+			decoder.close();
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Could not close image decoder", e);
+		}
+	}
+
+	public Object transformImage(Object imageObj, TransformCommand command) {
+		BufferedImage src = asImage(imageObj);
+		return renderImage(src, ImageTransform.identity(src.getWidth(), src.getHeight()).then(command));
+	}
+
+	public ImageTransform identityTransform(Object imageObj) {
+		BufferedImage src = asImage(imageObj);
+		return ImageTransform.identity(src.getWidth(), src.getHeight());
 	}
 
 	/**
-	 * Rotates the image by 90 or -90 degrees.
-	 * Swaps width and height and ensures the image stays within bounds.
+	 * Renders a composed transformation in a single pass: the crop becomes a
+	 * (zero-copy) subimage, the orientation one raster remap.
 	 */
-	private BufferedImage rotate(BufferedImage src, int angleDegrees) {
-		int w = src.getWidth();
-		int h = src.getHeight();
-
-		// 1. Create a new image with SWAPPED dimensions
-		//    (Width becomes Height, Height becomes Width)
-		BufferedImage dest = new BufferedImage(h, w, src.getType());
+	public Object renderImage(Object imageObj, ImageTransform transform) {
+		BufferedImage src = asImage(imageObj);
+		if (src.getWidth() != transform.getSourceWidth() || src.getHeight() != transform.getSourceHeight()) {
+			throw new IllegalArgumentException("Transformation was composed for a different image size.");
+		}
+		BufferedImage region = src;
+		if (transform.isCropped()) {
+			region = src.getSubimage(transform.getCropX(), transform.getCropY(), transform.getCropWidth(),
+					transform.getCropHeight());
+		}
+		if (transform.getOrientation() == Orientation.IDENTITY) {
+			return region;
+		}
+		return RasterTransform.orient(region, transform.getOrientation());
+	}
 
-		Graphics2D g2d = dest.createGraphics();
+	/**
+	 * Scales down in steps of at most a factor of two with bilinear filtering,
+	 * so every source pixel still contributes to the result. Exact halvings of
+	 * TYPE_INT_RGB images are 2x2 averages computed by the {@link PixelKernels}.
+	 */
+	public Object scaleImage(Object imageObj, int maxDimension) {
+		BufferedImage src = asImage(imageObj);
+		if (maxDimension <= 0) {
+			throw new IllegalArgumentException("Invalid maximum dimension: " + maxDimension);
+		}
+		return scaleToFit(src, maxDimension);
+	}
 
-		// 2. Perform the correct translation based on direction
-		if (angleDegrees == 90) {
-			// ROTATE RIGHT (Clockwise)
-			// Move origin to Top-Right corner (h, 0)
-			g2d.translate(h, 0);
-			g2d.rotate(Math.toRadians(90));
-		} else if (angleDegrees == -90) {
-			// ROTATE LEFT (Counter-Clockwise)
-			// Move origin to Bottom-Left corner (0, w)
-			g2d.translate(0, w);
-			g2d.rotate(Math.toRadians(-90));
+	// scaleImage on a checked image; also used for oversized embedded thumbnails
+	static BufferedImage scaleToFit(BufferedImage src, int maxDimension) {
+		double scale = Math.min(1.0, (double) maxDimension / Math.max(src.getWidth(), src.getHeight()));
+		int targetW = Math.max(1, (int) Math.round(src.getWidth() * scale));
+		int targetH = Math.max(1, (int) Math.round(src.getHeight() * scale));
+		BufferedImage scaled = src;
+		while (scaled.getWidth() != targetW || scaled.getHeight() != targetH) {
+			int w = Math.max(targetW, (scaled.getWidth() + 1) / 2);
+			int h = Math.max(targetH, (scaled.getHeight() + 1) / 2);
+			// an exact halving is a 2x2 average, done by the pixel kernels where the layout allows
+			BufferedImage step = 2 * w == scaled.getWidth() && 2 * h == scaled.getHeight()
+					? RasterTransform.halve(scaled, PixelKernels.get())
+					: null;
+			if (step == null) {
+				step = RasterTransform.createCompatible(src, w, h);
+				Graphics2D g = step.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(scaled, 0, 0, w, h, null);
+				g.dispose();
+			}
+			scaled = step;
 		}
+		return scaled;
+	}
 
-		// 3. Draw the image
-		// Since we moved the origin (Translate) and turned the paper (Rotate),
-		// we can now just draw the image at (0,0) and it will land correctly.
-		g2d.drawImage(src, 0, 0, null);
-		g2d.dispose();
+	public Object generateTemplate(Object imageObj, Object configObj) {
+		return generateTemplate(imageObj, configObj, () -> false);
+	}
 
-		return dest;
+	public Object generateTemplate(Object imageObj, Object configObj, BooleanSupplier cancelled) {
+		return generateTemplate(imageObj, null, configObj, cancelled);
 	}
 
-	/**
-	 * Mirrors the image horizontally or vertically.
-	 * 
-	 * @param src        source image
-	 * @param horizontal true = horizontal mirror (left-right), false = vertical
-	 *                   (top-bottom)
-	 */
-	private BufferedImage mirror(BufferedImage src, boolean horizontal) {
-		int w = src.getWidth();
-		int h = src.getHeight();
-		BufferedImage dest = new BufferedImage(w, h, src.getType());
-		Graphics2D g2d = dest.createGraphics();
-		if (horizontal) {
-			// flip left-right: translate to right edge then scale X by -1
-			g2d.translate(w, 0);
-			g2d.scale(-1, 1);
+	public Object generateTemplate(Object imageObj, Object version, Object configObj, BooleanSupplier cancelled) {
+		BufferedImage src = asImage(imageObj);
+		TemplateConfig config;
+		if (configObj == null) {
+			config = TemplateConfig.defaults();
+		} else if (configObj instanceof TemplateConfig) {
+			config = (TemplateConfig) configObj;
 		} else {
-			// flip top-bottom: translate to bottom then scale Y by -1
-			g2d.translate(0, h);
-			g2d.scale(1, -1);
+			throw new IllegalArgumentException("Invalid template configuration provided.");
+		}
+		return this.templateEngine.generate(src, version, config, cancelled);
+	}
+
+	public void exportTemplate(Object templateObj, String path, int cellSize) throws IOException {
+		if (!(templateObj instanceof Template)) {
+			throw new IllegalArgumentException("Invalid template object provided.");
+		}
+		TemplateExport.write((Template) templateObj, new File(path), cellSize);
+	}
+
+	public Object loadTemplate(String path) throws IOException {
+		return Template.read(Path.of(path));
+	}
+
+	public long imageSize(Object imageObj) {
+		if (!(imageObj instanceof BufferedImage)) {
+			return 0;
+		}
+		// a subimage shares (and keeps alive) the whole buffer of its parent
+		return DecodedImageCache.sizeOf((BufferedImage) imageObj);
+	}
+
+	public CacheStats imageCacheStats() {
+		return this.imageCache.stats();
+	}
+
+	/** Bytes held for regenerating templates from the last image without reading its pixels. */
+	public long templateIntegralBytes() {
+		return this.templateEngine.integralBytes();
+	}
+
+	/** Sets the heap budget of the decoded-image cache; 0 disables caching. */
+	public void setImageCacheBudget(long bytes) {
+		this.imageCache.setBudgetBytes(bytes);
+	}
+
+	/** Enables the persistent decoded-image cache in the given directory, or disables it with null. */
+	public void setImageCacheDirectory(Path directory) {
+		this.imageCache.setDirectory(directory);
+	}
+
+	public Object spillImage(Object imageObj) throws IOException {
+		return this.spillStore.spill(asImage(imageObj));
+	}
+
+	public Object restoreImage(Object spilled) throws IOException {
+		return this.spillStore.restore(asSpilled(spilled));
+	}
+
+	public void releaseImage(Object spilled) {
+		this.spillStore.release(asSpilled(spilled));
+	}
+
+	private SpillStore.Spilled asSpilled(Object spilled) {
+		if (!(spilled instanceof SpillStore.Spilled)) {
+			throw new IllegalArgumentException("Not a spilled image handle.");
+		}
+		return (SpillStore.Spilled) spilled;
+	}
+
+	private BufferedImage asImage(Object imageObj) {
+		if (!(imageObj instanceof BufferedImage)) {
+			throw new IllegalArgumentException("Invalid image object provided.");
 		}
-		g2d.drawImage(src, 0, 0, null);
-		g2d.dispose();
-		return dest;
+		return (BufferedImage) imageObj;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package artcreator.domain.impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+import artcreator.domain.port.TemplateConfig.Dithering;
+
+/**
+ * Floyd-Steinberg and Atkinson error diffusion over a grid of cell colors,
+ * parallelized as a wavefront.
+ *
+ * Workers claim rows in order. Row y may process column x once row y - 1 has
+ * finished column x + 1, which is the last cell that diffuses error into
+ * (x, y) for both kernels. Error pushed to the next rows goes into buffers
+ * written by exactly one row, error within a row is carried locally, so every
+ * cell sums the same contributions in the same order no matter how many
+ * threads run: the result is deterministic.
+ *
+ * Cancellation is checked before a row is claimed, never inside one: every
+ * claimed row completes, so no worker waits forever on an abandoned row.
+ */
+final class ErrorDiffusion {
+
+	// how far ahead the row above must be before a cell can be finalized
+	private static final int LAG = 2;
+	// below this many cells a single worker is faster than coordination
+	private static final int PARALLEL_THRESHOLD = 64 * 1024;
+
+	private final int[] rgb;
+	private final int columns, rows;
+	private final PaletteIndex index;
+	private final int[] palette;
+	private final boolean atkinson;
+	private final int[] cells;
+
+	// error received from the row above / two rows above, 3 channels per cell
+	private final float[] fromAbove;
+	private final float[] fromTwoAbove;
+	// number of finished columns per row
+	private final AtomicIntegerArray progress;
+	private final AtomicInteger nextRow = new AtomicInteger();
+	private final BooleanSupplier cancelled;
+
+	private ErrorDiffusion(int[] rgb, int columns, int rows, PaletteIndex index, int[] palette, boolean atkinson,
+			BooleanSupplier cancelled) {
+		this.rgb = rgb;
+		this.columns = columns;
+		this.rows = rows;
+		this.index = index;
+		this.palette = palette;
+		this.atkinson = atkinson;
+		this.cells = new int[columns * rows];
+		this.fromAbove = new float[columns * rows * 3];
+		this.fromTwoAbove = atkinson ? new float[columns * rows * 3] : null;
+		this.progress = new AtomicIntegerArray(rows);
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * Dithers packed 0xRRGGBB cell colors to palette indices.
+	 */
+	static int[] run(ForkJoinPool pool, int[] rgb, int columns, int rows, PaletteIndex index, int[] palette,
+			Dithering dithering, BooleanSupplier cancelled) {
+		ErrorDiffusion job = new ErrorDiffusion(rgb, columns, rows, index, palette,
+				dithering == Dithering.ATKINSON, cancelled);
+		int workers = rgb.length < PARALLEL_THRESHOLD ? 1 : Math.min(pool.getParallelism(), rows);
+		if (workers <= 1) {
+			job.work();
+		} else {
+			Worker[] tasks = new Worker[workers];
+			for (int i = 0; i < workers; i++) {
+				tasks[i] = new Worker(job);
+			}
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+		// workers stop claiming rows once cancelled
+		TemplateEngine.checkCancelled(cancelled);
+		return job.cells;
+	}
+
+	private static final class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final transient ErrorDiffusion job;
+
+		Worker(ErrorDiffusion job) {
+			this.job = job;
+		}
+
+		@Override
+		protected void compute() {
+			this.job.work();
+		}
+	}
+
+	// claims rows in order until none are left; a claimed row's predecessor is
+	// always owned by a running worker, so waiting cannot deadlock
+	private void work() {
+		float[] scratch = new float[3];
+		while (!this.cancelled.getAsBoolean()) {
+			int y = this.nextRow.getAndIncrement();
+			if (y >= this.rows) {
+				return;
+			}
+			row(y, scratch);
+		}
+	}
+
+	private void row(int y, float[] scratch) {
+		int w = this.columns;
+		// error carried along the row: next cell and the one after (Atkinson)
+		float r1 = 0, g1 = 0, b1 = 0, r2 = 0, g2 = 0, b2 = 0;
+		int publishEvery = Math.max(1, w / 64);
+
+		for (int x = 0; x < w; x++) {
+			if (y > 0) {
+				awaitAbove(y, Math.min(w, x + LAG));
+			}
+			int cell = y * w + x;
+			int e = cell * 3;
+			int p = this.rgb[cell];
+			float r = ((p >> 16) & 0xFF) + r1 + this.fromAbove[e];
+			float g = ((p >> 8) & 0xFF) + g1 + this.fromAbove[e + 1];
+			float b = (p & 0xFF) + b1 + this.fromAbove[e + 2];
+			if (this.atkinson) {
+				r += this.fromTwoAbove[e];
+				g += this.fromTwoAbove[e + 1];
+				b += this.fromTwoAbove[e + 2];
+			}
+			int cr = clamp(r), cg = clamp(g), cb = clamp(b);
+			int match = this.index.nearest(cr, cg, cb, scratch);
+			this.cells[cell] = match;
+
+			int q = this.palette[match];
+			float er = cr - ((q >> 16) & 0xFF);
+			float eg = cg - ((q >> 8) & 0xFF);
+			float eb = cb - (q & 0xFF);
+
+			if (this.atkinson) {
+				// 1/8 to (x+1,y) (x+2,y) (x-1,y+1) (x,y+1) (x+1,y+1) (x,y+2)
+				er /= 8f;
+				eg /= 8f;
+				eb /= 8f;
+				r1 = r2 + er;
+				g1 = g2 + eg;
+				b1 = b2 + eb;
+				r2 = er;
+				g2 = eg;
+				b2 = eb;
+				spread(this.fromAbove, y + 1, x - 1, er, eg, eb);
+				spread(this.fromAbove, y + 1, x, er, eg, eb);
+				spread(this.fromAbove, y + 1, x + 1, er, eg, eb);
+				spread(this.fromTwoAbove, y + 2, x, er, eg, eb);
+			} else {
+				// 7/16 right, 3/16 down-left, 5/16 down, 1/16 down-right
+				r1 = er * 7f / 16f;
+				g1 = eg * 7f / 16f;
+				b1 = eb * 7f / 16f;
+				spread(this.fromAbove, y + 1, x - 1, er * 3f / 16f, eg * 3f / 16f, eb * 3f / 16f);
+				spread(this.fromAbove, y + 1, x, er * 5f / 16f, eg * 5f / 16f, eb * 5f / 16f);
+				spread(this.fromAbove, y + 1, x + 1, er / 16f, eg / 16f, eb / 16f);
+			}
+			if ((x + 1) % publishEvery == 0 || x == w - 1) {
+				// volatile write: everything written for this row so far becomes visible
+				this.progress.set(y, x + 1);
+			}
+		}
+	}
+
+	private void spread(float[] target, int y, int x, float er, float eg, float eb) {
+		if (y >= this.rows || x < 0 || x >= this.columns) {
+			return;
+		}
+		int e = (y * this.columns + x) * 3;
+		target[e] += er;
+		target[e + 1] += eg;
+		target[e + 2] += eb;
+	}
+
+	private void awaitAbove(int y, int columnsDone) {
+		int spins = 0;
+		while (this.progress.get(y - 1) < columnsDone) {
+			if (++spins < 128) {
+				Thread.onSpinWait();
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	private static int clamp(float v) {
+		return v <= 0f ? 0 : v >= 255f ? 255 : Math.round(v);
+	}
+}
@@ -0,0 +1,195 @@
+package artcreator.domain.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Buffered text output for the template exporters: numbers are formatted
+ * straight into the buffer (no String per value, no locale), strings are
+ * encoded as UTF-8, and the bytes written so far are counted (PDF needs them
+ * for its cross-reference table). A section of the output can be deflated on
+ * the fly, e.g. a PDF content stream.
+ */
+final class ExportWriter implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Counting base;
+	// the base stream, or a deflater on top of it
+	private OutputStream out;
+	private Deflater deflater;
+	private long deflateStart;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int count;
+
+	ExportWriter(OutputStream out) {
+		this.base = new Counting(out);
+		this.out = this.base;
+	}
+
+	/** Bytes written since creation, including buffered ones; not available while deflating. */
+	long position() {
+		if (this.deflater != null) {
+			throw new IllegalStateException("Position is unknown while deflating.");
+		}
+		return this.base.count + this.count;
+	}
+
+	/** Compresses everything written until {@link #endDeflate()}. */
+	void beginDeflate(int level) throws IOException {
+		flushBuffer();
+		this.deflater = new Deflater(level);
+		this.deflateStart = this.base.count;
+		this.out = new DeflaterOutputStream(this.base, this.deflater, BUFFER_SIZE);
+	}
+
+	/** Ends the compressed section; returns its compressed length. */
+	long endDeflate() throws IOException {
+		flushBuffer();
+		try {
+			((DeflaterOutputStream) this.out).finish();
+		} finally {
+			this.deflater.end();
+			this.deflater = null;
+			this.out = this.base;
+		}
+		return this.base.count - this.deflateStart;
+	}
+
+	ExportWriter append(char c) throws IOException {
+		if (c < 0x80) {
+			put((byte) c);
+		} else {
+			append(String.valueOf(c));
+		}
+		return this;
+	}
+
+	ExportWriter append(String s) throws IOException {
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				put((byte) c);
+			} else if (c < 0x800) {
+				put((byte) (0xC0 | c >> 6));
+				put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				put((byte) (0xF0 | cp >> 18));
+				put((byte) (0x80 | cp >> 12 & 0x3F));
+				put((byte) (0x80 | cp >> 6 & 0x3F));
+				put((byte) (0x80 | cp & 0x3F));
+			} else {
+				put((byte) (0xE0 | c >> 12));
+				put((byte) (0x80 | c >> 6 & 0x3F));
+				put((byte) (0x80 | c & 0x3F));
+			}
+		}
+		return this;
+	}
+
+	ExportWriter append(long value) throws IOException {
+		if (value < 0) {
+			put((byte) '-');
+			value = -value;
+		}
+		if (value < 10) {
+			put((byte) ('0' + value));
+			return this;
+		}
+		if (this.count + 20 > BUFFER_SIZE) {
+			flushBuffer();
+		}
+		int digits = 0;
+		for (long v = value; v > 0; v /= 10) {
+			digits++;
+		}
+		for (int i = this.count + digits - 1; i >= this.count; i--) {
+			this.buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		this.count += digits;
+		return this;
+	}
+
+	/** Writes a value with at most two decimals, without trailing zeros. */
+	ExportWriter append(double value) throws IOException {
+		long hundredths = Math.round(value * 100);
+		if (hundredths < 0) {
+			put((byte) '-');
+			hundredths = -hundredths;
+		}
+		append(hundredths / 100);
+		int fraction = (int) (hundredths % 100);
+		if (fraction != 0) {
+			put((byte) '.');
+			put((byte) ('0' + fraction / 10));
+			if (fraction % 10 != 0) {
+				put((byte) ('0' + fraction % 10));
+			}
+		}
+		return this;
+	}
+
+	/** Writes the color as six upper-case hex digits, without prefix. */
+	ExportWriter appendHex(int rgb) throws IOException {
+		for (int shift = 20; shift >= 0; shift -= 4) {
+			put((byte) "0123456789ABCDEF".charAt(rgb >> shift & 0xF));
+		}
+		return this;
+	}
+
+	void write(byte[] bytes) throws IOException {
+		flushBuffer();
+		this.out.write(bytes);
+	}
+
+	void flushBuffer() throws IOException {
+		if (this.count > 0) {
+			this.out.write(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			if (this.deflater != null) {
+				this.deflater.end();
+			}
+			this.base.close();
+		}
+	}
+
+	private void put(byte b) throws IOException {
+		if (this.count == BUFFER_SIZE) {
+			flushBuffer();
+		}
+		this.buffer[this.count++] = b;
+	}
+
+	private static final class Counting extends FilterOutputStream {
+		long count;
+
+		Counting(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes an image file through an {@link ImageReader}: a subsampled
+ * preview or the whole image.
+ *
+ * The header is parsed once when the decoder is opened; a preview only
+ * decodes what it returns, so its memory is bounded by the preview size
+ * rather than by the file. Readers are not thread-safe,
+ * all reads are serialized on the decoder.
+ */
+final class ImageDecoder implements AutoCloseable {
+
+	private final File file;
+	private final long lastModified;
+	private final ImageInputStream input;
+	private final ImageReader reader;
+	private final int width;
+	private final int height;
+
+	private ImageDecoder(File file, ImageInputStream input, ImageReader reader) throws IOException {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.input = input;
+		this.reader = reader;
+		this.width = reader.getWidth(0);
+		this.height = reader.getHeight(0);
+	}
+
+	/** Opens a decoder for the file and reads its header. */
+	static ImageDecoder open(File file) throws IOException {
+		if (!file.exists()) {
+			throw new FileNotFoundException("File not found: " + file.getPath());
+		}
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if (input == null) {
+			throw new IOException("Cannot open image: " + file.getPath());
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()) {
+			input.close();
+			throw new IOException("Unsupported image format: " + file.getPath());
+		}
+		ImageReader reader = readers.next();
+		// not seek-forward-only: a decoder serves several reads
+		reader.setInput(input, false, true);
+		try {
+			return new ImageDecoder(file, input, reader);
+		} catch (IOException | RuntimeException e) {
+			reader.dispose();
+			input.close();
+			throw e;
+		}
+	}
+
+	/** True if this decoder still reads the given file in its current version. */
+	boolean isCurrentFor(File other) {
+		return this.file.equals(other) && this.lastModified == other.lastModified();
+	}
+
+	/**
+	 * Returns the image scaled down so that neither side exceeds
+	 * {@code maxDimension}, decoded with source subsampling. If an embedded
+	 * thumbnail is at least that large, the smallest such one is scaled down
+	 * to fit instead.
+	 */
+	synchronized BufferedImage preview(int maxDimension) throws IOException {
+		if (maxDimension <= 0) {
+			throw new IllegalArgumentException("Invalid preview size: " + maxDimension);
+		}
+		int longest = Math.max(this.width, this.height);
+		if (longest <= maxDimension) {
+			return this.reader.read(0);
+		}
+		if (this.reader.readerSupportsThumbnails()) {
+			int best = -1, bestLongest = Integer.MAX_VALUE;
+			for (int i = 0; i < this.reader.getNumThumbnails(0); i++) {
+				int size = Math.max(this.reader.getThumbnailWidth(0, i), this.reader.getThumbnailHeight(0, i));
+				if (size >= maxDimension && size < bestLongest) {
+					best = i;
+					bestLongest = size;
+				}
+			}
+			if (best >= 0) {
+				return DomainImpl.scaleToFit(this.reader.readThumbnail(0, best), maxDimension);
+			}
+		}
+		// ceil, so the result never exceeds maxDimension
+		int step = (longest + maxDimension - 1) / maxDimension;
+		ImageReadParam param = this.reader.getDefaultReadParam();
+		param.setSourceSubsampling(step, step, 0, 0);
+		return this.reader.read(0, param);
+	}
+
+	/** Decodes the whole image at full resolution. */
+	synchronized BufferedImage full() throws IOException {
+		return this.reader.read(0);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.reader.dispose();
+		this.input.close();
+	}
+}
@@ -0,0 +1,105 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.WeakReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Summed-area table of an image: the pixel sum of any rectangle in four
+ * reads, so the cells of any grid over any crop of the image are averaged
+ * without touching their pixels again.
+ *
+ * The three channel sums share one long per pixel (red in the top 22 bits,
+ * green and blue in 21 bits each). The running totals overflow their fields,
+ * but since a rectangle's sum is computed with wrap-around arithmetic it
+ * comes out exact as long as each channel's sum fits its field, i.e. for
+ * rectangles of at most {@link #MAX_AREA} pixels. The table costs 8 bytes
+ * per pixel; the image is only weakly referenced.
+ */
+final class IntegralImage {
+
+	/** Largest rectangle (in pixels) whose channel sums fit 21 bits. */
+	static final int MAX_AREA = ((1 << 21) - 1) / 255;
+
+	private static final int FIELD = 21;
+	private static final long MASK = (1L << FIELD) - 1;
+
+	private final WeakReference<DataBuffer> source;
+	private final int width;
+	// (width + 1) x (height + 1), row-major; the first row and column are 0
+	private final long[] sums;
+
+	private IntegralImage(DataBuffer source, int width, long[] sums) {
+		this.source = new WeakReference<>(source);
+		this.width = width;
+		this.sums = sums;
+	}
+
+	/** Bytes a table for an image of this size takes. */
+	static long bytes(int width, int height) {
+		return 8L * (width + 1) * (height + 1);
+	}
+
+	/**
+	 * Sums up the whole image in one pass.
+	 * @throws java.util.concurrent.CancellationException if cancelled meanwhile.
+	 */
+	static IntegralImage build(BufferedImage image, BooleanSupplier cancelled) {
+		int w = image.getWidth(), h = image.getHeight();
+		long[] sums = new long[(w + 1) * (h + 1)];
+		Pixels pixels = new Pixels(image);
+		int[] buffer = new int[w];
+		for (int y = 0; y < h; y++) {
+			TemplateEngine.checkCancelled(cancelled);
+			int[] row = pixels.row(y, buffer);
+			int base = pixels.rowOffset(y);
+			int above = y * (w + 1) + 1, at = above + w + 1;
+			long run = 0;
+			for (int x = 0; x < w; x++) {
+				int p = row[base + x];
+				run += ((long) ((p >> 16) & 0xFF) << (2 * FIELD)) | ((long) ((p >> 8) & 0xFF) << FIELD) | (p & 0xFF);
+				sums[at + x] = sums[above + x] + run;
+			}
+		}
+		return new IntegralImage(image.getRaster().getDataBuffer(), w, sums);
+	}
+
+	/** True if this table was built from these pixels and they are still alive. */
+	boolean covers(DataBuffer buffer) {
+		return this.source.get() == buffer;
+	}
+
+	/** False once the image has been garbage collected. */
+	boolean isAlive() {
+		return this.source.get() != null;
+	}
+
+	long bytes() {
+		return 8L * this.sums.length;
+	}
+
+	/**
+	 * Average color of every cell of a grid over the region at (x, y) of the
+	 * image, with the cell bounds of {@link TemplateEngine#cellColors}. Cells
+	 * must not exceed {@link #MAX_AREA} pixels.
+	 */
+	void cellColors(int x, int y, int height, int columns, int rows, int[] x0, int[] x1, int[] rgb,
+			BooleanSupplier cancelled) {
+		int stride = this.width + 1;
+		long[] s = this.sums;
+		for (int r = 0; r < rows; r++) {
+			TemplateEngine.checkCancelled(cancelled);
+			int y0 = TemplateEngine.rowStart(r, height, rows), y1 = TemplateEngine.rowEnd(r, height, rows);
+			int top = (y + y0) * stride + x, bottom = (y + y1) * stride + x;
+			for (int c = 0, out = r * columns; c < columns; c++, out++) {
+				long sum = s[bottom + x1[c]] - s[bottom + x0[c]] - s[top + x1[c]] + s[top + x0[c]];
+				long n = (long) (x1[c] - x0[c]) * (y1 - y0);
+				int red = (int) (((sum >>> (2 * FIELD)) + n / 2) / n);
+				int green = (int) ((((sum >>> FIELD) & MASK) + n / 2) / n);
+				int blue = (int) (((sum & MASK) + n / 2) / n);
+				rgb[out] = (red << 16) | (green << 8) | blue;
+			}
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package artcreator.domain.impl;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import artcreator.domain.kernel.ColorSpaces;
+import artcreator.domain.kernel.PixelKernels;
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.TemplateConfig.Matching;
+
+/**
+ * Nearest-color lookup for one palette, built once and shared by all threads.
+ *
+ * <ul>
+ * <li>{@link Matching#RGB}: linear scan, squared distance in sRGB.</li>
+ * <li>{@link Matching#LAB}: exact nearest neighbour (CIE76 delta E) in a k-d
+ * tree over the palette's CIELAB coordinates.</li>
+ * <li>{@link Matching#LAB_LUT}: a 32x32x32 table over quantized RGB, filled
+ * from the k-d tree. Lookups are one array read; the extra delta E against
+ * exact matching is measured when the table is built.</li>
+ * </ul>
+ */
+abstract class PaletteIndex {
+
+	/**
+	 * Palette index of the color closest to (r, g, b).
+	 *
+	 * @param scratch at least 3 floats owned by the calling thread, so lookups
+	 *                need no allocation
+	 */
+	abstract int nearest(int r, int g, int b, float[] scratch);
+
+	/**
+	 * Palette indices of {@code count} 0xRRGGBB colors from {@code rgb[from]},
+	 * written to {@code out[outFrom]} onwards.
+	 */
+	void nearestAll(int[] rgb, int from, int count, int[] out, int outFrom, float[] scratch) {
+		for (int k = 0; k < count; k++) {
+			int p = rgb[from + k];
+			out[outFrom + k] = nearest((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, scratch);
+		}
+	}
+
+	/**
+	 * Largest measured delta E by which a lookup can be worse than the exact
+	 * perceptual match; 0 for exact indexes. Measured on a grid of colors, so
+	 * colors between its points can do somewhat worse.
+	 */
+	float maxError() {
+		return 0f;
+	}
+
+	static PaletteIndex build(Palette palette, Matching matching) {
+		switch (matching) {
+			case RGB:
+				return new Linear(palette.getColors());
+			case LAB:
+				return new LabKdTree(palette.getColors());
+			case LAB_LUT:
+				return new Lut(new LabKdTree(palette.getColors()));
+			default:
+				throw new IllegalArgumentException("Unknown matching mode: " + matching);
+		}
+	}
+
+	/** Linear scan in RGB; rows of colors go through the {@link PixelKernels}. */
+	static final class Linear extends PaletteIndex {
+		private static final PixelKernels KERNELS = PixelKernels.get();
+
+		// the palette channel by channel
+		private final int[] reds, greens, blues;
+
+		Linear(int[] colors) {
+			this.reds = new int[colors.length];
+			this.greens = new int[colors.length];
+			this.blues = new int[colors.length];
+			for (int i = 0; i < colors.length; i++) {
+				this.reds[i] = (colors[i] >> 16) & 0xFF;
+				this.greens[i] = (colors[i] >> 8) & 0xFF;
+				this.blues[i] = colors[i] & 0xFF;
+			}
+		}
+
+		@Override
+		int nearest(int r, int g, int b, float[] scratch) {
+			int best = 0;
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < this.reds.length; i++) {
+				int dr = this.reds[i] - r;
+				int dg = this.greens[i] - g;
+				int db = this.blues[i] - b;
+				int d = dr * dr + dg * dg + db * db;
+				if (d < bestDistance) {
+					bestDistance = d;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		@Override
+		void nearestAll(int[] rgb, int from, int count, int[] out, int outFrom, float[] scratch) {
+			KERNELS.nearestRgb(rgb, from, count, this.reds, this.greens, this.blues, out, outFrom);
+		}
+	}
+
+	/**
+	 * Array-backed k-d tree in CIELAB. Inner nodes split on the axis with the
+	 * largest spread; leaves hold up to {@value #BUCKET} colors that are scanned
+	 * linearly, which keeps recursion shallow.
+	 */
+	static final class LabKdTree extends PaletteIndex {
+		private static final int BUCKET = 8;
+
+		// palette colors in Lab, 3 floats per color, in palette order
+		private final float[] lab;
+		// palette indices, reordered so every leaf is a contiguous range
+		private final int[] ids;
+		// per node: range [from, to) of ids, split axis/value, children (-1 = leaf)
+		private final int[] from, to, axis, left, right;
+		private final float[] split;
+		private int size;
+
+		LabKdTree(int[] colors) {
+			int n = colors.length;
+			this.lab = new float[n * 3];
+			for (int i = 0; i < n; i++) {
+				int c = colors[i];
+				ColorSpaces.toLab((c >> 16) & 0xFF, (c >> 8) & 0xFF, c & 0xFF, this.lab, i * 3);
+			}
+			this.ids = new int[n];
+			for (int i = 0; i < n; i++) {
+				this.ids[i] = i;
+			}
+			int maxNodes = 2 * Math.max(1, n / BUCKET + 1) + 1;
+			this.from = new int[maxNodes * 2];
+			this.to = new int[this.from.length];
+			this.axis = new int[this.from.length];
+			this.left = new int[this.from.length];
+			this.right = new int[this.from.length];
+			this.split = new float[this.from.length];
+			build(0, n);
+		}
+
+		private int build(int lo, int hi) {
+			int node = this.size++;
+			this.from[node] = lo;
+			this.to[node] = hi;
+			this.left[node] = -1;
+			this.right[node] = -1;
+			if (hi - lo <= BUCKET) {
+				return node;
+			}
+			int ax = widestAxis(lo, hi);
+			sort(lo, hi, ax);
+			int mid = (lo + hi) >>> 1;
+			this.axis[node] = ax;
+			this.split[node] = this.lab[this.ids[mid] * 3 + ax];
+			this.left[node] = build(lo, mid);
+			this.right[node] = build(mid, hi);
+			return node;
+		}
+
+		private int widestAxis(int lo, int hi) {
+			int best = 0;
+			float bestSpread = -1f;
+			for (int ax = 0; ax < 3; ax++) {
+				float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+				for (int i = lo; i < hi; i++) {
+					float v = this.lab[this.ids[i] * 3 + ax];
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				if (max - min > bestSpread) {
+					bestSpread = max - min;
+					best = ax;
+				}
+			}
+			return best;
+		}
+
+		// insertion sort by one Lab coordinate; palettes are small
+		private void sort(int lo, int hi, int ax) {
+			for (int i = lo + 1; i < hi; i++) {
+				int v = this.ids[i];
+				float key = this.lab[v * 3 + ax];
+				int j = i - 1;
+				while (j >= lo && this.lab[this.ids[j] * 3 + ax] > key) {
+					this.ids[j + 1] = this.ids[j];
+					j--;
+				}
+				this.ids[j + 1] = v;
+			}
+		}
+
+		@Override
+		int nearest(int r, int g, int b, float[] scratch) {
+			ColorSpaces.toLab(r, g, b, scratch, 0);
+			return nearestLab(scratch[0], scratch[1], scratch[2]);
+		}
+
+		int nearestLab(float l, float a, float b) {
+			int best = this.ids[0];
+			return search(0, l, a, b, best, distance(best, l, a, b));
+		}
+
+		private int search(int node, float l, float a, float b, int best, float bestDistance) {
+			if (this.left[node] < 0) {
+				for (int i = this.from[node], end = this.to[node]; i < end; i++) {
+					int p = this.ids[i];
+					float d = distance(p, l, a, b);
+					// ties go to the lower palette index, like a linear scan
+					if (d < bestDistance || (d == bestDistance && p < best)) {
+						best = p;
+						bestDistance = d;
+					}
+				}
+				return best;
+			}
+			int ax = this.axis[node];
+			float delta = (ax == 0 ? l : ax == 1 ? a : b) - this.split[node];
+			int near = delta < 0 ? this.left[node] : this.right[node];
+			int far = delta < 0 ? this.right[node] : this.left[node];
+			best = search(near, l, a, b, best, bestDistance);
+			bestDistance = distance(best, l, a, b);
+			if (delta * delta <= bestDistance) {
+				best = search(far, l, a, b, best, bestDistance);
+			}
+			return best;
+		}
+
+		float distance(int index, float l, float a, float b) {
+			float dl = this.lab[index * 3] - l;
+			float da = this.lab[index * 3 + 1] - a;
+			float db = this.lab[index * 3 + 2] - b;
+			return dl * dl + da * da + db * db;
+		}
+	}
+
+	/** Lookup table over RGB quantized to 5 bits per channel. */
+	static final class Lut extends PaletteIndex {
+		private static final int BITS = 5;
+		private static final int SIZE = 1 << BITS;
+		private static final int SHIFT = 8 - BITS;
+		// sampling step (per channel) used to measure the error bound
+		private static final int PROBE_STEP = 4;
+
+		private final short[] table = new short[SIZE * SIZE * SIZE];
+		private final float maxError;
+
+		Lut(LabKdTree exact) {
+			float[] lab = new float[3];
+			int half = 1 << (SHIFT - 1);
+			for (int r = 0; r < SIZE; r++) {
+				for (int g = 0; g < SIZE; g++) {
+					for (int b = 0; b < SIZE; b++) {
+						// every cell maps to the exact match of its center color
+						this.table[(r << (2 * BITS)) | (g << BITS) | b] = (short) exact
+								.nearest((r << SHIFT) + half, (g << SHIFT) + half, (b << SHIFT) + half, lab);
+					}
+				}
+			}
+			this.maxError = measure(exact);
+			Logger.getGlobal().log(Level.INFO, "Palette LUT built, max delta E above exact: {0}", this.maxError);
+		}
+
+		// worst extra delta E over an RGB grid (and the channel extremes)
+		private float measure(LabKdTree exact) {
+			float worst = 0f;
+			float[] lab = new float[3];
+			for (int r = 0; r < 256; r = next(r)) {
+				for (int g = 0; g < 256; g = next(g)) {
+					for (int b = 0; b < 256; b = next(b)) {
+						ColorSpaces.toLab(r, g, b, lab, 0);
+						int best = exact.nearestLab(lab[0], lab[1], lab[2]);
+						int approx = nearest(r, g, b, lab);
+						if (approx != best) {
+							float e = (float) (Math.sqrt(exact.distance(approx, lab[0], lab[1], lab[2]))
+									- Math.sqrt(exact.distance(best, lab[0], lab[1], lab[2])));
+							worst = Math.max(worst, e);
+						}
+					}
+				}
+			}
+			return worst;
+		}
+
+		private static int next(int v) {
+			return v == 255 ? 256 : Math.min(255, v + PROBE_STEP);
+		}
+
+		@Override
+		int nearest(int r, int g, int b, float[] scratch) {
+			return this.table[((r >> SHIFT) << (2 * BITS)) | ((g >> SHIFT) << BITS) | (b >> SHIFT)] & 0xFFFF;
+		}
+
+		@Override
+		float maxError() {
+			return this.maxError;
+		}
+	}
+}
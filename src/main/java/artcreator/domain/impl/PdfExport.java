@@ -0,0 +1,259 @@
+package artcreator.domain.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+
+/**
+ * Writes a template as a printable PDF pattern sheet on A4 pages.
+ *
+ * The grid is split into tiles that fit a page at cellSize points per cell;
+ * each page shows its tile with color codes, grid lines (bold every 10 cells)
+ * and the range of columns and rows it covers. The last pages list the bill
+ * of materials. Pages are written one at a time as compressed content
+ * streams whose length is stored in a separate object after the stream, so
+ * nothing has to be buffered; only the object offsets for the cross-reference
+ * table are kept.
+ */
+final class PdfExport {
+
+	private static final int PAGE_WIDTH = 595;
+	private static final int PAGE_HEIGHT = 842;
+	private static final int MARGIN = 36;
+	private static final int HEADER = 18;
+	private static final int CATALOG = 1;
+	private static final int PAGES = 2;
+	private static final int FONT = 3;
+
+	private final ExportWriter out;
+	// byte offset of every object, indexed by object number
+	private long[] offsets = new long[64];
+	private int objects = FONT;
+	private int[] pageIds = new int[16];
+	private int pageCount;
+
+	private PdfExport(ExportWriter out) {
+		this.out = out;
+	}
+
+	static void write(Template template, ExportWriter out, int cellSize) throws IOException {
+		int columnsPerPage = (PAGE_WIDTH - 2 * MARGIN) / cellSize;
+		int rowsPerPage = (PAGE_HEIGHT - 2 * MARGIN - HEADER) / cellSize;
+		if (columnsPerPage == 0 || rowsPerPage == 0) {
+			throw new IllegalArgumentException("Cell size does not fit on an A4 page: " + cellSize);
+		}
+		new PdfExport(out).document(template, cellSize, columnsPerPage, rowsPerPage);
+	}
+
+	private void document(Template template, int cellSize, int columnsPerPage, int rowsPerPage) throws IOException {
+		// binary marker comment, so transfer tools treat the file as binary
+		this.out.append("%PDF-1.4\n%âãÏÓ\n");
+		begin(CATALOG);
+		this.out.append("<< /Type /Catalog /Pages ").append(PAGES).append(" 0 R >>\n");
+		end();
+		begin(FONT);
+		this.out.append("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\n");
+		end();
+
+		int tileColumns = (template.getColumns() + columnsPerPage - 1) / columnsPerPage;
+		int tileRows = (template.getRows() + rowsPerPage - 1) / rowsPerPage;
+		int total = tileColumns * tileRows;
+		for (int tr = 0; tr < tileRows; tr++) {
+			for (int tc = 0; tc < tileColumns; tc++) {
+				int c0 = tc * columnsPerPage, r0 = tr * rowsPerPage;
+				int c1 = Math.min(template.getColumns(), c0 + columnsPerPage);
+				int r1 = Math.min(template.getRows(), r0 + rowsPerPage);
+				int number = this.pageCount + 1;
+				page(() -> tile(template, cellSize, c0, r0, c1, r1, number, total));
+			}
+		}
+		billOfMaterials(template);
+
+		begin(PAGES);
+		this.out.append("<< /Type /Pages /MediaBox [0 0 ").append(PAGE_WIDTH).append(' ').append(PAGE_HEIGHT)
+				.append("] /Resources << /Font << /F1 ").append(FONT).append(" 0 R >> >> /Count ")
+				.append(this.pageCount).append(" /Kids [");
+		for (int i = 0; i < this.pageCount; i++) {
+			this.out.append(this.pageIds[i]).append(" 0 R ");
+		}
+		this.out.append("] >>\n");
+		end();
+
+		long xref = this.out.position();
+		this.out.append("xref\n0 ").append(this.objects + 1).append("\n0000000000 65535 f \n");
+		for (int i = 1; i <= this.objects; i++) {
+			String offset = Long.toString(this.offsets[i]);
+			this.out.append("0000000000".substring(offset.length())).append(offset).append(" 00000 n \n");
+		}
+		this.out.append("trailer\n<< /Size ").append(this.objects + 1).append(" /Root ").append(CATALOG)
+				.append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+	}
+
+	private interface Content {
+		void write() throws IOException;
+	}
+
+	// a page object, its deflated content stream and the stream's length
+	private void page(Content content) throws IOException {
+		int page = ++this.objects, stream = ++this.objects, length = ++this.objects;
+		if (this.pageCount == this.pageIds.length) {
+			this.pageIds = Arrays.copyOf(this.pageIds, this.pageCount * 2);
+		}
+		this.pageIds[this.pageCount++] = page;
+		begin(page);
+		this.out.append("<< /Type /Page /Parent ").append(PAGES).append(" 0 R /Contents ").append(stream)
+				.append(" 0 R >>\n");
+		end();
+
+		begin(stream);
+		this.out.append("<< /Length ").append(length).append(" 0 R /Filter /FlateDecode >>\nstream\n");
+		this.out.beginDeflate(Deflater.BEST_SPEED);
+		content.write();
+		long streamLength = this.out.endDeflate();
+		this.out.append("\nendstream\n");
+		end();
+
+		begin(length);
+		this.out.append(streamLength).append('\n');
+		end();
+	}
+
+	private void tile(Template template, int cell, int c0, int r0, int c1, int r1, int number, int total)
+			throws IOException {
+		ExportWriter o = this.out;
+		int top = PAGE_HEIGHT - MARGIN - HEADER;
+		o.append("BT /F1 10 Tf ").append(MARGIN).append(' ').append(PAGE_HEIGHT - MARGIN - 10).append(" Td (Columns ")
+				.append(c0 + 1).append('-').append(c1).append(", rows ").append(r0 + 1).append('-').append(r1)
+				.append(" - page ").append(number).append(" of ").append(total).append(") Tj ET\n");
+		// cells, merging equal neighbours of a row
+		int fill = -1;
+		for (int r = r0; r < r1; r++) {
+			int y = top - (r - r0 + 1) * cell;
+			for (int c = c0; c < c1;) {
+				int index = template.getCell(c, r);
+				int end = Math.min(c1, template.runEnd(c, r));
+				int rgb = template.getPalette().getColor(index);
+				if (rgb != fill) {
+					color(rgb, "rg");
+					fill = rgb;
+				}
+				o.append(MARGIN + (c - c0) * cell).append(' ').append(y).append(' ').append((end - c) * cell)
+						.append(' ').append(cell).append(" re f\n");
+				c = end;
+			}
+		}
+		// codes
+		if (cell >= TemplateExport.MIN_LABELED_CELL) {
+			double size = cell * 0.55;
+			o.append("BT /F1 ").append(size).append(" Tf\n");
+			boolean white = false;
+			o.append("0 g\n");
+			for (int r = r0; r < r1; r++) {
+				double y = top - (r - r0 + 1) * cell + (cell - size * 0.7) / 2;
+				for (int c = c0; c < c1; c++) {
+					boolean dark = TemplateExport.isDark(template.getColor(c, r));
+					if (dark != white) {
+						o.append(dark ? "1 g\n" : "0 g\n");
+						white = dark;
+					}
+					String code = TemplateExport.code(template.getCell(c, r));
+					// Helvetica digits are 0.556 em wide
+					double x = MARGIN + (c - c0) * cell + (cell - code.length() * 0.556 * size) / 2;
+					o.append("1 0 0 1 ").append(x).append(' ').append(y).append(" Tm (").append(code).append(") Tj\n");
+				}
+			}
+			o.append("ET\n");
+		}
+		// grid lines, thin first, then bold every 10 cells of the whole template
+		int right = MARGIN + (c1 - c0) * cell, bottom = top - (r1 - r0) * cell;
+		for (boolean bold : new boolean[] { false, true }) {
+			o.append(bold ? "0 G 1 w\n" : "0.5 G 0.3 w\n");
+			for (int c = c0; c <= c1; c++) {
+				if (TemplateExport.isBoldLine(c, template.getColumns()) == bold || bold && (c == c0 || c == c1)) {
+					int x = MARGIN + (c - c0) * cell;
+					o.append(x).append(' ').append(top).append(" m ").append(x).append(' ').append(bottom).append(" l\n");
+				}
+			}
+			for (int r = r0; r <= r1; r++) {
+				if (TemplateExport.isBoldLine(r, template.getRows()) == bold || bold && (r == r0 || r == r1)) {
+					int y = top - (r - r0) * cell;
+					o.append(MARGIN).append(' ').append(y).append(" m ").append(right).append(' ').append(y)
+							.append(" l\n");
+				}
+			}
+			o.append("S\n");
+		}
+	}
+
+	// one line per used color, as many pages as needed
+	private void billOfMaterials(Template template) throws IOException {
+		Palette palette = template.getPalette();
+		int[] counts = template.getColorCounts();
+		int line = TemplateExport.LEGEND_LINE;
+		int perPage = (PAGE_HEIGHT - 2 * MARGIN - HEADER) / line;
+		int[] used = new int[palette.size()];
+		int n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				used[n++] = i;
+			}
+		}
+		long cells = (long) template.getColumns() * template.getRows();
+		for (int first = 0; first < n; first += perPage) {
+			int from = first, to = Math.min(n, first + perPage);
+			page(() -> {
+				ExportWriter o = this.out;
+				o.append("BT /F1 10 Tf ").append(MARGIN).append(' ').append(PAGE_HEIGHT - MARGIN - 10)
+						.append(" Td (Bill of materials: ").append(template.getColumns()).append(" x ")
+						.append(template.getRows()).append(" = ").append(cells).append(" cells) Tj ET\n");
+				int y = PAGE_HEIGHT - MARGIN - HEADER;
+				for (int k = from; k < to; k++) {
+					int i = used[k];
+					y -= line;
+					color(palette.getColor(i), "rg");
+					o.append("0 G 0.5 w ").append(MARGIN).append(' ').append(y + 2).append(' ').append(line - 4)
+							.append(' ').append(line - 4).append(" re B\n");
+					o.append("0 g BT /F1 9 Tf ").append(MARGIN + line + 4).append(' ').append(y + 5).append(" Td (")
+							.append(TemplateExport.code(i)).append("   ");
+					text(palette.getName(i));
+					o.append("   #").appendHex(palette.getColor(i)).append("   ").append(counts[i])
+							.append(" cells) Tj ET\n");
+				}
+			});
+		}
+	}
+
+	private void color(int rgb, String operator) throws IOException {
+		this.out.append(((rgb >> 16) & 0xFF) / 255.0).append(' ').append(((rgb >> 8) & 0xFF) / 255.0).append(' ')
+				.append((rgb & 0xFF) / 255.0).append(' ').append(operator).append('\n');
+	}
+
+	// a PDF string body in WinAnsi; characters outside Latin-1 become '?'
+	private void text(String s) throws IOException {
+		byte[] bytes = new byte[s.length() * 2];
+		int n = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '(' || c == ')' || c == '\\') {
+				bytes[n++] = '\\';
+			}
+			bytes[n++] = (byte) (c < 0x20 || c > 0xFF ? '?' : c);
+		}
+		this.out.write(Arrays.copyOf(bytes, n));
+	}
+
+	private void begin(int object) throws IOException {
+		if (object >= this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, Math.max(object + 1, this.offsets.length * 2));
+		}
+		this.offsets[object] = this.out.position();
+		this.out.append(object).append(" 0 obj\n");
+	}
+
+	private void end() throws IOException {
+		this.out.append("endobj\n");
+	}
+}
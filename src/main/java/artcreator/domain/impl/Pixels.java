@@ -0,0 +1,78 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Row access to an image as 0x..RRGGBB ints without per-pixel allocation.
+ *
+ * For TYPE_INT_RGB/ARGB images {@link #row(int, int[])} returns the backing
+ * array itself; TYPE_3BYTE_BGR rows are unpacked directly from the byte
+ * array; everything else goes through {@link BufferedImage#getRGB}. Callers
+ * read pixel x of row y at {@code row(y, buffer)[rowOffset(y) + x]}.
+ */
+final class Pixels {
+
+	final BufferedImage image;
+	final int width, height;
+	private final int[] ints;
+	private final byte[] bytes;
+	private final int offset, stride;
+
+	Pixels(BufferedImage image) {
+		this.image = image;
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		WritableRaster raster = image.getRaster();
+		int type = image.getType();
+		// raster coordinates -> sample model coordinates (subimages are offset)
+		int smx = raster.getMinX() - raster.getSampleModelTranslateX();
+		int smy = raster.getMinY() - raster.getSampleModelTranslateY();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt dbi
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm) {
+			this.ints = dbi.getData();
+			this.bytes = null;
+			this.stride = sm.getScanlineStride();
+			this.offset = dbi.getOffset() + smy * this.stride + smx;
+		} else if (type == BufferedImage.TYPE_3BYTE_BGR && raster.getDataBuffer() instanceof DataBufferByte dbb
+				&& raster.getSampleModel() instanceof PixelInterleavedSampleModel sm) {
+			this.ints = null;
+			this.bytes = dbb.getData();
+			this.stride = sm.getScanlineStride();
+			this.offset = dbb.getOffset() + smy * this.stride + smx * 3;
+		} else {
+			this.ints = null;
+			this.bytes = null;
+			this.stride = 0;
+			this.offset = 0;
+		}
+	}
+
+	/**
+	 * Returns an array holding row {@code y}, either the image's own buffer or
+	 * {@code buffer} (at least {@link #width} long) filled with the row.
+	 */
+	int[] row(int y, int[] buffer) {
+		if (this.ints != null) {
+			return this.ints;
+		}
+		if (this.bytes != null) {
+			byte[] b = this.bytes;
+			for (int x = 0, i = this.offset + y * this.stride; x < this.width; x++, i += 3) {
+				buffer[x] = ((b[i + 2] & 0xFF) << 16) | ((b[i + 1] & 0xFF) << 8) | (b[i] & 0xFF);
+			}
+			return buffer;
+		}
+		return this.image.getRGB(0, y, this.width, 1, buffer, 0, this.width);
+	}
+
+	/** Index of pixel (0, y) in the array returned by {@link #row(int, int[])}. */
+	int rowOffset(int y) {
+		return this.ints != null ? this.offset + y * this.stride : 0;
+	}
+}
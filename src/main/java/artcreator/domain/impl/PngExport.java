@@ -0,0 +1,185 @@
+package artcreator.domain.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+
+/**
+ * Writes a template as a PNG with every cell a cellSize x cellSize block.
+ *
+ * The image is never held in memory: scanlines are produced one at a time
+ * and deflated straight into IDAT chunks of at most 64 KB. Palettes of up to
+ * 256 colors are written as an indexed PNG (1 to 8 bits per pixel), larger
+ * ones as RGB. The first scanline of a cell row is unfiltered, the repeats
+ * use the "Up" filter and are all zeros, so they compress to almost nothing.
+ */
+final class PngExport {
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final byte FILTER_NONE = 0;
+	private static final byte FILTER_UP = 2;
+
+	private PngExport() {
+	}
+
+	static void write(Template template, OutputStream out, int cellSize) throws IOException {
+		long width = (long) template.getColumns() * cellSize;
+		long height = (long) template.getRows() * cellSize;
+		if (width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Exported image would be too large: " + width + "x" + height);
+		}
+		Palette palette = template.getPalette();
+		boolean indexed = palette.size() <= 256;
+		int bitDepth = !indexed ? 8 : palette.size() <= 2 ? 1 : palette.size() <= 4 ? 2 : palette.size() <= 16 ? 4 : 8;
+		int bitsPerPixel = indexed ? bitDepth : 24;
+		long rowBytes = (width * bitsPerPixel + 7) / 8;
+		if (rowBytes + 1 > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Exported image would be too wide: " + width);
+		}
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, (int) width);
+		putInt(header, 4, (int) height);
+		header[8] = (byte) bitDepth;
+		header[9] = (byte) (indexed ? 3 : 2);
+		// compression, filter and interlace methods: defaults, no interlacing
+		writeChunk(out, "IHDR", header, header.length);
+		if (indexed) {
+			byte[] plte = new byte[palette.size() * 3];
+			for (int i = 0; i < palette.size(); i++) {
+				int rgb = palette.getColor(i);
+				plte[i * 3] = (byte) (rgb >> 16);
+				plte[i * 3 + 1] = (byte) (rgb >> 8);
+				plte[i * 3 + 2] = (byte) rgb;
+			}
+			writeChunk(out, "PLTE", plte, plte.length);
+		}
+
+		byte[] line = new byte[(int) rowBytes + 1];
+		byte[] repeat = new byte[line.length];
+		repeat[0] = FILTER_UP;
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try (DeflaterOutputStream idat = new DeflaterOutputStream(new ChunkStream(out, "IDAT"), deflater,
+				CHUNK_SIZE)) {
+			for (int r = 0; r < template.getRows(); r++) {
+				scanline(template, r, cellSize, indexed, bitDepth, line);
+				idat.write(line);
+				for (int y = 1; y < cellSize; y++) {
+					idat.write(repeat);
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+		writeChunk(out, "IEND", new byte[0], 0);
+		out.flush();
+	}
+
+	// one unfiltered scanline of a cell row
+	private static void scanline(Template template, int row, int cellSize, boolean indexed, int bitDepth, byte[] line) {
+		Arrays.fill(line, (byte) 0);
+		line[0] = FILTER_NONE;
+		long pixel = 0;
+		for (int c = 0, end; c < template.getColumns(); c = end) {
+			int index = template.getCell(c, row);
+			end = template.runEnd(c, row);
+			int pixels = (end - c) * cellSize;
+			if (!indexed) {
+				int rgb = template.getPalette().getColor(index);
+				for (int i = 0; i < pixels; i++, pixel++) {
+					int at = 1 + (int) pixel * 3;
+					line[at] = (byte) (rgb >> 16);
+					line[at + 1] = (byte) (rgb >> 8);
+					line[at + 2] = (byte) rgb;
+				}
+			} else if (bitDepth == 8) {
+				Arrays.fill(line, 1 + (int) pixel, 1 + (int) pixel + pixels, (byte) index);
+				pixel += pixels;
+			} else {
+				int perByte = 8 / bitDepth;
+				for (int i = 0; i < pixels; i++, pixel++) {
+					int shift = 8 - bitDepth * (int) (pixel % perByte + 1);
+					line[1 + (int) (pixel / perByte)] |= (byte) (index << shift);
+				}
+			}
+		}
+	}
+
+	private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		byte[] lengthBytes = new byte[4];
+		putInt(lengthBytes, 0, length);
+		out.write(lengthBytes);
+		out.write(typeBytes);
+		out.write(data, 0, length);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		byte[] crcBytes = new byte[4];
+		putInt(crcBytes, 0, (int) crc.getValue());
+		out.write(crcBytes);
+	}
+
+	private static void putInt(byte[] b, int at, int v) {
+		b[at] = (byte) (v >>> 24);
+		b[at + 1] = (byte) (v >>> 16);
+		b[at + 2] = (byte) (v >>> 8);
+		b[at + 3] = (byte) v;
+	}
+
+	/** Cuts the compressed stream into chunks of one type; does not close the target. */
+	private static final class ChunkStream extends OutputStream {
+		private final OutputStream out;
+		private final String type;
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private int count;
+
+		ChunkStream(OutputStream out, String type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.count == this.buffer.length) {
+				flushChunk();
+			}
+			this.buffer[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (this.count == this.buffer.length) {
+					flushChunk();
+				}
+				int n = Math.min(len, this.buffer.length - this.count);
+				System.arraycopy(b, off, this.buffer, this.count, n);
+				this.count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flushChunk();
+		}
+
+		private void flushChunk() throws IOException {
+			if (this.count > 0) {
+				writeChunk(this.out, this.type, this.buffer, this.count);
+				this.count = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves image pixels off the Java heap into a temp file.
+ *
+ * Pixels are written through a {@link FileChannel} in native byte order and
+ * mapped back with a {@link MappedByteBuffer} when needed. Color and sample
+ * model stay on the heap (they are small), so a spilled image costs a few
+ * hundred bytes of heap regardless of its resolution.
+ *
+ * Released regions are merged with free neighbours and reused first fit; a
+ * free region at the end of the file is truncated away. A snapshot kept for
+ * a long time therefore only pins its own bytes, and the file stays within
+ * the live bytes plus fragmentation, however many images pass through it.
+ */
+final class SpillStore {
+
+	// staging buffer for writes
+	private static final int CHUNK_BYTES = 1 << 20;
+
+	/** Heap-side handle of a spilled image. */
+	static final class Spilled {
+		private final long offset;
+		private final long length;
+		private final ColorModel colorModel;
+		private final SampleModel sampleModel;
+		private final int dataType;
+		private final int elements;
+		private boolean released;
+
+		private Spilled(long offset, long length, ColorModel colorModel, SampleModel sampleModel, int dataType,
+				int elements) {
+			this.offset = offset;
+			this.length = length;
+			this.colorModel = colorModel;
+			this.sampleModel = sampleModel;
+			this.dataType = dataType;
+			this.elements = elements;
+		}
+
+		long length() {
+			return this.length;
+		}
+	}
+
+	private FileChannel channel;
+	private Path file;
+	private long end;
+	// free regions below end, offset -> length; never adjacent to each other or to end
+	private final TreeMap<Long, Long> free = new TreeMap<>();
+
+	/** Writes the image's pixels to disk and returns a handle for it. */
+	synchronized Spilled spill(BufferedImage image) throws IOException {
+		WritableRaster raster = standalone(image);
+		DataBuffer db = raster.getDataBuffer();
+		if (db.getNumBanks() != 1) {
+			throw new IOException("Multi-bank rasters cannot be spilled.");
+		}
+		switch (db.getDataType()) {
+			case DataBuffer.TYPE_INT, DataBuffer.TYPE_BYTE, DataBuffer.TYPE_USHORT, DataBuffer.TYPE_SHORT -> {
+			}
+			default -> throw new IOException("Unsupported data type for spilling: " + db.getDataType());
+		}
+		int bytesPerElement = DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+		long length = (long) db.getSize() * bytesPerElement;
+
+		FileChannel ch = channel();
+		long offset = allocate(length);
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+		int perChunk = CHUNK_BYTES / bytesPerElement;
+		long position = offset;
+		try {
+			for (int i = 0; i < db.getSize(); i += perChunk) {
+				int n = Math.min(perChunk, db.getSize() - i);
+				chunk.clear();
+				switch (db.getDataType()) {
+					case DataBuffer.TYPE_INT -> chunk.asIntBuffer().put(((DataBufferInt) db).getData(), i, n);
+					case DataBuffer.TYPE_BYTE -> chunk.put(((DataBufferByte) db).getData(), i, n);
+					case DataBuffer.TYPE_USHORT -> chunk.asShortBuffer().put(((DataBufferUShort) db).getData(), i, n);
+					default -> chunk.asShortBuffer().put(((DataBufferShort) db).getData(), i, n);
+				}
+				chunk.position(0).limit(n * bytesPerElement);
+				while (chunk.hasRemaining()) {
+					position += ch.write(chunk, position);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			free(offset, length);
+			throw e;
+		}
+		return new Spilled(offset, length, image.getColorModel(), raster.getSampleModel(), db.getDataType(),
+				db.getSize());
+	}
+
+	/** Maps a spilled image back into a new heap image. */
+	synchronized BufferedImage restore(Spilled spilled) throws IOException {
+		if (spilled.released) {
+			throw new IllegalStateException("Spilled image was already released.");
+		}
+		MappedByteBuffer map = channel().map(FileChannel.MapMode.READ_ONLY, spilled.offset, spilled.length);
+		map.order(ByteOrder.nativeOrder());
+		DataBuffer db;
+		switch (spilled.dataType) {
+			case DataBuffer.TYPE_INT -> {
+				int[] data = new int[spilled.elements];
+				map.asIntBuffer().get(data);
+				db = new DataBufferInt(data, data.length);
+			}
+			case DataBuffer.TYPE_BYTE -> {
+				byte[] data = new byte[spilled.elements];
+				map.get(data);
+				db = new DataBufferByte(data, data.length);
+			}
+			case DataBuffer.TYPE_USHORT -> {
+				short[] data = new short[spilled.elements];
+				map.asShortBuffer().get(data);
+				db = new DataBufferUShort(data, data.length);
+			}
+			case DataBuffer.TYPE_SHORT -> {
+				short[] data = new short[spilled.elements];
+				map.asShortBuffer().get(data);
+				db = new DataBufferShort(data, data.length);
+			}
+			default -> throw new IOException("Unsupported data type: " + spilled.dataType);
+		}
+		WritableRaster raster = Raster.createWritableRaster(spilled.sampleModel, db, null);
+		return new BufferedImage(spilled.colorModel, raster, spilled.colorModel.isAlphaPremultiplied(), null);
+	}
+
+	/** Frees the handle; its bytes are reused, or cut off if they end the file. */
+	synchronized void release(Spilled spilled) {
+		if (spilled.released) {
+			return;
+		}
+		spilled.released = true;
+		free(spilled.offset, spilled.length);
+	}
+
+	/** Bytes currently occupied on disk. */
+	synchronized long diskUsage() {
+		return this.end;
+	}
+
+	/** The temp file, or null before the first spill. */
+	synchronized Path file() {
+		return this.file;
+	}
+
+	// the first free region large enough, or the end of the file
+	private long allocate(long length) {
+		for (Map.Entry<Long, Long> region : this.free.entrySet()) {
+			if (region.getValue() >= length) {
+				long offset = region.getKey();
+				this.free.remove(offset);
+				if (region.getValue() > length) {
+					this.free.put(offset + length, region.getValue() - length);
+				}
+				return offset;
+			}
+		}
+		long offset = this.end;
+		this.end += length;
+		return offset;
+	}
+
+	private void free(long offset, long length) {
+		Map.Entry<Long, Long> before = this.free.floorEntry(offset);
+		if (before != null && before.getKey() + before.getValue() == offset) {
+			this.free.remove(before.getKey());
+			offset = before.getKey();
+			length += before.getValue();
+		}
+		Long after = this.free.remove(offset + length);
+		if (after != null) {
+			length += after;
+		}
+		if (offset + length < this.end) {
+			this.free.put(offset, length);
+			return;
+		}
+		this.end = offset;
+		try {
+			this.channel.truncate(this.end);
+		} catch (IOException e) {
+			// the tail is overwritten by the next spill anyway
+			Logger.getGlobal().log(Level.WARNING, "Could not truncate spill file", e);
+		}
+	}
+
+	private FileChannel channel() throws IOException {
+		if (this.channel == null) {
+			this.file = Files.createTempFile("artcreator-history", ".spill");
+			this.file.toFile().deleteOnExit();
+			this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		return this.channel;
+	}
+
+	// a subimage shares its parent's buffer; spill only the visible pixels
+	private static WritableRaster standalone(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		if (raster.getDataBuffer().getNumBanks() == 1 && raster.getSampleModelTranslateX() == 0
+				&& raster.getSampleModelTranslateY() == 0 && sm.getWidth() == raster.getWidth()
+				&& sm.getHeight() == raster.getHeight() && raster.getDataBuffer().getOffset() == 0) {
+			return raster;
+		}
+		WritableRaster copy = raster.createCompatibleWritableRaster(raster.getWidth(), raster.getHeight());
+		copy.setRect(-raster.getMinX(), -raster.getMinY(), raster);
+		return copy;
+	}
+}
@@ -0,0 +1,130 @@
+package artcreator.domain.impl;
+
+import java.io.IOException;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+
+/**
+ * Writes a template as an SVG pattern sheet: the colored grid, the color
+ * code of every cell, grid lines (bold every 10 cells) and a legend with the
+ * number of cells per color.
+ *
+ * Output is streamed row by row. Equal neighbours in a row are merged into
+ * one rectangle, fills are CSS classes per palette color, and grid lines are
+ * one path each, so the file grows with the number of color changes rather
+ * than with every attribute of every cell.
+ */
+final class SvgExport {
+
+	private static final int MARGIN = 20;
+
+	private SvgExport() {
+	}
+
+	static void write(Template template, ExportWriter out, int cellSize) throws IOException {
+		Palette palette = template.getPalette();
+		int[] counts = template.getColorCounts();
+		int used = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				used++;
+			}
+		}
+		long gridWidth = (long) template.getColumns() * cellSize;
+		long gridHeight = (long) template.getRows() * cellSize;
+		int lineHeight = Math.max(cellSize, TemplateExport.LEGEND_LINE);
+		long width = 2 * MARGIN + Math.max(gridWidth, TemplateExport.LEGEND_WIDTH);
+		long height = 3 * MARGIN + gridHeight + (long) used * lineHeight;
+
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width).append("\" height=\"")
+				.append(height).append("\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">\n");
+		out.append("<style>\n");
+		for (int i = 0; i < palette.size(); i++) {
+			out.append(".c").append(i).append("{fill:#").appendHex(palette.getColor(i)).append("}\n");
+		}
+		out.append("text{font-family:Helvetica,Arial,sans-serif;font-size:").append(labelSize(cellSize))
+				.append("px;text-anchor:middle;dominant-baseline:central}\n");
+		out.append(".d{fill:#000}.l{fill:#FFF}.g{fill:none;stroke:#808080;stroke-width:0.3}"
+				+ ".b{fill:none;stroke:#000;stroke-width:1}.k{text-anchor:start;fill:#000}\n");
+		out.append("</style>\n");
+		out.append("<rect width=\"100%\" height=\"100%\" fill=\"#FFF\"/>\n");
+
+		out.append("<g transform=\"translate(").append(MARGIN).append(' ').append(MARGIN).append(")\">\n");
+		for (int r = 0; r < template.getRows(); r++) {
+			cellRow(template, r, cellSize, out);
+		}
+		gridLines(template, cellSize, out);
+		out.append("</g>\n");
+
+		long y = 2L * MARGIN + gridHeight;
+		for (int i = 0; i < palette.size(); i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			out.append("<rect class=\"c").append(i).append("\" x=\"").append(MARGIN).append("\" y=\"").append(y)
+					.append("\" width=\"").append(lineHeight - 2).append("\" height=\"").append(lineHeight - 2)
+					.append("\" stroke=\"#000\" stroke-width=\"0.5\"/>");
+			out.append("<text class=\"k\" x=\"").append(MARGIN + lineHeight + 4).append("\" y=\"")
+					.append(y + (lineHeight - 2) / 2.0).append("\">");
+			escaped(TemplateExport.code(i) + "  " + palette.getName(i) + "  #", out);
+			out.appendHex(palette.getColor(i)).append("  ").append(counts[i]).append(" cells</text>\n");
+			y += lineHeight;
+		}
+		out.append("</svg>\n");
+	}
+
+	// merged rectangles, then the codes of the row's cells
+	private static void cellRow(Template template, int row, int cellSize, ExportWriter out) throws IOException {
+		int columns = template.getColumns();
+		long y = (long) row * cellSize;
+		for (int c = 0; c < columns;) {
+			int index = template.getCell(c, row);
+			int end = template.runEnd(c, row);
+			out.append("<rect class=\"c").append(index).append("\" x=\"").append((long) c * cellSize)
+					.append("\" y=\"").append(y).append("\" width=\"").append((long) (end - c) * cellSize)
+					.append("\" height=\"").append(cellSize).append("\"/>");
+			c = end;
+		}
+		out.append('\n');
+		if (cellSize < TemplateExport.MIN_LABELED_CELL) {
+			return;
+		}
+		double cy = y + cellSize / 2.0;
+		for (int c = 0; c < columns; c++) {
+			int index = template.getCell(c, row);
+			out.append("<text class=\"").append(TemplateExport.isDark(template.getColor(c, row)) ? 'l' : 'd')
+					.append("\" x=\"").append((double) c * cellSize + cellSize / 2.0).append("\" y=\"").append(cy)
+					.append("\">").append(TemplateExport.code(index)).append("</text>");
+		}
+		out.append('\n');
+	}
+
+	private static void gridLines(Template template, int cellSize, ExportWriter out) throws IOException {
+		long w = (long) template.getColumns() * cellSize;
+		long h = (long) template.getRows() * cellSize;
+		for (boolean bold : new boolean[] { false, true }) {
+			out.append("<path class=\"").append(bold ? 'b' : 'g').append("\" d=\"");
+			for (int c = 0; c <= template.getColumns(); c++) {
+				if (TemplateExport.isBoldLine(c, template.getColumns()) == bold) {
+					out.append('M').append((long) c * cellSize).append(" 0V").append(h);
+				}
+			}
+			for (int r = 0; r <= template.getRows(); r++) {
+				if (TemplateExport.isBoldLine(r, template.getRows()) == bold) {
+					out.append('M').append("0 ").append((long) r * cellSize).append('H').append(w);
+				}
+			}
+			out.append("\"/>\n");
+		}
+	}
+
+	private static double labelSize(int cellSize) {
+		return cellSize * 0.55;
+	}
+
+	private static void escaped(String text, ExportWriter out) throws IOException {
+		out.append(text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;"));
+	}
+}
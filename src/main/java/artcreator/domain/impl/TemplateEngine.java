@@ -0,0 +1,463 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+import artcreator.domain.kernel.PixelKernels;
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+import artcreator.domain.port.TemplateConfig;
+import artcreator.domain.port.TemplateConfig.Dithering;
+import artcreator.domain.port.TemplateConfig.Matching;
+
+/**
+ * Turns an image into a {@link Template} in stages, each of which keeps its
+ * results for the last few inputs, so tweaking one parameter reruns only
+ * the stages after it:
+ *
+ * <ol>
+ * <li>Grid: every cell gets the average color of the source pixels it
+ * covers. Keyed by the caller's version of the pixels, the pixels (a crop
+ * shares them with its source), the region and the grid size.</li>
+ * <li>Color space: CIELAB coordinates of the cell colors, when matching in
+ * Lab without dithering. Keyed by the grid result.</li>
+ * <li>Matching and dithering: the closest palette color per cell, through a
+ * {@link PaletteIndex} that is built once per palette. Dithering changes
+ * which color matches, so both are one stage. Keyed by the grid result,
+ * palette, matching and dithering.</li>
+ * <li>Statistics: cells per color, counted by the {@link Template}, which is
+ * what the previous stage keeps.</li>
+ * </ol>
+ *
+ * Results are only reused for a non-null version, which the caller changes
+ * whenever it changes the pixels; without one nothing is cached, so images
+ * the caller may still draw into never give stale templates.
+ *
+ * The second time a grid is computed from the same pixels (another crop or
+ * grid size), an {@link IntegralImage} of them is built if it fits the
+ * budget; from then on a grid costs four reads per cell instead of a pass
+ * over the pixels. Integral images are kept per source, like the stages, so
+ * sessions and batch jobs working on different images at once do not evict
+ * each other's; the least recently used are dropped once they exceed the
+ * budget together. Changing palette, matching or dithering never reads the
+ * pixels again.
+ *
+ * Grid and matching run on a {@link ForkJoinPool} in bands of cell rows;
+ * error diffusion is parallelized separately by {@link ErrorDiffusion}.
+ * Their inner loops over pixel and cell rows are {@link PixelKernels}.
+ * Pixels are read through {@link Pixels}, i.e. straight from the int[]
+ * behind TYPE_INT_RGB/ARGB images or row by row into a reused int[].
+ *
+ * A run can be cancelled: every band polls the caller's check before each
+ * row of cells and the whole run ends with a {@link CancellationException}.
+ * Nothing of a cancelled run is cached.
+ */
+final class TemplateEngine {
+
+	// indexes are built once per palette and matching mode
+	private static final int MAX_CACHED_INDEXES = 16;
+	// results kept per stage
+	private static final int MAX_CACHED_RESULTS = 4;
+	private static final PixelKernels KERNELS = PixelKernels.get();
+
+	// 8x8 Bayer threshold matrix for ordered dithering
+	private static final int[] BAYER = {
+			0, 32, 8, 40, 2, 34, 10, 42,
+			48, 16, 56, 24, 50, 18, 58, 26,
+			12, 44, 4, 36, 14, 46, 6, 38,
+			60, 28, 52, 20, 62, 30, 54, 22,
+			3, 35, 11, 43, 1, 33, 9, 41,
+			51, 19, 59, 27, 49, 17, 57, 25,
+			15, 47, 7, 39, 13, 45, 5, 37,
+			63, 31, 55, 23, 61, 29, 53, 21 };
+
+	private final ForkJoinPool pool;
+	private final long integralBudget;
+	private final Map<List<Object>, PaletteIndex> indexes = new ConcurrentHashMap<>();
+	// stage results; guarded by this
+	private final Map<DataBuffer, Long> sourceIds = new WeakHashMap<>();
+	private long nextSourceId;
+	private final Map<List<Object>, int[]> grids = lru();
+	private final Map<List<Object>, float[]> labs = lru();
+	private final Map<List<Object>, Template> templates = lru();
+	// sources gridded before, and integral images by source in access order
+	private final Map<List<Object>, Boolean> gridded = lru();
+	private final Map<List<Object>, IntegralImage> integrals = new LinkedHashMap<>(16, 0.75f, true);
+	private long integralBytes;
+
+	/**
+	 * @param integralBudget bytes all kept {@link IntegralImage}s may take
+	 *                       together; 0 to always read the pixels
+	 */
+	TemplateEngine(ForkJoinPool pool, long integralBudget) {
+		this.pool = pool;
+		this.integralBudget = integralBudget;
+	}
+
+	PaletteIndex indexFor(Palette palette, Matching matching) {
+		List<Object> key = List.of(palette, matching);
+		PaletteIndex index = this.indexes.get(key);
+		if (index == null) {
+			if (this.indexes.size() >= MAX_CACHED_INDEXES) {
+				this.indexes.clear();
+			}
+			index = this.indexes.computeIfAbsent(key, k -> PaletteIndex.build(palette, matching));
+		}
+		return index;
+	}
+
+	/**
+	 * @param version identifies the image's pixels, a new one whenever they
+	 *                change; null to reuse nothing
+	 */
+	Template generate(BufferedImage image, Object version, TemplateConfig config, BooleanSupplier cancelled) {
+		int columns = config.getColumns();
+		int rows = config.rowsFor(image.getWidth(), image.getHeight());
+		Palette palette = config.getPalette();
+		Dithering dithering = config.getDithering();
+		int[] rgb = cellColors(image, version, columns, rows, cancelled);
+		boolean caching = version != null;
+		// grid results are never modified, so identity is a valid key
+		List<Object> key = List.of(rgb, palette, config.getMatching(), dithering);
+		Template template = caching ? cached(this.templates, key) : null;
+		if (template != null) {
+			return template;
+		}
+
+		PaletteIndex index = indexFor(palette, config.getMatching());
+		int[] cells;
+		if (dithering == Dithering.FLOYD_STEINBERG || dithering == Dithering.ATKINSON) {
+			cells = ErrorDiffusion.run(this.pool, rgb, columns, rows, index, palette.getColors(), dithering,
+					cancelled);
+		} else {
+			cells = new int[columns * rows];
+			int spread = dithering == Dithering.ORDERED ? orderedSpread(palette) : 0;
+			float[] lab = null;
+			boolean converted = false;
+			if (spread == 0 && index instanceof PaletteIndex.LabKdTree) {
+				lab = caching ? cached(this.labs, List.of(rgb)) : null;
+				converted = lab != null;
+				if (lab == null) {
+					lab = new float[3 * rgb.length];
+				}
+			}
+			this.pool.invoke(new MatchBand(rgb, lab, converted, cells, columns, index, spread, cancelled, 0, rows,
+					grain(rows)));
+			if (caching && lab != null && !converted) {
+				remember(this.labs, List.of(rgb), lab);
+			}
+		}
+		template = new Template(columns, rows, palette, cells);
+		if (caching) {
+			remember(this.templates, key, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Returns the average color of every cell as packed 0xRRGGBB, row-major.
+	 * Reuses earlier results for the same version, pixels, region and grid
+	 * unless the version is null; the result must not be modified.
+	 */
+	int[] cellColors(BufferedImage image, Object version, int columns, int rows, BooleanSupplier cancelled) {
+		int w = image.getWidth(), h = image.getHeight();
+		WritableRaster raster = image.getRaster();
+		DataBuffer pixels = raster.getDataBuffer();
+		// position of the image within its pixels; a crop is a subimage of its source
+		int x = raster.getMinX() - raster.getSampleModelTranslateX();
+		int y = raster.getMinY() - raster.getSampleModelTranslateY();
+		List<Object> source = version == null ? null : List.of(version, sourceId(pixels));
+		List<Object> key = source == null ? null : List.of(source, x, y, w, h, columns, rows);
+		int[] rgb = key == null ? null : cached(this.grids, key);
+		if (rgb != null) {
+			return rgb;
+		}
+
+		// cell boundaries in source pixels; every cell covers at least one pixel
+		int[] x0 = new int[columns], x1 = new int[columns];
+		int widest = 1, tallest = h / rows + 1;
+		for (int c = 0; c < columns; c++) {
+			x0[c] = Math.min(w - 1, (int) ((long) c * w / columns));
+			x1[c] = Math.max(x0[c] + 1, (int) ((long) (c + 1) * w / columns));
+			widest = Math.max(widest, x1[c] - x0[c]);
+		}
+		rgb = new int[columns * rows];
+		IntegralImage sums = source == null ? null : integralFor(image, pixels, source, cancelled);
+		if (sums != null && (long) widest * tallest <= IntegralImage.MAX_AREA) {
+			sums.cellColors(x, y, h, columns, rows, x0, x1, rgb, cancelled);
+		} else {
+			Job job = new Job(new Pixels(image), columns, rows, x0, x1, rgb, cancelled);
+			this.pool.invoke(new AverageBand(job, 0, rows, grain(rows)));
+		}
+		if (key != null) {
+			remember(this.grids, key, rgb);
+		}
+		return rgb;
+	}
+
+	/** Bytes held by the kept integral images. */
+	synchronized long integralBytes() {
+		return this.integralBytes;
+	}
+
+	static void checkCancelled(BooleanSupplier cancelled) {
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException("Template generation cancelled.");
+		}
+	}
+
+	/** First source pixel row of cell row r, for an image h pixels high. */
+	static int rowStart(int r, int h, int rows) {
+		return Math.min(h - 1, (int) ((long) r * h / rows));
+	}
+
+	/** End (exclusive) of the source pixel rows of cell row r; at least one row. */
+	static int rowEnd(int r, int h, int rows) {
+		return Math.max(rowStart(r, h, rows) + 1, (int) ((long) (r + 1) * h / rows));
+	}
+
+	// the integral image of these pixels, built when they are gridded a second time
+	private IntegralImage integralFor(BufferedImage image, DataBuffer pixels, List<Object> source,
+			BooleanSupplier cancelled) {
+		synchronized (this) {
+			IntegralImage sums = this.integrals.get(source);
+			if (sums != null && sums.covers(pixels)) {
+				return sums;
+			}
+			if (this.gridded.put(source, Boolean.TRUE) == null) {
+				return null;
+			}
+		}
+		BufferedImage whole = whole(image);
+		if (whole == null || IntegralImage.bytes(whole.getWidth(), whole.getHeight()) > this.integralBudget
+				|| (long) (whole.getWidth() + 1) * (whole.getHeight() + 1) > Integer.MAX_VALUE) {
+			return null;
+		}
+		IntegralImage sums = IntegralImage.build(whole, cancelled);
+		keep(source, sums);
+		return sums;
+	}
+
+	// adds a table and drops the least recently used (and those of collected images) beyond the budget
+	private synchronized void keep(List<Object> source, IntegralImage sums) {
+		IntegralImage replaced = this.integrals.put(source, sums);
+		this.integralBytes += sums.bytes() - (replaced == null ? 0 : replaced.bytes());
+		Iterator<Map.Entry<List<Object>, IntegralImage>> it = this.integrals.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<List<Object>, IntegralImage> entry = it.next();
+			IntegralImage kept = entry.getValue();
+			if (kept != sums && (!kept.isAlive() || this.integralBytes > this.integralBudget)) {
+				this.integralBytes -= kept.bytes();
+				it.remove();
+			}
+		}
+	}
+
+	// the image that owns the pixels of a subimage, or null if that is not a plain image
+	private static BufferedImage whole(BufferedImage image) {
+		Raster raster = image.getRaster();
+		while (raster.getParent() != null) {
+			raster = raster.getParent();
+		}
+		if (raster == image.getRaster()) {
+			return image;
+		}
+		if (!(raster instanceof WritableRaster root) || root.getMinX() != 0 || root.getMinY() != 0
+				|| root.getSampleModelTranslateX() != 0 || root.getSampleModelTranslateY() != 0) {
+			return null;
+		}
+		return new BufferedImage(image.getColorModel(), root, image.isAlphaPremultiplied(), null);
+	}
+
+	private synchronized long sourceId(DataBuffer pixels) {
+		return this.sourceIds.computeIfAbsent(pixels, p -> this.nextSourceId++);
+	}
+
+	private synchronized <T> T cached(Map<List<Object>, T> stage, List<Object> key) {
+		return stage.get(key);
+	}
+
+	private synchronized <T> void remember(Map<List<Object>, T> stage, List<Object> key, T value) {
+		stage.put(key, value);
+	}
+
+	private static <T> Map<List<Object>, T> lru() {
+		return new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, T> eldest) {
+				return size() > MAX_CACHED_RESULTS;
+			}
+		};
+	}
+
+	private int grain(int rows) {
+		return Math.max(1, rows / (this.pool.getParallelism() * 4));
+	}
+
+	// about one palette step if the palette were spread evenly over the RGB cube
+	private static int orderedSpread(Palette palette) {
+		return (int) Math.round(255.0 / Math.cbrt(palette.size()));
+	}
+
+	/** Shared, read-only inputs of one averaging run plus its output. */
+	private static final class Job {
+		final Pixels pixels;
+		final int columns, rows;
+		final int[] x0, x1;
+		final int[] rgb;
+		final BooleanSupplier cancelled;
+
+		Job(Pixels pixels, int columns, int rows, int[] x0, int[] x1, int[] rgb, BooleanSupplier cancelled) {
+			this.pixels = pixels;
+			this.columns = columns;
+			this.rows = rows;
+			this.x0 = x0;
+			this.x1 = x1;
+			this.rgb = rgb;
+			this.cancelled = cancelled;
+		}
+	}
+
+	private static final class AverageBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Job job;
+		private final int from, to, grain;
+
+		AverageBand(Job job, int from, int to, int grain) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > this.grain) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new AverageBand(this.job, this.from, mid, this.grain),
+						new AverageBand(this.job, mid, this.to, this.grain));
+				return;
+			}
+			Job j = this.job;
+			int h = j.pixels.height;
+			long[] sr = new long[j.columns], sg = new long[j.columns], sb = new long[j.columns];
+			int[] rowBuffer = new int[j.pixels.width];
+
+			for (int r = this.from; r < this.to; r++) {
+				checkCancelled(j.cancelled);
+				int y0 = rowStart(r, h, j.rows);
+				int y1 = rowEnd(r, h, j.rows);
+				Arrays.fill(sr, 0);
+				Arrays.fill(sg, 0);
+				Arrays.fill(sb, 0);
+
+				for (int y = y0; y < y1; y++) {
+					int[] row = j.pixels.row(y, rowBuffer);
+					int base = j.pixels.rowOffset(y);
+					KERNELS.sumCells(row, base, j.x0, j.x1, sr, sg, sb);
+				}
+
+				int out = r * j.columns;
+				for (int c = 0; c < j.columns; c++) {
+					long n = (long) (j.x1[c] - j.x0[c]) * (y1 - y0);
+					int red = (int) ((sr[c] + n / 2) / n);
+					int green = (int) ((sg[c] + n / 2) / n);
+					int blue = (int) ((sb[c] + n / 2) / n);
+					j.rgb[out + c] = (red << 16) | (green << 8) | blue;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps cell colors to palette indices, with an optional ordered dither.
+	 * Lab matching without dither goes through {@code lab}, which is filled
+	 * on the way unless {@code converted}.
+	 */
+	private static final class MatchBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] rgb, cells;
+		private final float[] lab;
+		private final boolean converted;
+		private final int columns;
+		private final transient PaletteIndex index;
+		// amplitude of the ordered dither, 0 for none
+		private final int spread;
+		private final transient BooleanSupplier cancelled;
+		private final int from, to, grain;
+
+		MatchBand(int[] rgb, float[] lab, boolean converted, int[] cells, int columns, PaletteIndex index, int spread,
+				BooleanSupplier cancelled, int from, int to, int grain) {
+			this.rgb = rgb;
+			this.lab = lab;
+			this.converted = converted;
+			this.cells = cells;
+			this.columns = columns;
+			this.index = index;
+			this.spread = spread;
+			this.cancelled = cancelled;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > this.grain) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new MatchBand(this.rgb, this.lab, this.converted, this.cells, this.columns, this.index,
+						this.spread, this.cancelled, this.from, mid, this.grain),
+						new MatchBand(this.rgb, this.lab, this.converted, this.cells, this.columns, this.index,
+								this.spread, this.cancelled, mid, this.to, this.grain));
+				return;
+			}
+			float[] scratch = new float[3];
+			int[] dithered = this.spread != 0 ? new int[this.columns] : null;
+			for (int y = this.from; y < this.to; y++) {
+				checkCancelled(this.cancelled);
+				int start = y * this.columns, end = start + this.columns;
+				if (this.lab != null) {
+					if (!this.converted) {
+						KERNELS.toLab(this.rgb, start, end, this.lab);
+					}
+					PaletteIndex.LabKdTree tree = (PaletteIndex.LabKdTree) this.index;
+					for (int i = start; i < end; i++) {
+						this.cells[i] = tree.nearestLab(this.lab[3 * i], this.lab[3 * i + 1], this.lab[3 * i + 2]);
+					}
+				} else if (dithered != null) {
+					for (int x = 0; x < this.columns; x++) {
+						int p = this.rgb[start + x];
+						// threshold centred on zero, in (-spread/2, spread/2)
+						int offset = (2 * BAYER[((y & 7) << 3) | (x & 7)] - 63) * this.spread / 128;
+						dithered[x] = clamp(((p >> 16) & 0xFF) + offset) << 16 | clamp(((p >> 8) & 0xFF) + offset) << 8
+								| clamp((p & 0xFF) + offset);
+					}
+					this.index.nearestAll(dithered, 0, this.columns, this.cells, start, scratch);
+				} else {
+					this.index.nearestAll(this.rgb, start, this.columns, this.cells, start, scratch);
+				}
+			}
+		}
+
+		private static int clamp(int v) {
+			return v < 0 ? 0 : v > 255 ? 255 : v;
+		}
+	}
+}
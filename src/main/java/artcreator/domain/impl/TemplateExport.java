@@ -0,0 +1,126 @@
+package artcreator.domain.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+
+/**
+ * Writes templates to files. The format is chosen by the file extension:
+ *
+ * <ul>
+ * <li>.png: every cell as a solid block of cellSize pixels ({@link PngExport})</li>
+ * <li>.svg: vector pattern sheet with color codes and legend, cellSize user
+ * units per cell ({@link SvgExport})</li>
+ * <li>.pdf: the pattern sheet tiled onto A4 pages, cellSize points per cell,
+ * plus a bill of materials ({@link PdfExport})</li>
+ * <li>.csv: bill of materials, one line per used color; cellSize is ignored</li>
+ * <li>.tpl: the template's own binary format ({@link Template#writeTo}), which
+ * can be memory-mapped when read back; cellSize is ignored</li>
+ * </ul>
+ *
+ * All writers stream: memory use depends on the width of one row of the
+ * output, never on the size of the whole output. Output goes to a temp file
+ * in the same directory, which replaces the destination atomically once it
+ * is complete: a failed export leaves no partial file behind and an existing
+ * file as it was.
+ */
+final class TemplateExport {
+
+	/** Cells smaller than this get no color code. */
+	static final int MIN_LABELED_CELL = 8;
+	/** Line height and minimum width of the legend / bill of materials. */
+	static final int LEGEND_LINE = 14;
+	static final int LEGEND_WIDTH = 300;
+
+	private static final List<String> FORMATS = List.of("png", "svg", "pdf", "csv", "tpl");
+
+	private TemplateExport() {
+	}
+
+	static void write(Template template, File file, int cellSize) throws IOException {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("Invalid cell size: " + cellSize);
+		}
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		String format = name.lastIndexOf('.') < 0 ? "" : name.substring(name.lastIndexOf('.') + 1);
+		if (!FORMATS.contains(format)) {
+			throw new IllegalArgumentException("Unsupported export format: " + file.getName());
+		}
+		Path target = file.toPath().toAbsolutePath();
+		Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				switch (format) {
+				case "png" -> PngExport.write(template, new BufferedOutputStream(out, 64 * 1024), cellSize);
+				case "svg" -> write(template, out, cellSize, SvgExport::write);
+				case "pdf" -> write(template, out, cellSize, PdfExport::write);
+				case "tpl" -> template.writeTo(out);
+				default -> write(template, out, cellSize, TemplateExport::billOfMaterials);
+				}
+			}
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private interface TextFormat {
+		void write(Template template, ExportWriter out, int cellSize) throws IOException;
+	}
+
+	private static void write(Template template, OutputStream out, int cellSize, TextFormat format)
+			throws IOException {
+		ExportWriter writer = new ExportWriter(out);
+		format.write(template, writer, cellSize);
+		writer.flushBuffer();
+	}
+
+	/** CSV (RFC 4180) with the number and share of cells per used color, in palette order. */
+	static void billOfMaterials(Template template, ExportWriter out, int cellSize) throws IOException {
+		Palette palette = template.getPalette();
+		int[] counts = template.getColorCounts();
+		double cells = (double) template.getColumns() * template.getRows();
+		out.append("code,name,color,count,percent\r\n");
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			out.append(code(i)).append(',').append(csv(palette.getName(i))).append(",#")
+					.appendHex(palette.getColor(i)).append(',').append(counts[i]).append(',')
+					.append(counts[i] * 100 / cells).append("\r\n");
+		}
+	}
+
+	/** The code printed in a cell: its 1-based palette position. */
+	static String code(int index) {
+		return Integer.toString(index + 1);
+	}
+
+	/** True if a code on this color should be white rather than black. */
+	static boolean isDark(int rgb) {
+		int luma = 299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF);
+		return luma < 128_000;
+	}
+
+	/** Grid lines are bold every 10 cells and at the border. */
+	static boolean isBoldLine(int line, int cells) {
+		return line % 10 == 0 || line == cells;
+	}
+
+	private static String csv(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+				&& field.indexOf('\r') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+}
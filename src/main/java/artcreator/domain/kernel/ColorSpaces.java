@@ -0,0 +1,49 @@
+package artcreator.domain.kernel;
+
+/**
+ * sRGB (D65) to CIELAB conversion.
+ */
+public final class ColorSpaces {
+
+	// sRGB channel value -> linear light, precomputed for all 256 values
+	static final float[] LINEAR = new float[256];
+
+	// linear sRGB -> XYZ, rows already divided by the D65 white point where noted
+	static final float XR = 0.4124564f, XG = 0.3575761f, XB = 0.1804375f, XW = 0.95047f;
+	static final float YR = 0.2126729f, YG = 0.7151522f, YB = 0.0721750f;
+	static final float ZR = 0.0193339f, ZG = 0.1191920f, ZB = 0.9503041f, ZW = 1.08883f;
+	// (6/29)^3 and 1 / (3 * (6/29)^2)
+	static final float EPSILON = 0.008856452f;
+	static final float SLOPE = 7.787037f;
+	static final float OFFSET = 4f / 29f;
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			double c = i / 255.0;
+			LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+		}
+	}
+
+	private ColorSpaces() {
+	}
+
+	/**
+	 * Converts 8-bit sRGB channels to CIELAB, writing L, a, b into
+	 * {@code lab[offset..offset+2]}.
+	 */
+	public static void toLab(int r, int g, int b, float[] lab, int offset) {
+		float lr = LINEAR[r], lg = LINEAR[g], lb = LINEAR[b];
+		// linear sRGB -> XYZ, normalized by the D65 white point
+		float x = (XR * lr + XG * lg + XB * lb) / XW;
+		float y = YR * lr + YG * lg + YB * lb;
+		float z = (ZR * lr + ZG * lg + ZB * lb) / ZW;
+		float fx = f(x), fy = f(y), fz = f(z);
+		lab[offset] = 116f * fy - 16f;
+		lab[offset + 1] = 500f * (fx - fy);
+		lab[offset + 2] = 200f * (fy - fz);
+	}
+
+	private static float f(float t) {
+		return t > EPSILON ? (float) Math.cbrt(t) : t * SLOPE + OFFSET;
+	}
+}
@@ -0,0 +1,130 @@
+package artcreator.domain.kernel;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The inner loops of template generation and preview scaling, in two
+ * implementations: plain Java ({@link #scalar()}) and SIMD through the
+ * incubating Vector API ({@link #vector()}), which is only available when the
+ * JVM is started with {@code --add-modules jdk.incubator.vector}.
+ *
+ * {@link #get()} is chosen once at startup: the vector kernels if the module
+ * is present and the CPU has vectors of at least four ints, otherwise the
+ * scalar ones. System property {@value #PROPERTY} ("scalar" or "vector")
+ * overrides the choice. Both give the same results, except that a Lab
+ * coordinate may differ in the last bits of the float (the vector cube root
+ * rounds differently; by at most {@value #LAB_TOLERANCE} over all colors).
+ *
+ * Kernels keep no state and can be called from any number of threads.
+ */
+public abstract class PixelKernels {
+
+	public static final String PROPERTY = "artcreator.kernels";
+	/** Largest difference of a Lab coordinate between the two implementations. */
+	public static final float LAB_TOLERANCE = 4.6e-5f;
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_CLASS = PixelKernels.class.getPackageName() + ".VectorKernels";
+	// below this, lane setup costs more than it saves
+	private static final int MIN_LANES = 4;
+	private static final PixelKernels SCALAR = new ScalarKernels();
+	private static final PixelKernels SELECTED = select();
+
+	PixelKernels() {
+	}
+
+	/** The kernels chosen at startup. */
+	public static PixelKernels get() {
+		return SELECTED;
+	}
+
+	public static PixelKernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * The Vector API kernels.
+	 * @throws UnsupportedOperationException if the JVM was started without the module.
+	 */
+	public static PixelKernels vector() {
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+			throw new UnsupportedOperationException("Vector API not available, start with --add-modules "
+					+ VECTOR_MODULE);
+		}
+		// loaded reflectively, so this class links without the module
+		try {
+			return (PixelKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new UnsupportedOperationException("Vector kernels could not be loaded.", e);
+		}
+	}
+
+	private static PixelKernels select() {
+		String choice = System.getProperty(PROPERTY, "auto");
+		PixelKernels kernels = SCALAR;
+		if (!"scalar".equals(choice)) {
+			try {
+				PixelKernels vector = vector();
+				if ("vector".equals(choice) || vector.lanes() >= MIN_LANES) {
+					kernels = vector;
+				}
+			} catch (UnsupportedOperationException e) {
+				Logger.getGlobal().log("vector".equals(choice) ? Level.WARNING : Level.FINE,
+						"Using scalar pixel kernels", e);
+			}
+		}
+		Logger.getGlobal().log(Level.INFO, "Pixel kernels: {0}", kernels.getName());
+		return kernels;
+	}
+
+	/** E.g. "scalar" or "vector, 8 lanes". */
+	public abstract String getName();
+
+	/** Ints processed at once; 1 for the scalar kernels. */
+	public abstract int lanes();
+
+	/**
+	 * Adds the channel sums of one pixel row to every cell of a grid row:
+	 * cell c covers {@code row[offset + x0[c]]} up to, not including,
+	 * {@code row[offset + x1[c]]}; pixels are 0x..RRGGBB.
+	 */
+	public abstract void sumCells(int[] row, int offset, int[] x0, int[] x1, long[] red, long[] green,
+			long[] blue);
+
+	/**
+	 * Converts the 0xRRGGBB colors {@code rgb[from..to)} to CIELAB as
+	 * {@link ColorSpaces#toLab} does; L, a and b of color i go to
+	 * {@code lab[3 * i]} onwards.
+	 */
+	public abstract void toLab(int[] rgb, int from, int to, float[] lab);
+
+	/**
+	 * For {@code count} 0xRRGGBB colors from {@code rgb[from]}, writes the
+	 * index of the closest palette color by squared RGB distance to
+	 * {@code out[outFrom]} onwards; ties go to the lower index. The palette is
+	 * given channel by channel.
+	 */
+	public abstract void nearestRgb(int[] rgb, int from, int count, int[] reds, int[] greens, int[] blues,
+			int[] out, int outFrom);
+
+	/**
+	 * Halves a 0x..RRGGBB image: destination pixel (x, y) is the rounded
+	 * average of the source's 2x2 block at (2x, 2y). Alpha is dropped.
+	 * @param width destination width; the source is twice as wide
+	 * @param height destination height; the source is twice as high
+	 */
+	public abstract void halve(int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride,
+			int width, int height);
+
+	// the channels of two pixels side by side, 10 bits each: sums of four still fit
+	static int spread(int p) {
+		return ((p >> 16) & 0xFF) << 20 | ((p >> 8) & 0xFF) << 10 | (p & 0xFF);
+	}
+
+	// the average of four spread pixels, rounded
+	static int average(int sum) {
+		return (((sum >> 20) & 0x3FF) + 2) >> 2 << 16 | (((sum >> 10) & 0x3FF) + 2) >> 2 << 8
+				| ((sum & 0x3FF) + 2) >> 2;
+	}
+}
@@ -0,0 +1,78 @@
+package artcreator.domain.kernel;
+
+/**
+ * Plain Java kernels; the reference for {@link VectorKernels} and the
+ * fallback when the Vector API is not available.
+ */
+final class ScalarKernels extends PixelKernels {
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public int lanes() {
+		return 1;
+	}
+
+	@Override
+	public void sumCells(int[] row, int offset, int[] x0, int[] x1, long[] red, long[] green, long[] blue) {
+		for (int c = 0; c < x0.length; c++) {
+			long r = 0, g = 0, b = 0;
+			for (int i = offset + x0[c], end = offset + x1[c]; i < end; i++) {
+				int p = row[i];
+				r += (p >> 16) & 0xFF;
+				g += (p >> 8) & 0xFF;
+				b += p & 0xFF;
+			}
+			red[c] += r;
+			green[c] += g;
+			blue[c] += b;
+		}
+	}
+
+	@Override
+	public void toLab(int[] rgb, int from, int to, float[] lab) {
+		for (int i = from; i < to; i++) {
+			int p = rgb[i];
+			ColorSpaces.toLab((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, lab, 3 * i);
+		}
+	}
+
+	@Override
+	public void nearestRgb(int[] rgb, int from, int count, int[] reds, int[] greens, int[] blues, int[] out,
+			int outFrom) {
+		for (int k = 0; k < count; k++) {
+			int p = rgb[from + k];
+			out[outFrom + k] = nearest((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, reds, greens, blues);
+		}
+	}
+
+	static int nearest(int r, int g, int b, int[] reds, int[] greens, int[] blues) {
+		int best = 0;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < reds.length; i++) {
+			int dr = reds[i] - r, dg = greens[i] - g, db = blues[i] - b;
+			int d = dr * dr + dg * dg + db * db;
+			if (d < bestDistance) {
+				bestDistance = d;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public void halve(int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride, int width,
+			int height) {
+		for (int y = 0; y < height; y++) {
+			int top = srcOffset + 2 * y * srcStride, bottom = top + srcStride, out = dstOffset + y * dstStride;
+			for (int x = 0; x < width; x++) {
+				int sum = spread(src[top + 2 * x]) + spread(src[top + 2 * x + 1]) + spread(src[bottom + 2 * x])
+						+ spread(src[bottom + 2 * x + 1]);
+				dst[out + x] = average(sum);
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package artcreator.domain.kernel;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on the Vector API at the CPU's preferred vector size. Every loop
+ * handles whole vectors and leaves the remainder to the scalar code, so
+ * results match {@link ScalarKernels} (up to cube root rounding in
+ * {@link #toLab}).
+ *
+ * Only loaded through {@link PixelKernels#vector()}; referencing it
+ * directly would fail to link without {@code jdk.incubator.vector}.
+ */
+final class VectorKernels extends PixelKernels {
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class, INTS.vectorShape());
+	private static final int LANES = INTS.length();
+
+	// lane i -> 3 * i, to interleave L, a and b
+	private static final int[] TRIPLES = new int[LANES];
+	// lane i -> 2 * i, to pick every other pixel
+	private static final int[] PAIRS = new int[LANES];
+
+	static {
+		for (int i = 0; i < LANES; i++) {
+			TRIPLES[i] = 3 * i;
+			PAIRS[i] = 2 * i;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "vector, " + LANES + " lanes";
+	}
+
+	@Override
+	public int lanes() {
+		return LANES;
+	}
+
+	@Override
+	public void sumCells(int[] row, int offset, int[] x0, int[] x1, long[] red, long[] green, long[] blue) {
+		for (int c = 0; c < x0.length; c++) {
+			int i = offset + x0[c], end = offset + x1[c];
+			long r = 0, g = 0, b = 0;
+			// cells narrower than two vectors are summed faster one by one
+			if (end - i >= 2 * LANES) {
+				IntVector vr = IntVector.zero(INTS), vg = vr, vb = vr;
+				for (int last = end - LANES; i <= last; i += LANES) {
+					IntVector p = IntVector.fromArray(INTS, row, i);
+					vr = vr.add(p.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+					vg = vg.add(p.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+					vb = vb.add(p.and(0xFF));
+				}
+				if (i < end) {
+					IntVector p = IntVector.fromArray(INTS, row, i, INTS.indexInRange(i, end));
+					vr = vr.add(p.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+					vg = vg.add(p.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+					vb = vb.add(p.and(0xFF));
+					i = end;
+				}
+				r = vr.reduceLanes(VectorOperators.ADD);
+				g = vg.reduceLanes(VectorOperators.ADD);
+				b = vb.reduceLanes(VectorOperators.ADD);
+			}
+			for (; i < end; i++) {
+				int p = row[i];
+				r += (p >> 16) & 0xFF;
+				g += (p >> 8) & 0xFF;
+				b += p & 0xFF;
+			}
+			red[c] += r;
+			green[c] += g;
+			blue[c] += b;
+		}
+	}
+
+	@Override
+	public void toLab(int[] rgb, int from, int to, float[] lab) {
+		int[] ri = new int[LANES], gi = new int[LANES], bi = new int[LANES];
+		int i = from;
+		for (int last = to - LANES; i <= last; i += LANES) {
+			IntVector p = IntVector.fromArray(INTS, rgb, i);
+			p.lanewise(VectorOperators.LSHR, 16).and(0xFF).intoArray(ri, 0);
+			p.lanewise(VectorOperators.LSHR, 8).and(0xFF).intoArray(gi, 0);
+			p.and(0xFF).intoArray(bi, 0);
+			FloatVector lr = FloatVector.fromArray(FLOATS, ColorSpaces.LINEAR, 0, ri, 0);
+			FloatVector lg = FloatVector.fromArray(FLOATS, ColorSpaces.LINEAR, 0, gi, 0);
+			FloatVector lb = FloatVector.fromArray(FLOATS, ColorSpaces.LINEAR, 0, bi, 0);
+			// same operations in the same order as ColorSpaces.toLab
+			FloatVector x = lr.mul(ColorSpaces.XR).add(lg.mul(ColorSpaces.XG)).add(lb.mul(ColorSpaces.XB))
+					.div(ColorSpaces.XW);
+			FloatVector y = lr.mul(ColorSpaces.YR).add(lg.mul(ColorSpaces.YG)).add(lb.mul(ColorSpaces.YB));
+			FloatVector z = lr.mul(ColorSpaces.ZR).add(lg.mul(ColorSpaces.ZG)).add(lb.mul(ColorSpaces.ZB))
+					.div(ColorSpaces.ZW);
+			FloatVector fx = f(x), fy = f(y), fz = f(z);
+			fy.mul(116f).sub(16f).intoArray(lab, 3 * i, TRIPLES, 0);
+			fx.sub(fy).mul(500f).intoArray(lab, 3 * i + 1, TRIPLES, 0);
+			fy.sub(fz).mul(200f).intoArray(lab, 3 * i + 2, TRIPLES, 0);
+		}
+		for (; i < to; i++) {
+			int p = rgb[i];
+			ColorSpaces.toLab((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, lab, 3 * i);
+		}
+	}
+
+	private static FloatVector f(FloatVector t) {
+		VectorMask<Float> cube = t.compare(VectorOperators.GT, ColorSpaces.EPSILON);
+		return t.mul(ColorSpaces.SLOPE).add(ColorSpaces.OFFSET).blend(t.lanewise(VectorOperators.CBRT), cube);
+	}
+
+	@Override
+	public void nearestRgb(int[] rgb, int from, int count, int[] reds, int[] greens, int[] blues, int[] out,
+			int outFrom) {
+		// LANES colors at a time against the whole palette, no per-color reduction
+		int k = 0;
+		for (int last = count - LANES; k <= last; k += LANES) {
+			IntVector p = IntVector.fromArray(INTS, rgb, from + k);
+			IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+			IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+			IntVector b = p.and(0xFF);
+			IntVector bestDistance = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+			IntVector best = IntVector.zero(INTS);
+			for (int i = 0; i < reds.length; i++) {
+				IntVector dr = r.sub(reds[i]), dg = g.sub(greens[i]), db = b.sub(blues[i]);
+				IntVector d = dr.mul(dr).add(dg.mul(dg)).add(db.mul(db));
+				// strictly closer only, so ties keep the lower index
+				VectorMask<Integer> closer = d.compare(VectorOperators.LT, bestDistance);
+				bestDistance = bestDistance.blend(d, closer);
+				best = best.blend(i, closer);
+			}
+			best.intoArray(out, outFrom + k);
+		}
+		for (; k < count; k++) {
+			int p = rgb[from + k];
+			out[outFrom + k] = ScalarKernels.nearest((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, reds, greens,
+					blues);
+		}
+	}
+
+	@Override
+	public void halve(int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride, int width,
+			int height) {
+		for (int y = 0; y < height; y++) {
+			int top = srcOffset + 2 * y * srcStride, bottom = top + srcStride, out = dstOffset + y * dstStride;
+			int x = 0;
+			for (int last = width - LANES; x <= last; x += LANES) {
+				IntVector sum = spread(IntVector.fromArray(INTS, src, top + 2 * x, PAIRS, 0))
+						.add(spread(IntVector.fromArray(INTS, src, top + 2 * x + 1, PAIRS, 0)))
+						.add(spread(IntVector.fromArray(INTS, src, bottom + 2 * x, PAIRS, 0)))
+						.add(spread(IntVector.fromArray(INTS, src, bottom + 2 * x + 1, PAIRS, 0)));
+				IntVector r = sum.lanewise(VectorOperators.LSHR, 20).and(0x3FF).add(2).lanewise(VectorOperators.LSHR, 2);
+				IntVector g = sum.lanewise(VectorOperators.LSHR, 10).and(0x3FF).add(2).lanewise(VectorOperators.LSHR, 2);
+				IntVector b = sum.and(0x3FF).add(2).lanewise(VectorOperators.LSHR, 2);
+				r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b).intoArray(dst,
+						out + x);
+			}
+			for (; x < width; x++) {
+				int sum = spread(src[top + 2 * x]) + spread(src[top + 2 * x + 1]) + spread(src[bottom + 2 * x])
+						+ spread(src[bottom + 2 * x + 1]);
+				dst[out + x] = average(sum);
+			}
+		}
+	}
+
+	private static IntVector spread(IntVector p) {
+		return p.lanewise(VectorOperators.LSHR, 16).and(0xFF).lanewise(VectorOperators.LSHL, 20)
+				.or(p.lanewise(VectorOperators.LSHR, 8).and(0xFF).lanewise(VectorOperators.LSHL, 10))
+				.or(p.and(0xFF));
+	}
+}
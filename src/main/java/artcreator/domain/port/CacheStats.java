@@ -0,0 +1,65 @@
+package artcreator.domain.port;
+
+/**
+ * Snapshot of the decoded-image cache's counters. Instances are immutable.
+ */
+public final class CacheStats {
+
+	private final long hits;
+	private final long diskHits;
+	private final long misses;
+	private final long evictions;
+	private final int entries;
+	private final long bytes;
+	private final long budgetBytes;
+
+	public CacheStats(long hits, long diskHits, long misses, long evictions, int entries, long bytes,
+			long budgetBytes) {
+		this.hits = hits;
+		this.diskHits = diskHits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.entries = entries;
+		this.bytes = bytes;
+		this.budgetBytes = budgetBytes;
+	}
+
+	/** Loads served from memory. */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/** Loads served from the on-disk cache. */
+	public long getDiskHits() {
+		return this.diskHits;
+	}
+
+	/** Loads that had to decode the file. */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/** Images dropped from memory to stay within the budget. */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	public int getEntries() {
+		return this.entries;
+	}
+
+	/** Heap bytes held by cached images. */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	public long getBudgetBytes() {
+		return this.budgetBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d diskHits=%d misses=%d evictions=%d entries=%d bytes=%d/%d", this.hits,
+				this.diskHits, this.misses, this.evictions, this.entries, this.bytes, this.budgetBytes);
+	}
+}
@@ -1,17 +1,159 @@
 package artcreator.domain.port;
 
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
 public interface Domain {
 
 	Object mkObject();
 
-	// Loads file from disk
+	// Loads file from disk; repeated loads of the same content come from a cache
 	Object loadImage(String path) throws Exception;
 
+	/**
+	 * Returns the counters of the decoded-image cache behind {@link #loadImage(String)}.
+	 * @return Hits, misses, evictions and memory use.
+	 */
+	CacheStats imageCacheStats();
+
+	/**
+	 * Decodes a reduced-resolution version of an image file without decoding
+	 * the full image into memory.
+	 * @param path The file path to the image.
+	 * @param maxDimension Upper bound for the preview's width and height.
+	 * @return The preview image object (the full image if it is small enough).
+	 * @throws Exception if the file cannot be read.
+	 */
+	Object loadPreview(String path, int maxDimension) throws Exception;
+
 	/**
 	 * Applies a transformation to the given image.
 	 * @param image The current image object (e.g. BufferedImage).
+	 * @param command The operation to perform.
+	 * @return The new, modified image object.
+	 */
+	Object transformImage(Object image, TransformCommand command);
+
+	/**
+	 * Applies a transformation given in the string format of
+	 * {@link TransformCommand#parse(String)}.
+	 * @param image The current image object (e.g. BufferedImage).
 	 * @param operation The operation to perform (e.g. "rotate_left", "rotate_right").
 	 * @return The new, modified image object.
 	 */
 	Object transformImage(Object image, String operation);
+
+	/**
+	 * Returns the transformation that leaves the given image unchanged. Further
+	 * operations can be composed onto it without touching any pixels.
+	 * @param image The source image object.
+	 * @return The identity transformation for the image's size.
+	 */
+	ImageTransform identityTransform(Object image);
+
+	/**
+	 * Materializes a composed transformation in a single pass.
+	 * @param image The source image the transformation was composed for.
+	 * @param transform The composed rotations, mirrors and crops.
+	 * @return The new image object (may share pixels with the source if only cropped).
+	 */
+	Object renderImage(Object image, ImageTransform transform);
+
+	/**
+	 * Returns a reduced-resolution copy of an image, e.g. for previews.
+	 * @param image The image object.
+	 * @param maxDimension Upper bound for the copy's width and height.
+	 * @return The scaled copy, or the image itself if it is small enough.
+	 */
+	Object scaleImage(Object image, int maxDimension);
+
+	/**
+	 * Maps every grid cell of the image to the closest palette color. Nothing
+	 * is reused from earlier calls, so the image may have been changed since.
+	 * @param image The (fully transformed) source image.
+	 * @param config A {@link TemplateConfig}, or null for the defaults.
+	 * @return The generated {@link Template}.
+	 */
+	Object generateTemplate(Object image, Object config);
+
+	/**
+	 * Like {@link #generateTemplate(Object, Object)}, but gives up as soon as
+	 * {@code cancelled} returns true. The check is polled once per row of cells
+	 * from the worker threads, so it must be cheap and thread-safe.
+	 * @param image The (fully transformed) source image.
+	 * @param config A {@link TemplateConfig}, or null for the defaults.
+	 * @param cancelled Polled while generating.
+	 * @return The generated {@link Template}.
+	 * @throws java.util.concurrent.CancellationException if cancelled before completion.
+	 */
+	Object generateTemplate(Object image, Object config, BooleanSupplier cancelled);
+
+	/**
+	 * Like {@link #generateTemplate(Object, Object, BooleanSupplier)}, but
+	 * reuses the results of earlier calls with the same {@code version} for
+	 * the same pixels: another grid size, another crop of the same source, or
+	 * another palette, matching or dithering. The version stands for the pixels
+	 * the image shares with its source (a subimage shares its parent's); the
+	 * caller must pass a new version (e.g. a new Object) once any of them
+	 * changed, or stale results are returned.
+	 * @param image The (fully transformed) source image.
+	 * @param version Identifies the current pixels, compared by equals; null to reuse nothing.
+	 * @param config A {@link TemplateConfig}, or null for the defaults.
+	 * @param cancelled Polled while generating.
+	 * @return The generated {@link Template}.
+	 * @throws java.util.concurrent.CancellationException if cancelled before completion.
+	 */
+	Object generateTemplate(Object image, Object version, Object config, BooleanSupplier cancelled);
+
+	/**
+	 * Writes a template to a file; the format follows the file extension:
+	 * ".png" (every cell as a solid square), ".svg" (vector pattern sheet with
+	 * color codes), ".pdf" (the pattern sheet tiled onto A4 pages plus a bill
+	 * of materials), ".csv" (bill of materials: cells per color) or ".tpl"
+	 * (the template itself, see {@link #loadTemplate(String)}). Output is
+	 * streamed; large templates never have to fit in memory as an image.
+	 * @param template A {@link Template}.
+	 * @param path The target file.
+	 * @param cellSize Edge length of one cell in pixels (PNG) or points (SVG, PDF); ignored for CSV.
+	 * @throws IOException if the file cannot be written.
+	 */
+	void exportTemplate(Object template, String path, int cellSize) throws IOException;
+
+	/**
+	 * Reads a template written as ".tpl" by {@link #exportTemplate}. The file
+	 * is memory-mapped; its cells are not copied onto the heap.
+	 * @param path The template file.
+	 * @return The {@link Template}.
+	 * @throws IOException if the file cannot be read or is not a template.
+	 */
+	Object loadTemplate(String path) throws IOException;
+
+	/**
+	 * Estimates the heap memory held by an image's pixels.
+	 * @param image The image object.
+	 * @return Size in bytes (0 for unknown objects).
+	 */
+	long imageSize(Object image);
+
+	/**
+	 * Moves an image's pixels off the heap into a temp file.
+	 * @param image The image object to spill.
+	 * @return A small handle that can be passed to {@link #restoreImage(Object)}.
+	 * @throws IOException if the image cannot be written.
+	 */
+	Object spillImage(Object image) throws IOException;
+
+	/**
+	 * Maps a spilled image back into memory.
+	 * @param spilled A handle returned by {@link #spillImage(Object)}.
+	 * @return A new image object with the original pixels.
+	 * @throws IOException if the spill file cannot be read.
+	 */
+	Object restoreImage(Object spilled) throws IOException;
+
+	/**
+	 * Releases the disk space held by a spilled image.
+	 * @param spilled A handle returned by {@link #spillImage(Object)}.
+	 */
+	void releaseImage(Object spilled);
 }
\ No newline at end of file
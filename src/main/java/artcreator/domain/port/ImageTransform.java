@@ -0,0 +1,177 @@
+package artcreator.domain.port;
+
+import java.util.Objects;
+
+/**
+ * A composed geometric transformation: a crop rectangle in source coordinates
+ * followed by one of the eight {@link Orientation}s.
+ *
+ * Any sequence of rotations, mirrors and crops collapses into one instance, so
+ * applying N operations costs a single pass over the pixels when the result is
+ * rendered. Instances are immutable.
+ */
+public final class ImageTransform {
+
+	private final int sourceWidth;
+	private final int sourceHeight;
+	private final Orientation orientation;
+	// crop rectangle in source coordinates
+	private final int cropX, cropY, cropWidth, cropHeight;
+
+	private ImageTransform(int sourceWidth, int sourceHeight, Orientation orientation, int cropX, int cropY,
+			int cropWidth, int cropHeight) {
+		this.sourceWidth = sourceWidth;
+		this.sourceHeight = sourceHeight;
+		this.orientation = orientation;
+		this.cropX = cropX;
+		this.cropY = cropY;
+		this.cropWidth = cropWidth;
+		this.cropHeight = cropHeight;
+	}
+
+	/** The transformation that leaves a source of the given size unchanged. */
+	public static ImageTransform identity(int sourceWidth, int sourceHeight) {
+		if (sourceWidth <= 0 || sourceHeight <= 0) {
+			throw new IllegalArgumentException("Invalid image size: " + sourceWidth + "x" + sourceHeight);
+		}
+		return new ImageTransform(sourceWidth, sourceHeight, Orientation.IDENTITY, 0, 0, sourceWidth, sourceHeight);
+	}
+
+	/**
+	 * Appends an operation in the string format understood by
+	 * {@link TransformCommand#parse(String)}, e.g. "rotate_left" or
+	 * "crop:x,y,w,h". Callers applying the same operation repeatedly should
+	 * parse it once and use {@link #then(TransformCommand)}.
+	 */
+	public ImageTransform then(String operation) {
+		return then(TransformCommand.parse(operation));
+	}
+
+	/** Appends a command. */
+	public ImageTransform then(TransformCommand command) {
+		return switch (command) {
+			case TransformCommand.Rotate rotate -> then(
+					rotate.direction() == TransformCommand.Direction.LEFT ? Orientation.ROTATE_LEFT
+							: Orientation.ROTATE_RIGHT);
+			case TransformCommand.Mirror mirror -> then(
+					mirror.axis() == TransformCommand.Axis.HORIZONTAL ? Orientation.MIRROR_HORIZONTAL
+							: Orientation.MIRROR_VERTICAL);
+			case TransformCommand.Crop crop -> crop(crop.x(), crop.y(), crop.width(), crop.height());
+			case TransformCommand.CropCenter center -> {
+				// center crop: take half width/height centered
+				int cw = Math.max(1, width() / 2);
+				int ch = Math.max(1, height() / 2);
+				yield crop(Math.max(0, (width() - cw) / 2), Math.max(0, (height() - ch) / 2), cw, ch);
+			}
+		};
+	}
+
+	/** Appends a rotation or mirror. */
+	public ImageTransform then(Orientation next) {
+		return new ImageTransform(this.sourceWidth, this.sourceHeight, this.orientation.then(next), this.cropX,
+				this.cropY, this.cropWidth, this.cropHeight);
+	}
+
+	/**
+	 * Appends a crop given in the coordinates of the current result. The
+	 * rectangle is clamped to the result bounds and is at least 1x1.
+	 */
+	public ImageTransform crop(int x, int y, int w, int h) {
+		int vw = width();
+		int vh = height();
+		// clamp
+		x = Math.max(0, Math.min(x, vw - 1));
+		y = Math.max(0, Math.min(y, vh - 1));
+		w = Math.max(1, Math.min(w, vw - x));
+		h = Math.max(1, Math.min(h, vh - y));
+
+		// map two opposite corners back into the cropped source frame
+		int x0 = frameX(x, y), y0 = frameY(x, y);
+		int x1 = frameX(x + w - 1, y + h - 1), y1 = frameY(x + w - 1, y + h - 1);
+		return new ImageTransform(this.sourceWidth, this.sourceHeight, this.orientation,
+				this.cropX + Math.min(x0, x1), this.cropY + Math.min(y0, y1), Math.abs(x1 - x0) + 1,
+				Math.abs(y1 - y0) + 1);
+	}
+
+	// result pixel -> pixel inside the crop rectangle
+	private int frameX(int x, int y) {
+		Orientation o = this.orientation;
+		return o.m00 * x + o.m01 * y + ((o.m00 < 0 || o.m01 < 0) ? this.cropWidth - 1 : 0);
+	}
+
+	private int frameY(int x, int y) {
+		Orientation o = this.orientation;
+		return o.m10 * x + o.m11 * y + ((o.m10 < 0 || o.m11 < 0) ? this.cropHeight - 1 : 0);
+	}
+
+	/** Width of the transformed result. */
+	public int width() {
+		return this.orientation.swapsAxes() ? this.cropHeight : this.cropWidth;
+	}
+
+	/** Height of the transformed result. */
+	public int height() {
+		return this.orientation.swapsAxes() ? this.cropWidth : this.cropHeight;
+	}
+
+	public boolean isCropped() {
+		return this.cropX != 0 || this.cropY != 0 || this.cropWidth != this.sourceWidth
+				|| this.cropHeight != this.sourceHeight;
+	}
+
+	public boolean isIdentity() {
+		return this.orientation == Orientation.IDENTITY && !isCropped();
+	}
+
+	public Orientation getOrientation() {
+		return this.orientation;
+	}
+
+	public int getSourceWidth() {
+		return this.sourceWidth;
+	}
+
+	public int getSourceHeight() {
+		return this.sourceHeight;
+	}
+
+	public int getCropX() {
+		return this.cropX;
+	}
+
+	public int getCropY() {
+		return this.cropY;
+	}
+
+	public int getCropWidth() {
+		return this.cropWidth;
+	}
+
+	public int getCropHeight() {
+		return this.cropHeight;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ImageTransform))
+			return false;
+		ImageTransform other = (ImageTransform) obj;
+		return this.sourceWidth == other.sourceWidth && this.sourceHeight == other.sourceHeight
+				&& this.orientation == other.orientation && this.cropX == other.cropX && this.cropY == other.cropY
+				&& this.cropWidth == other.cropWidth && this.cropHeight == other.cropHeight;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.sourceWidth, this.sourceHeight, this.orientation, this.cropX, this.cropY,
+				this.cropWidth, this.cropHeight);
+	}
+
+	@Override
+	public String toString() {
+		return "ImageTransform[" + this.orientation + ", crop=" + this.cropX + "," + this.cropY + ","
+				+ this.cropWidth + "," + this.cropHeight + " of " + this.sourceWidth + "x" + this.sourceHeight + "]";
+	}
+}
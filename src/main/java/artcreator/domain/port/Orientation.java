@@ -0,0 +1,66 @@
+package artcreator.domain.port;
+
+/**
+ * The eight rotations and mirrors of a rectangular image (the dihedral group
+ * D4).
+ *
+ * Each element is stored as the integer matrix that maps a pixel of the
+ * oriented view back to the source pixel it is copied from:
+ *
+ * <pre>
+ * sx = m00 * x + m01 * y (+ translation)
+ * sy = m10 * x + m11 * y (+ translation)
+ * </pre>
+ */
+public enum Orientation {
+
+	IDENTITY(1, 0, 0, 1),
+	ROTATE_RIGHT(0, 1, -1, 0),
+	ROTATE_180(-1, 0, 0, -1),
+	ROTATE_LEFT(0, -1, 1, 0),
+	MIRROR_HORIZONTAL(-1, 0, 0, 1),
+	MIRROR_VERTICAL(1, 0, 0, -1),
+	// mirror along the main diagonal
+	TRANSPOSE(0, 1, 1, 0),
+	// mirror along the anti-diagonal
+	TRANSVERSE(0, -1, -1, 0);
+
+	public final int m00, m01, m10, m11;
+
+	private Orientation(int m00, int m01, int m10, int m11) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m10 = m10;
+		this.m11 = m11;
+	}
+
+	/** True if width and height are exchanged. */
+	public boolean swapsAxes() {
+		return this.m00 == 0;
+	}
+
+	/**
+	 * Returns the orientation equivalent to applying this one first and
+	 * {@code next} afterwards.
+	 */
+	public Orientation then(Orientation next) {
+		// view2 -> view1 is next, view1 -> source is this
+		return of(this.m00 * next.m00 + this.m01 * next.m10, this.m00 * next.m01 + this.m01 * next.m11,
+				this.m10 * next.m00 + this.m11 * next.m10, this.m10 * next.m01 + this.m11 * next.m11);
+	}
+
+	/** Returns the orientation that undoes this one. */
+	public Orientation inverse() {
+		// orthogonal matrix: inverse == transpose
+		return of(this.m00, this.m10, this.m01, this.m11);
+	}
+
+	private static Orientation of(int m00, int m01, int m10, int m11) {
+		for (Orientation o : values()) {
+			if (o.m00 == m00 && o.m01 == m01 && o.m10 == m10 && o.m11 == m11) {
+				return o;
+			}
+		}
+		throw new IllegalStateException("Not a dihedral matrix: " + m00 + "," + m01 + "," + m10 + "," + m11);
+	}
+}
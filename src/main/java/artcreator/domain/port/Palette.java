@@ -0,0 +1,77 @@
+package artcreator.domain.port;
+
+import java.util.Arrays;
+
+/**
+ * An ordered set of material colors a template can be built from. Colors are
+ * opaque 0xRRGGBB values; the index of a color is what a {@link Template}
+ * stores per cell. Instances are immutable.
+ */
+public final class Palette {
+
+	/** A basic 16-color bead/mosaic palette. */
+	public static final Palette DEFAULT = new Palette(
+			new String[] { "Black", "White", "Light Grey", "Dark Grey", "Red", "Dark Red", "Orange", "Yellow",
+					"Light Green", "Dark Green", "Light Blue", "Dark Blue", "Purple", "Pink", "Brown", "Beige" },
+			new int[] { 0x000000, 0xFFFFFF, 0xB4B4B4, 0x5A5A5A, 0xD21E1E, 0x7D1414, 0xF08C1E, 0xF5DC32,
+					0x78C850, 0x1E6E32, 0x64AAE6, 0x1E3C96, 0x8246A0, 0xF0A0C8, 0x784628, 0xE6D2AA });
+
+	private final String[] names;
+	private final int[] colors;
+
+	public Palette(String[] names, int[] colors) {
+		if (names.length != colors.length) {
+			throw new IllegalArgumentException("Every palette color needs a name.");
+		}
+		if (colors.length == 0) {
+			throw new IllegalArgumentException("Palette must not be empty.");
+		}
+		this.names = names.clone();
+		this.colors = new int[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			this.colors[i] = colors[i] & 0xFFFFFF;
+		}
+	}
+
+	/** Creates a palette from RGB values, named by their hex code. */
+	public static Palette of(int... rgb) {
+		String[] names = new String[rgb.length];
+		for (int i = 0; i < rgb.length; i++) {
+			names[i] = String.format("#%06X", rgb[i] & 0xFFFFFF);
+		}
+		return new Palette(names, rgb);
+	}
+
+	public int size() {
+		return this.colors.length;
+	}
+
+	/** The 0xRRGGBB value of the color at {@code index}. */
+	public int getColor(int index) {
+		return this.colors[index];
+	}
+
+	public String getName(int index) {
+		return this.names[index];
+	}
+
+	/** A copy of all colors in palette order. */
+	public int[] getColors() {
+		return this.colors.clone();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof Palette))
+			return false;
+		Palette other = (Palette) obj;
+		return Arrays.equals(this.colors, other.colors) && Arrays.equals(this.names, other.names);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(this.colors) + Arrays.hashCode(this.names);
+	}
+}
@@ -0,0 +1,377 @@
+package artcreator.domain.port;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A generated art template: a grid of cells, each holding the index of a
+ * {@link Palette} color. Instances are immutable.
+ *
+ * Cells take one byte each for palettes of up to 256 colors and two bytes for
+ * larger ones (up to 65536). If the rows consist of long stretches of one
+ * color and storing them as runs needs less than half the space, they are
+ * run-length encoded instead; then {@link #getCell} is a binary search within
+ * the row rather than an array read. Cells per color are counted once on
+ * construction.
+ *
+ * {@link #writeTo} stores a template in a binary format that {@link #read}
+ * maps into memory instead of copying it: the cells stay in the file and
+ * are paged in by the operating system as they are read. Reading checks
+ * every cell once against the palette and the color counts. All values are
+ * big-endian, every section starts at a multiple of four:
+ *
+ * <pre>
+ * header   "ACTP", version 1, columns, rows, palette size,
+ *          encoding (0 dense, 1 runs), bytes per index, run count (ints)
+ * palette  colors, cells per color, then per name its length and UTF-8 bytes
+ * dense    one index per cell, row-major
+ * runs     first run of every row (rows + 1 ints), end column of every run
+ *          (ints), index of every run
+ * </pre>
+ */
+public final class Template {
+
+	private static final int MAGIC = 0x41435450; // "ACTP"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int DENSE = 0;
+	private static final int RUNS = 1;
+
+	private final int columns;
+	private final int rows;
+	private final Palette palette;
+	private final int[] counts;
+	// 1 or 2
+	private final int indexBytes;
+	// dense: row-major indices; runs: the index of every run
+	private final ByteBuffer indices;
+	// runs only: first run of every row plus the total, end column of every run
+	private final ByteBuffer rowRuns;
+	private final ByteBuffer runEnds;
+
+	public Template(int columns, int rows, Palette palette, int[] cells) {
+		if (columns <= 0 || rows <= 0 || cells.length != (long) columns * rows) {
+			throw new IllegalArgumentException("Cell count does not match grid " + columns + "x" + rows);
+		}
+		if (palette.size() > 1 << 16) {
+			throw new IllegalArgumentException("Palette too large for a template: " + palette.size());
+		}
+		this.columns = columns;
+		this.rows = rows;
+		this.palette = palette;
+		this.indexBytes = palette.size() <= 1 << 8 ? 1 : 2;
+		this.counts = new int[palette.size()];
+		int runs = 0;
+		for (int i = 0; i < cells.length; i++) {
+			int index = cells[i];
+			if (index < 0 || index >= palette.size()) {
+				throw new IllegalArgumentException("Cell " + i + " is not a palette index: " + index);
+			}
+			this.counts[index]++;
+			if (i % columns == 0 || cells[i - 1] != index) {
+				runs++;
+			}
+		}
+		long denseBytes = (long) cells.length * this.indexBytes;
+		long runBytes = 4L * (rows + 1) + (long) runs * (4 + this.indexBytes);
+		if (runBytes * 2 < denseBytes) {
+			this.indices = ByteBuffer.allocate(runs * this.indexBytes);
+			this.rowRuns = ByteBuffer.allocate(4 * (rows + 1));
+			this.runEnds = ByteBuffer.allocate(4 * runs);
+			int run = 0;
+			for (int r = 0; r < rows; r++) {
+				this.rowRuns.putInt(4 * r, run);
+				int at = r * columns;
+				for (int c = 0; c < columns; c++) {
+					if (c == columns - 1 || cells[at + c + 1] != cells[at + c]) {
+						putIndex(run, cells[at + c]);
+						this.runEnds.putInt(4 * run++, c + 1);
+					}
+				}
+			}
+			this.rowRuns.putInt(4 * rows, run);
+		} else {
+			if (denseBytes > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Template too large: " + columns + "x" + rows);
+			}
+			this.indices = ByteBuffer.allocate((int) denseBytes);
+			for (int i = 0; i < cells.length; i++) {
+				putIndex(i, cells[i]);
+			}
+			this.rowRuns = null;
+			this.runEnds = null;
+		}
+	}
+
+	private Template(int columns, int rows, Palette palette, int[] counts, int indexBytes, ByteBuffer indices,
+			ByteBuffer rowRuns, ByteBuffer runEnds) {
+		this.columns = columns;
+		this.rows = rows;
+		this.palette = palette;
+		this.counts = counts;
+		this.indexBytes = indexBytes;
+		this.indices = indices;
+		this.rowRuns = rowRuns;
+		this.runEnds = runEnds;
+	}
+
+	public int getColumns() {
+		return this.columns;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	public Palette getPalette() {
+		return this.palette;
+	}
+
+	/** Palette index of the cell at (column, row). */
+	public int getCell(int column, int row) {
+		checkCell(column, row);
+		if (this.rowRuns == null) {
+			return index(row * this.columns + column);
+		}
+		return index(run(column, row));
+	}
+
+	/** 0xRRGGBB color of the cell at (column, row). */
+	public int getColor(int column, int row) {
+		return this.palette.getColor(getCell(column, row));
+	}
+
+	/**
+	 * End (exclusive) of the run of equal cells in the row that contains
+	 * (column, row). Iterating a region run by run:
+	 *
+	 * <pre>
+	 * for (int c = c0; c &lt; c1; c = end) {
+	 * 	int index = template.getCell(c, row);
+	 * 	end = Math.min(c1, template.runEnd(c, row));
+	 * }
+	 * </pre>
+	 */
+	public int runEnd(int column, int row) {
+		checkCell(column, row);
+		if (this.rowRuns != null) {
+			return this.runEnds.getInt(4 * run(column, row));
+		}
+		int at = row * this.columns;
+		int index = index(at + column);
+		int end = column + 1;
+		while (end < this.columns && index(at + end) == index) {
+			end++;
+		}
+		return end;
+	}
+
+	/** Number of cells per palette color, in palette order. */
+	public int[] getColorCounts() {
+		return this.counts.clone();
+	}
+
+	/** True if rows are stored as runs of equal cells rather than cell by cell. */
+	public boolean isRunLengthEncoded() {
+		return this.rowRuns != null;
+	}
+
+	/** Bytes taken by the cells, whether on the heap or in a mapped file. */
+	public long getCellBytes() {
+		long bytes = this.indices.capacity();
+		if (this.rowRuns != null) {
+			bytes += this.rowRuns.capacity() + this.runEnds.capacity();
+		}
+		return bytes;
+	}
+
+	/** Writes the template in the format described above; the stream is not closed. */
+	public void writeTo(OutputStream out) throws IOException {
+		byte[][] names = new byte[this.palette.size()][];
+		int nameBytes = 0;
+		for (int i = 0; i < names.length; i++) {
+			names[i] = this.palette.getName(i).getBytes(StandardCharsets.UTF_8);
+			nameBytes += 4 + names[i].length;
+		}
+		int paletteBytes = align(8 * names.length + nameBytes);
+		ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + paletteBytes);
+		head.putInt(MAGIC).putInt(VERSION).putInt(this.columns).putInt(this.rows).putInt(names.length)
+				.put((byte) (this.rowRuns == null ? DENSE : RUNS)).put((byte) this.indexBytes).putShort((short) 0)
+				.putInt(this.rowRuns == null ? 0 : this.runEnds.capacity() / 4).putInt(0);
+		for (int i = 0; i < names.length; i++) {
+			head.putInt(this.palette.getColor(i));
+		}
+		for (int count : this.counts) {
+			head.putInt(count);
+		}
+		for (byte[] name : names) {
+			head.putInt(name.length).put(name);
+		}
+		WritableByteChannel channel = Channels.newChannel(out);
+		writeFully(channel, head.clear());
+		if (this.rowRuns != null) {
+			writeFully(channel, this.rowRuns.duplicate().clear());
+			writeFully(channel, this.runEnds.duplicate().clear());
+		}
+		writeFully(channel, this.indices.duplicate().clear());
+		// pad the last section, so files can be concatenated or appended to
+		writeFully(channel, ByteBuffer.allocate(align(this.indices.capacity()) - this.indices.capacity()));
+	}
+
+	/**
+	 * Maps a file written by {@link #writeTo} into memory. The palette is read
+	 * onto the heap, the cells stay in the file; the mapping is released when
+	 * the template is garbage collected.
+	 * @throws IOException if the file cannot be read or is not a template.
+	 */
+	public static Template read(Path file) throws IOException {
+		ByteBuffer map;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Template file too large: " + file);
+			}
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return parse(map);
+		} catch (RuntimeException e) {
+			throw new IOException("Not a valid template file: " + file, e);
+		}
+	}
+
+	private static Template parse(ByteBuffer map) throws IOException {
+		if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+			throw new IOException("Unknown template format.");
+		}
+		int columns = map.getInt(8), rows = map.getInt(12), size = map.getInt(16);
+		int encoding = map.get(20), indexBytes = map.get(21), runs = map.getInt(24);
+		if (columns <= 0 || rows <= 0 || size <= 0 || size > 1 << 16 || indexBytes != (size <= 1 << 8 ? 1 : 2)
+				|| (encoding != DENSE && encoding != RUNS)) {
+			throw new IOException("Corrupt template header.");
+		}
+		map.position(HEADER_BYTES);
+		int[] colors = new int[size];
+		int[] counts = new int[size];
+		String[] names = new String[size];
+		map.asIntBuffer().get(colors).get(counts);
+		map.position(HEADER_BYTES + 8 * size);
+		for (int i = 0; i < size; i++) {
+			byte[] name = new byte[map.getInt()];
+			map.get(name);
+			names[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		Palette palette = new Palette(names, colors);
+		int at = align(map.position());
+		Template template;
+		if (encoding == DENSE) {
+			long cells = (long) columns * rows * indexBytes;
+			if (cells > map.capacity() - at) {
+				throw new IOException("Template file is truncated.");
+			}
+			template = new Template(columns, rows, palette, counts, indexBytes, map.slice(at, (int) cells), null,
+					null);
+		} else {
+			long bytes = 4L * (rows + 1) + 4L * runs + (long) runs * indexBytes;
+			if (runs < rows || bytes > map.capacity() - at) {
+				throw new IOException("Template file is truncated.");
+			}
+			ByteBuffer rowRuns = map.slice(at, 4 * (rows + 1));
+			ByteBuffer runEnds = map.slice(at + 4 * (rows + 1), 4 * runs);
+			ByteBuffer indices = map.slice(at + 4 * (rows + 1) + 4 * runs, runs * indexBytes);
+			// a broken run table would make lookups fail far from here
+			if (rowRuns.getInt(0) != 0 || rowRuns.getInt(4 * rows) != runs) {
+				throw new IOException("Corrupt run table.");
+			}
+			for (int r = 0; r < rows; r++) {
+				int first = rowRuns.getInt(4 * r), last = rowRuns.getInt(4 * (r + 1)) - 1;
+				if (first > last || last >= runs) {
+					throw new IOException("Corrupt run table in row " + r + ".");
+				}
+				for (int run = first, start = 0; run <= last; run++) {
+					int end = runEnds.getInt(4 * run);
+					if (end <= start || end > columns || (run == last && end != columns)) {
+						throw new IOException("Corrupt run table in row " + r + ".");
+					}
+					start = end;
+				}
+			}
+			template = new Template(columns, rows, palette, counts, indexBytes, indices, rowRuns, runEnds);
+		}
+		template.verifyCells();
+		return template;
+	}
+
+	// every index within the palette and counted as the header says
+	private void verifyCells() throws IOException {
+		int size = this.palette.size();
+		int[] actual = new int[size];
+		int entries = this.indices.capacity() / this.indexBytes;
+		for (int i = 0; i < entries; i++) {
+			int index = index(i);
+			if (index >= size) {
+				throw new IOException("Cell index " + index + " outside the palette of " + size + " colors.");
+			}
+			if (this.rowRuns == null) {
+				actual[index]++;
+			} else {
+				int start = i == 0 || this.runEnds.getInt(4 * (i - 1)) == this.columns ? 0
+						: this.runEnds.getInt(4 * (i - 1));
+				actual[index] += this.runEnds.getInt(4 * i) - start;
+			}
+		}
+		if (!Arrays.equals(actual, this.counts)) {
+			throw new IOException("Color counts do not match the cells.");
+		}
+	}
+
+	private int index(int i) {
+		return this.indexBytes == 1 ? this.indices.get(i) & 0xFF : this.indices.getShort(2 * i) & 0xFFFF;
+	}
+
+	private void putIndex(int i, int index) {
+		if (this.indexBytes == 1) {
+			this.indices.put(i, (byte) index);
+		} else {
+			this.indices.putShort(2 * i, (short) index);
+		}
+	}
+
+	// the run containing the cell: the first one of the row ending after it
+	private int run(int column, int row) {
+		int low = this.rowRuns.getInt(4 * row), high = this.rowRuns.getInt(4 * (row + 1)) - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.runEnds.getInt(4 * mid) <= column) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void checkCell(int column, int row) {
+		if (column < 0 || column >= this.columns || row < 0 || row >= this.rows) {
+			throw new IndexOutOfBoundsException("Cell outside the " + this.columns + "x" + this.rows + " grid: "
+					+ column + "," + row);
+		}
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static int align(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+}
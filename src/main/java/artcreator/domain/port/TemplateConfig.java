@@ -0,0 +1,105 @@
+package artcreator.domain.port;
+
+/**
+ * Parameters for template generation: grid size, material palette, how cell
+ * colors are matched to it and whether the result is dithered. Instances are
+ * immutable.
+ */
+public final class TemplateConfig {
+
+	/** How a cell color is matched to the palette. */
+	public enum Matching {
+		/** Smallest squared distance in sRGB. */
+		RGB,
+		/** Exact perceptual match: smallest delta E (CIE76) in CIELAB. */
+		LAB,
+		/**
+		 * Perceptual match through a lookup table over quantized RGB. Faster for
+		 * large palettes; may pick a slightly worse color (bound is measured and
+		 * logged when the table is built).
+		 */
+		LAB_LUT
+	}
+
+	/** How the error between cell colors and matched palette colors is spread. */
+	public enum Dithering {
+		/** Every cell gets its closest palette color. */
+		NONE,
+		/** 8x8 Bayer threshold matrix; cells stay independent of each other. */
+		ORDERED,
+		/** Error diffusion with the Floyd-Steinberg kernel. */
+		FLOYD_STEINBERG,
+		/** Error diffusion with Atkinson's kernel (passes on 3/4 of the error). */
+		ATKINSON
+	}
+
+	public static final int DEFAULT_COLUMNS = 50;
+
+	private final int columns;
+	// 0 = derive from the image's aspect ratio
+	private final int rows;
+	private final Palette palette;
+	private final Matching matching;
+	private final Dithering dithering;
+
+	public TemplateConfig(int columns, int rows, Palette palette) {
+		this(columns, rows, palette, Matching.LAB);
+	}
+
+	public TemplateConfig(int columns, int rows, Palette palette, Matching matching) {
+		this(columns, rows, palette, matching, Dithering.NONE);
+	}
+
+	public TemplateConfig(int columns, int rows, Palette palette, Matching matching, Dithering dithering) {
+		if (columns <= 0 || rows < 0) {
+			throw new IllegalArgumentException("Invalid template grid: " + columns + "x" + rows);
+		}
+		if (palette == null) {
+			throw new IllegalArgumentException("Template needs a palette.");
+		}
+		this.columns = columns;
+		this.rows = rows;
+		this.palette = palette;
+		this.matching = matching == null ? Matching.LAB : matching;
+		this.dithering = dithering == null ? Dithering.NONE : dithering;
+	}
+
+	/** Default grid width, rows from the aspect ratio, default palette. */
+	public static TemplateConfig defaults() {
+		return new TemplateConfig(DEFAULT_COLUMNS, 0, Palette.DEFAULT);
+	}
+
+	public int getColumns() {
+		return this.columns;
+	}
+
+	/** Configured rows, 0 if they follow the image's aspect ratio. */
+	public int getRows() {
+		return this.rows;
+	}
+
+	/** Rows of the grid for an image of the given size. */
+	public int rowsFor(int imageWidth, int imageHeight) {
+		if (this.rows > 0) {
+			return this.rows;
+		}
+		return Math.max(1, (int) Math.round((double) this.columns * imageHeight / imageWidth));
+	}
+
+	public Palette getPalette() {
+		return this.palette;
+	}
+
+	public Matching getMatching() {
+		return this.matching;
+	}
+
+	public Dithering getDithering() {
+		return this.dithering;
+	}
+
+	/** Same grid and palette with another dithering mode. */
+	public TemplateConfig withDithering(Dithering dithering) {
+		return new TemplateConfig(this.columns, this.rows, this.palette, this.matching, dithering);
+	}
+}
@@ -0,0 +1,143 @@
+package artcreator.domain.port;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One geometric edit: a rotation, a mirror or a crop.
+ *
+ * Commands are parsed and validated once, when they are created, and then
+ * applied by a switch over the sealed type; nothing is parsed again per use.
+ * The string format of older callers ("rotate_left", "crop:x,y,w,h", ...)
+ * is still understood by {@link #parse(String)} and produced by
+ * {@code toString()}. Instances are immutable.
+ */
+public sealed interface TransformCommand
+		permits TransformCommand.Rotate, TransformCommand.Mirror, TransformCommand.Crop, TransformCommand.CropCenter {
+
+	enum Direction {
+		LEFT, RIGHT
+	}
+
+	enum Axis {
+		HORIZONTAL, VERTICAL
+	}
+
+	/** A quarter turn, counter-clockwise (left) or clockwise (right). */
+	record Rotate(Direction direction) implements TransformCommand {
+		public Rotate {
+			if (direction == null) {
+				throw new IllegalArgumentException("Rotation needs a direction.");
+			}
+		}
+
+		@Override
+		public String toString() {
+			return direction == Direction.LEFT ? "rotate_left" : "rotate_right";
+		}
+	}
+
+	/** Flips the image: horizontally swaps left and right, vertically top and bottom. */
+	record Mirror(Axis axis) implements TransformCommand {
+		public Mirror {
+			if (axis == null) {
+				throw new IllegalArgumentException("Mirror needs an axis.");
+			}
+		}
+
+		@Override
+		public String toString() {
+			return axis == Axis.HORIZONTAL ? "mirror_horizontal" : "mirror_vertical";
+		}
+	}
+
+	/**
+	 * Keeps a rectangle, given in the coordinates of the image it is applied
+	 * to; parts outside the image are clamped away.
+	 */
+	record Crop(int x, int y, int width, int height) implements TransformCommand {
+		public Crop {
+			if (x < 0 || y < 0 || width <= 0 || height <= 0) {
+				throw new IllegalArgumentException(
+						"Invalid crop rectangle: " + x + "," + y + "," + width + "," + height);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "crop:" + x + "," + y + "," + width + "," + height;
+		}
+	}
+
+	/** Keeps the centered half of the width and height. */
+	record CropCenter() implements TransformCommand {
+		@Override
+		public String toString() {
+			return "crop_center";
+		}
+	}
+
+	TransformCommand ROTATE_LEFT = new Rotate(Direction.LEFT);
+	TransformCommand ROTATE_RIGHT = new Rotate(Direction.RIGHT);
+	TransformCommand MIRROR_HORIZONTAL = new Mirror(Axis.HORIZONTAL);
+	TransformCommand MIRROR_VERTICAL = new Mirror(Axis.VERTICAL);
+	TransformCommand CROP_CENTER = new CropCenter();
+
+	/**
+	 * Parses one operation in the string format, e.g. "rotate_left",
+	 * "mirror_vertical", "crop_center" or "crop:x,y,w,h". Names are case
+	 * insensitive; "mirror" means "mirror_horizontal". As the string format
+	 * always allowed, a negative crop origin is clamped to 0 and a width or
+	 * height below 1 to 1.
+	 * @throws IllegalArgumentException if the operation is unknown or its parameters are invalid.
+	 */
+	static TransformCommand parse(String operation) {
+		String op = operation.strip().toLowerCase(Locale.ROOT);
+		switch (op) {
+			case "rotate_left":
+				return ROTATE_LEFT;
+			case "rotate_right":
+				return ROTATE_RIGHT;
+			case "mirror":
+			case "mirror_horizontal":
+				return MIRROR_HORIZONTAL;
+			case "mirror_vertical":
+				return MIRROR_VERTICAL;
+			case "crop_center":
+				return CROP_CENTER;
+			default:
+				if (op.startsWith("crop:")) {
+					String[] parts = op.substring("crop:".length()).split(",");
+					if (parts.length == 4) {
+						try {
+							return new Crop(Math.max(0, Integer.parseInt(parts[0].strip())),
+									Math.max(0, Integer.parseInt(parts[1].strip())),
+									Math.max(1, Integer.parseInt(parts[2].strip())),
+									Math.max(1, Integer.parseInt(parts[3].strip())));
+						} catch (NumberFormatException ex) {
+							throw new IllegalArgumentException("Invalid crop parameters: " + ex.getMessage(), ex);
+						}
+					}
+				}
+				throw new IllegalArgumentException("Unknown transformation: " + operation);
+		}
+	}
+
+	/**
+	 * Parses a ';'-separated sequence of operations; blank entries are skipped.
+	 * @throws IllegalArgumentException if any operation is invalid or there is none.
+	 */
+	static List<TransformCommand> parseAll(String recipe) {
+		List<TransformCommand> commands = new ArrayList<>();
+		for (String op : recipe.split(";")) {
+			if (!op.isBlank()) {
+				commands.add(parse(op));
+			}
+		}
+		if (commands.isEmpty()) {
+			throw new IllegalArgumentException("No transformation given.");
+		}
+		return List.copyOf(commands);
+	}
+}
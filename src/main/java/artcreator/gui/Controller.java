@@ -3,7 +3,8 @@ package artcreator.gui;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.util.concurrent.CompletableFuture;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -12,6 +13,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import artcreator.creator.port.Creator;
+import artcreator.domain.port.TransformCommand;
 import artcreator.statemachine.port.Observer;
 import artcreator.statemachine.port.State;
 import artcreator.statemachine.port.Subject;
@@ -22,14 +24,39 @@ public class Controller implements ActionListener, Observer {
 	private Creator myModel;
 	private Subject subject;
 
+	// Serial lane into the session: virtual threads for I/O, platform pool for pixels
+	private final ModelExecutor executor = new ModelExecutor();
+
 	public Controller(CreatorFrame view, Subject subject, Creator model) {
 		this.myView = view;
 		this.myModel = model;
 		this.subject = subject;
 		this.subject.attach(this);
+		// operations only compose; refreshView renders once per burst of clicks
+		this.myModel.setLazy(true);
+		// the likely next clicks are rendered at preview resolution ahead of time
+		this.myModel.setSpeculative(true);
 	}
 
 	private boolean croppingMode = false;
+	// true while a preview is shown and the full-resolution import is running
+	private boolean importing = false;
+
+	// previews are decoded with subsampling up to this size
+	private static final int PREVIEW_MAX_DIMENSION = 1024;
+	// a template taking longer than this is given up
+	private static final long TEMPLATE_TIMEOUT_SECONDS = 120;
+	// exported cells: pixels in a PNG, points (about 7 mm) in an SVG or PDF
+	private static final int EXPORT_CELL_SIZE = 20;
+
+	// the last generated template, for export (EDT only)
+	private Object lastTemplate;
+
+	// Results are shown in the order their operations were submitted, even if the
+	// callbacks of two operations race: each operation takes a ticket on the EDT and
+	// the view skips results older than the last one shown. EDT only.
+	private long issuedTicket;
+	private long shownTicket;
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
@@ -38,7 +65,7 @@ public class Controller implements ActionListener, Observer {
 		// If we're in cropping mode, only allow Apply/Cancel actions
 		if (croppingMode) {
 			if ("Apply Crop".equals(command)) {
-				String cropOp = myView.getSelectionCropOperation();
+				TransformCommand cropOp = myView.getSelectionCrop();
 				if (cropOp == null) {
 					JOptionPane.showMessageDialog(myView, "No selection made. Please select an area before applying.",
 							"No Selection", JOptionPane.INFORMATION_MESSAGE);
@@ -57,17 +84,24 @@ public class Controller implements ActionListener, Observer {
 			}
 		}
 
+		// The preview is not the image being edited; wait for the import
+		if (importing) {
+			JOptionPane.showMessageDialog(myView, "The image is still being loaded.", "Import In Progress",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
 		// Normal (non-cropping) interactions
 		if ("Import Image".equals(command)) {
 			handleImport();
 		} else if ("Rotate Left ↺".equals(command)) {
-			handleTransformation("rotate_left", false);
+			handleTransformation(TransformCommand.ROTATE_LEFT, false);
 		} else if ("Rotate Right ↻".equals(command)) {
-			handleTransformation("rotate_right", false);
+			handleTransformation(TransformCommand.ROTATE_RIGHT, false);
 		} else if ("Mirror H".equals(command)) {
-			handleTransformation("mirror_horizontal", false);
+			handleTransformation(TransformCommand.MIRROR_HORIZONTAL, false);
 		} else if ("Mirror V".equals(command)) {
-			handleTransformation("mirror_vertical", false);
+			handleTransformation(TransformCommand.MIRROR_VERTICAL, false);
 		} else if ("Crop".equals(command)) {
 			// Enter cropping mode: user can now click-and-drag, then Apply/Cancel
 			croppingMode = true;
@@ -75,36 +109,86 @@ public class Controller implements ActionListener, Observer {
 			return;
 		} else if ("Undo".equals(command)) {
 			handleUndo();
+		} else if ("Redo".equals(command)) {
+			handleRedo();
+		} else if ("Template".equals(command)) {
+			handleTemplate();
+		} else if ("Export".equals(command)) {
+			handleExport();
 		}
 	}
 
-	private void handleTransformation(String operation, boolean exitCropModeAfter) {
-		// Run logic asynchronously
-		CompletableFuture.supplyAsync(() -> {
-			try {
-				return myModel.applyTransformation(operation);
-			} catch (IllegalStateException ex) {
-				// If state is invalid (no image), this is caught here
-				throw ex;
-			}
-		}).thenAccept(modifiedImage -> {
-			// Update View
+	private void handleTransformation(TransformCommand operation, boolean exitCropModeAfter) {
+		long ticket = nextTicket();
+		// Run logic in the session's lane; the view is refreshed once the lane is idle
+		executor.pixels(() -> {
+			myModel.applyTransformation(operation);
+			return myModel.peekImage();
+		}).thenAccept(preview -> {
 			SwingUtilities.invokeLater(() -> {
-				myView.displayImage(modifiedImage);
+				showPreview(ticket, preview);
 				// clear any selection after applying the operation
 				myView.clearSelection();
 				if (exitCropModeAfter) {
 					exitCropMode();
 				}
 			});
-		}).exceptionally(ex -> {
-			SwingUtilities.invokeLater(() -> {
-				String msg = ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
-				JOptionPane.showMessageDialog(myView,
-						msg, "Error", JOptionPane.WARNING_MESSAGE);
-			});
+		}).exceptionally(ex -> showFailure(ex, "Error"));
+		refreshView();
+	}
+
+	// a speculatively rendered preview is shown at once; refreshView replaces it with the full image
+	private void showPreview(long ticket, Object preview) {
+		if (preview != null) {
+			show(ticket, preview, true);
+		}
+	}
+
+	private long nextTicket() {
+		return ++issuedTicket;
+	}
+
+	private void show(long ticket, Object image) {
+		show(ticket, image, false);
+	}
+
+	// shows the result of the operation holding the ticket unless a later one is already shown
+	private void show(long ticket, Object image, boolean preview) {
+		if (ticket < shownTicket) {
+			return;
+		}
+		shownTicket = ticket;
+		if (preview) {
+			myView.displayPreview(image);
+		} else {
+			myView.displayImage(image);
+		}
+	}
+
+	/**
+	 * Renders and shows the current image, unless more operations are queued:
+	 * rapid clicks only compose transformations and render once at the end.
+	 */
+	private void refreshView() {
+		long ticket = nextTicket();
+		executor.pixels(() -> executor.hasPending() ? null : myModel.currentImage()).thenAccept(image -> {
+			if (image != null) {
+				SwingUtilities.invokeLater(() -> show(ticket, image));
+			}
+		}).exceptionally(ex -> showFailure(ex, "Error"));
+	}
+
+	private Void showFailure(Throwable ex, String title) {
+		// superseded operations were dropped on purpose
+		if (ModelExecutor.isCancellation(ex)) {
 			return null;
+		}
+		SwingUtilities.invokeLater(() -> {
+			String msg = ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
+			JOptionPane.showMessageDialog(myView,
+					msg, title, JOptionPane.WARNING_MESSAGE);
 		});
+		return null;
 	}
 
 	private void exitCropMode() {
@@ -114,26 +198,72 @@ public class Controller implements ActionListener, Observer {
 	}
 
 	private void handleUndo() {
-		CompletableFuture.supplyAsync(() -> {
-			try {
-				return myModel.undoLastTransformation();
-			} catch (IllegalStateException ex) {
-				throw ex;
-			} catch (Exception ex) {
-				throw new RuntimeException(ex);
-			}
-		}).thenAccept(restored -> {
-			SwingUtilities.invokeLater(() -> {
-				myView.displayImage(restored);
-			});
-		}).exceptionally(ex -> {
-			SwingUtilities.invokeLater(() -> {
-				String msg = ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
-				JOptionPane.showMessageDialog(myView,
-						msg, "Undo Failed", JOptionPane.WARNING_MESSAGE);
-			});
-			return null;
-		});
+		long ticket = nextTicket();
+		executor.pixels(() -> {
+			myModel.undoLastTransformation();
+			return myModel.peekImage();
+		}).thenAccept(preview -> SwingUtilities.invokeLater(() -> showPreview(ticket, preview)))
+				.exceptionally(ex -> showFailure(ex, "Undo Failed"));
+		refreshView();
+	}
+
+	private void handleRedo() {
+		long ticket = nextTicket();
+		executor.pixels(() -> {
+			myModel.redoLastTransformation();
+			return myModel.peekImage();
+		}).thenAccept(preview -> SwingUtilities.invokeLater(() -> showPreview(ticket, preview)))
+				.exceptionally(ex -> showFailure(ex, "Redo Failed"));
+		refreshView();
+	}
+
+	private void handleTemplate() {
+		long ticket = nextTicket();
+		// default grid and palette until the view offers template settings
+		executor.pixels(() -> myModel.generateTemplate(null, TEMPLATE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				.thenAccept(template -> {
+					SwingUtilities.invokeLater(() -> {
+						lastTemplate = template;
+						show(ticket, template);
+					});
+				}).exceptionally(ex -> showFailure(ex, "Template Failed"));
+	}
+
+	private void handleExport() {
+		Object template = lastTemplate;
+		if (template == null) {
+			JOptionPane.showMessageDialog(myView, "Generate a template first.", "Nothing To Export",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setDialogTitle("Export Template");
+		FileNameExtensionFilter pdf = new FileNameExtensionFilter("PDF pattern sheet (*.pdf)", "pdf");
+		chooser.addChoosableFileFilter(pdf);
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("SVG pattern sheet (*.svg)", "svg"));
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("PNG image (*.png)", "png"));
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("Bill of materials (*.csv)", "csv"));
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("Template data (*.tpl)", "tpl"));
+		chooser.setAcceptAllFileFilterUsed(false);
+		chooser.setFileFilter(pdf);
+		chooser.setSelectedFile(new File("template.pdf"));
+		if (chooser.showSaveDialog(myView) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		String path = chooser.getSelectedFile().getAbsolutePath();
+		// the chosen filter supplies a missing or foreign extension
+		String extension = ((FileNameExtensionFilter) chooser.getFileFilter()).getExtensions()[0];
+		if (!path.toLowerCase(Locale.ROOT).endsWith("." + extension)) {
+			path += "." + extension;
+		}
+		String target = path;
+		// writing does not touch the session, so it runs outside the lane
+		executor.detachedIo(() -> {
+			myModel.exportTemplate(template, target, EXPORT_CELL_SIZE);
+			return target;
+		}).thenAccept(written -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(myView,
+				"Template saved to " + written, "Export", JOptionPane.INFORMATION_MESSAGE)))
+				.exceptionally(ex -> showFailure(ex, "Export Failed"));
 	}
 
 	private void handleImport() {
@@ -147,29 +277,50 @@ public class Controller implements ActionListener, Observer {
 			File selectedFile = chooser.getSelectedFile();
 			String path = selectedFile.getAbsolutePath();
 
-			// 2. Call Logic (Async to prevent freezing GUI during loading)
-			CompletableFuture.supplyAsync(() -> {
-				try {
-					// Call the interface defined in our Sequence Diagram
-					return myModel.importImage(path);
-				} catch (Exception ex) {
-					throw new RuntimeException(ex);
-				}
-			}).thenAccept(loadedImage -> {
-				// 3. Update View (Must be back on Swing Thread)
-				SwingUtilities.invokeLater(() -> {
-					myView.displayImage(loadedImage);
-				});
-			}).exceptionally(ex -> {
-				// Error Handling
-				SwingUtilities.invokeLater(() -> {
-					JOptionPane.showMessageDialog(myView,
-							"Error importing image: " + ex.getCause().getMessage(),
-							"Import Failed",
-							JOptionPane.ERROR_MESSAGE);
-				});
-				return null;
-			});
+			importing = true;
+			// a template still being generated is not waited for; queued work is superseded below
+			myModel.cancel();
+			long previewTicket = nextTicket();
+			long ticket = nextTicket();
+
+			// 2. Show a subsampled preview first; it only reads the file, not the session
+			executor.detachedIo(() -> myModel.previewImage(path, PREVIEW_MAX_DIMENSION))
+					.handle((preview, ex) -> {
+						// without a preview the import simply takes longer to show up
+						if (preview != null) {
+							SwingUtilities.invokeLater(() -> show(previewTicket, preview, true));
+						}
+						return path;
+					})
+					// 3. Call Logic on a virtual thread (after the preview, so the two decodes don't compete)
+					.thenCompose(p -> executor.io(() -> {
+						// Call the interface defined in our Sequence Diagram
+						return myModel.importImage(p);
+					})).thenAccept(loadedImage -> {
+						// 4. Update View (Must be back on Swing Thread)
+						SwingUtilities.invokeLater(() -> {
+							importing = false;
+							show(ticket, loadedImage);
+						});
+					}).exceptionally(ex -> {
+						if (ModelExecutor.isCancellation(ex)) {
+							// a newer import took over
+							return null;
+						}
+						// Error Handling: drop the preview, show whatever the model still holds
+						executor.pixels(() -> myModel.currentImage()).handle((image, failure) -> {
+							SwingUtilities.invokeLater(() -> {
+								importing = false;
+								show(ticket, image);
+								JOptionPane.showMessageDialog(myView,
+										"Error importing image: " + ex.getCause().getMessage(),
+										"Import Failed",
+										JOptionPane.ERROR_MESSAGE);
+							});
+							return null;
+						});
+						return null;
+					});
 		}
 	}
 
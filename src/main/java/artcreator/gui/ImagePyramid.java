@@ -0,0 +1,156 @@
+package artcreator.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Downscaled copies of an image, each half the size of the previous one
+ * (a mipmap). Any display size is then at most a factor of two away from a
+ * level, so a bilinear draw from that level looks as smooth as an area
+ * filter, at the cost of the output size instead of the source size.
+ *
+ * Building touches every source pixel once and belongs on a worker thread;
+ * the levels are read-only afterwards and may be shared.
+ */
+final class ImagePyramid {
+
+	// levels stop once both sides are at most this size
+	private static final int MIN_SIDE = 64;
+	// levels with more pixels than this are halved in parallel row bands
+	private static final int PARALLEL_PIXELS = 1 << 18;
+	// output rows per band; a band's source rows are converted to ARGB in one blit
+	private static final int BAND_ROWS = 32;
+
+	private final List<BufferedImage> levels;
+
+	private ImagePyramid(List<BufferedImage> levels) {
+		this.levels = levels;
+	}
+
+	/**
+	 * Builds the levels of the image.
+	 * @param cancelled Polled between levels; the build stops early and returns null once it is true.
+	 */
+	static ImagePyramid build(Image source, BooleanSupplier cancelled) {
+		List<BufferedImage> levels = new ArrayList<>();
+		BufferedImage level = toBuffered(source);
+		levels.add(level);
+		while ((level.getWidth() > MIN_SIDE || level.getHeight() > MIN_SIDE)
+				&& (level.getWidth() > 1 || level.getHeight() > 1)) {
+			if (cancelled.getAsBoolean()) {
+				return null;
+			}
+			level = halve(level);
+			levels.add(level);
+		}
+		return new ImagePyramid(levels);
+	}
+
+	int getWidth() {
+		return this.levels.get(0).getWidth();
+	}
+
+	int getHeight() {
+		return this.levels.get(0).getHeight();
+	}
+
+	int levelCount() {
+		return this.levels.size();
+	}
+
+	BufferedImage level(int index) {
+		return this.levels.get(index);
+	}
+
+	/** The smallest level that is still at least the given size, i.e. never upscaled when drawn. */
+	int levelFor(int width, int height) {
+		int index = 0;
+		while (index + 1 < this.levels.size() && this.levels.get(index + 1).getWidth() >= width
+				&& this.levels.get(index + 1).getHeight() >= height) {
+			index++;
+		}
+		return index;
+	}
+
+	// the original is level 0; only images that aren't buffered yet are copied
+	private static BufferedImage toBuffered(Image source) {
+		if (source instanceof BufferedImage image) {
+			return image;
+		}
+		int width = Math.max(1, source.getWidth(null));
+		int height = Math.max(1, source.getHeight(null));
+		BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = copy.createGraphics();
+		g.drawImage(source, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+
+	// 2x2 box filter; an odd last row or column is averaged with itself
+	private static BufferedImage halve(BufferedImage level) {
+		int sw = level.getWidth();
+		int sh = level.getHeight();
+		int w = Math.max(1, (sw + 1) / 2);
+		int h = Math.max(1, (sh + 1) / 2);
+		BufferedImage half = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		int[] dst = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+		// ARGB levels are read in place, anything else is converted band by band with Java2D's blit loops
+		int[] data = level.getType() == BufferedImage.TYPE_INT_ARGB && level.getRaster().getParent() == null
+				? ((DataBufferInt) level.getRaster().getDataBuffer()).getData()
+				: null;
+		int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream work = IntStream.range(0, bands);
+		if ((long) sw * sh > PARALLEL_PIXELS) {
+			work = work.parallel();
+		}
+		work.forEach(band -> {
+			int top = band * BAND_ROWS;
+			int bottom = Math.min(h, top + BAND_ROWS);
+			int srcTop = 2 * top;
+			int srcRows = Math.min(sh, 2 * bottom) - srcTop;
+			int[] src = data != null ? data : argbRows(level, srcTop, srcRows);
+			int origin = data != null ? 0 : srcTop;
+			for (int y = top; y < bottom; y++) {
+				int row0 = (2 * y - origin) * sw;
+				int row1 = (Math.min(2 * y + 1, sh - 1) - origin) * sw;
+				for (int x = 0; x < w; x++) {
+					int x0 = Math.min(2 * x, sw - 1);
+					int x1 = Math.min(2 * x + 1, sw - 1);
+					dst[y * w + x] = average(src[row0 + x0], src[row0 + x1], src[row1 + x0], src[row1 + x1]);
+				}
+			}
+		});
+		return half;
+	}
+
+	private static int[] argbRows(BufferedImage level, int top, int rows) {
+		BufferedImage band = new BufferedImage(level.getWidth(), rows, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = band.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(level, 0, -top, null);
+		g.dispose();
+		return ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+	}
+
+	// per channel, rounded; colour is weighted by alpha so transparent pixels don't bleed
+	private static int average(int p0, int p1, int p2, int p3) {
+		int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+		int alpha = a0 + a1 + a2 + a3;
+		if (alpha == 0) {
+			return 0;
+		}
+		int r = ((p0 >> 16 & 0xff) * a0 + (p1 >> 16 & 0xff) * a1 + (p2 >> 16 & 0xff) * a2 + (p3 >> 16 & 0xff) * a3
+				+ alpha / 2) / alpha;
+		int g = ((p0 >> 8 & 0xff) * a0 + (p1 >> 8 & 0xff) * a1 + (p2 >> 8 & 0xff) * a2 + (p3 >> 8 & 0xff) * a3
+				+ alpha / 2) / alpha;
+		int b = ((p0 & 0xff) * a0 + (p1 & 0xff) * a1 + (p2 & 0xff) * a2 + (p3 & 0xff) * a3 + alpha / 2) / alpha;
+		return (alpha + 2) / 4 << 24 | r << 16 | g << 8 | b;
+	}
+}
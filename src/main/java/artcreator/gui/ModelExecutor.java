@@ -0,0 +1,122 @@
+package artcreator.gui;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import artcreator.metrics.Metrics;
+import artcreator.metrics.Operation;
+
+/**
+ * Runs the Controller's calls into its Creator session.
+ *
+ * A session is not thread-safe, so every call goes through one serial lane:
+ * a task starts only after the previous one finished, in submission order.
+ * Blocking file I/O runs on virtual threads, pixel work on a platform pool
+ * sized to the cores, so a slow import never occupies a compute thread.
+ *
+ * Tasks can check {@link #hasPending()} to skip work a later task redoes
+ * anyway (e.g. rendering after every one of ten rapid rotations). A
+ * superseding task (an import) cancels everything queued before it that has
+ * not started yet; those futures complete with a {@link CancellationException}.
+ *
+ * The lane's depth and the time tasks wait in it are published as metrics
+ * ("gui.laneDepth", "gui.laneWait"); the pools behind it never queue more than
+ * the one running task.
+ */
+final class ModelExecutor {
+
+	private static final Operation LANE_WAIT = Metrics.global().operation("gui.laneWait");
+
+	private final ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+	private final ExecutorService pixels;
+
+	// guarded by this
+	private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+	private long epoch;
+	private int pending;
+
+	ModelExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	ModelExecutor(int pixelThreads) {
+		AtomicInteger count = new AtomicInteger();
+		this.pixels = Executors.newFixedThreadPool(pixelThreads, runnable -> {
+			Thread thread = new Thread(runnable, "creator-pixels-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Metrics.global().gauge("gui.laneDepth", this::pendingCount);
+	}
+
+	/** Runs blocking I/O (e.g. an import) in the lane on a virtual thread; cancels queued tasks. */
+	<T> CompletableFuture<T> io(Callable<T> task) {
+		return submit(task, this.io, true);
+	}
+
+	/** Runs pixel work (transform, undo, template) in the lane on the platform pool. */
+	<T> CompletableFuture<T> pixels(Callable<T> task) {
+		return submit(task, this.pixels, false);
+	}
+
+	/** Runs blocking I/O outside the lane; the task must not touch the session. */
+	<T> CompletableFuture<T> detachedIo(Callable<T> task) {
+		return CompletableFuture.supplyAsync(() -> call(task), this.io);
+	}
+
+	/** True if tasks are queued behind the calling one. */
+	synchronized boolean hasPending() {
+		return this.pending > 0;
+	}
+
+	/** Number of tasks queued in the lane, not counting the running one. */
+	synchronized int pendingCount() {
+		return this.pending;
+	}
+
+	private synchronized <T> CompletableFuture<T> submit(Callable<T> task, Executor executor, boolean supersede) {
+		if (supersede) {
+			this.epoch++;
+		}
+		long submitted = this.epoch;
+		long queued = System.nanoTime();
+		this.pending++;
+		// the lane continues after failures of earlier tasks
+		CompletableFuture<T> result = this.tail.handle((r, ex) -> null).thenApplyAsync(ignored -> {
+			LANE_WAIT.record(System.nanoTime() - queued, false);
+			if (!start(submitted)) {
+				throw new CancellationException("Superseded by a later operation.");
+			}
+			return call(task);
+		}, executor);
+		this.tail = result;
+		return result;
+	}
+
+	// leaves the queue; false if a superseding task was submitted meanwhile
+	private synchronized boolean start(long submitted) {
+		this.pending--;
+		return submitted == this.epoch;
+	}
+
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	/** True if the failure only means the task was superseded. */
+	static boolean isCancellation(Throwable ex) {
+		return ex instanceof CancellationException || ex.getCause() instanceof CancellationException;
+	}
+}
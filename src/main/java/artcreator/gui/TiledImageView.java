@@ -0,0 +1,469 @@
+package artcreator.gui;
+
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import artcreator.metrics.Metrics;
+import artcreator.metrics.Operation;
+
+/**
+ * Image view with zoom and pan that only paints what is visible.
+ *
+ * The image is shown at a zoom factor (initially fitted to 400 px height)
+ * and cut into 256 px screen tiles. Painting draws the cached tiles that
+ * intersect the clip; missing ones are drawn blocky straight from the image
+ * (output-bound, so cheap at any image size) and rendered properly on a
+ * worker pool from an {@link ImagePyramid} level, then cached with LRU
+ * eviction. Zooming never scales the whole image, so a 100 MP image zooms
+ * and pans like a small one.
+ *
+ * Ctrl + wheel zooms around the mouse pointer, dragging with the middle or
+ * right button pans, dragging with the left button selects a region.
+ */
+final class TiledImageView extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int TILE = 256;
+	// 256 tiles of 256x256 ARGB, 64 MB
+	private static final int MAX_TILES = 256;
+	// the default zoom fits the image to this height
+	private static final int FIT_HEIGHT = 400;
+	// one wheel notch zooms by a quarter octave
+	private static final double ZOOM_STEP = Math.pow(2, 0.25);
+	private static final double MAX_ZOOM = 16;
+	// from this magnification on, pixels are shown as blocks instead of being smoothed
+	private static final double PIXELATED_ZOOM = 2;
+	private static final Operation RENDER_TILE = Metrics.global().operation("gui.renderTile");
+
+	/** A tile of the image at a zoom factor; column and row count in screen tiles. */
+	private record TileKey(double zoom, int column, int row) {
+	}
+
+	private final transient ExecutorService renderer;
+	// tiles waiting for a renderer thread, for the metrics
+	private final transient AtomicInteger queuedTiles = new AtomicInteger();
+
+	private transient Image source;
+	// null until built; tiles are rendered from it
+	private transient ImagePyramid pyramid;
+	private transient SwingWorker<ImagePyramid, Void> pyramidBuilder;
+	private int imgW, imgH; // original image size
+	private int dispW, dispH; // displayed size at the current zoom
+	private double zoom;
+
+	// tile state, EDT only; generation invalidates renders of an earlier image or zoom
+	private volatile long generation;
+	private final transient Map<TileKey, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+			return size() > MAX_TILES;
+		}
+	};
+	private final transient Set<TileKey> pending = new HashSet<>();
+
+	// selection in displayed coordinates
+	private int sx = -1, sy = -1, ex = -1, ey = -1;
+	// panning: mouse position on screen and view position when the drag started
+	private Point panStart;
+	private Point panOrigin;
+
+	TiledImageView() {
+		setOpaque(true);
+		AtomicInteger count = new AtomicInteger();
+		this.renderer = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+				runnable -> {
+					Thread thread = new Thread(runnable, "creator-tiles-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		Metrics.global().gauge("gui.tileQueue", this.queuedTiles::get);
+		MouseAdapter ma = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				if (source == null)
+					return;
+				if (!SwingUtilities.isLeftMouseButton(e)) {
+					startPan(e);
+					return;
+				}
+				sx = clamp(e.getX(), 0, dispW - 1);
+				sy = clamp(e.getY(), 0, dispH - 1);
+				ex = sx;
+				ey = sy;
+				repaint();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (source == null)
+					return;
+				if (panStart != null) {
+					pan(e);
+					return;
+				}
+				if (sx < 0)
+					return;
+				ex = clamp(e.getX(), 0, dispW - 1);
+				ey = clamp(e.getY(), 0, dispH - 1);
+				repaint();
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				if (panStart != null) {
+					endPan();
+					return;
+				}
+				if (source == null || sx < 0)
+					return;
+				ex = clamp(e.getX(), 0, dispW - 1);
+				ey = clamp(e.getY(), 0, dispH - 1);
+				repaint();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (source != null && (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+					setZoom(zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+				} else if (getParent() != null) {
+					// plain wheel scrolls the enclosing scroll pane as usual
+					getParent().dispatchEvent(SwingUtilities.convertMouseEvent(TiledImageView.this, e, getParent()));
+				}
+			}
+		};
+		addMouseListener(ma);
+		addMouseMotionListener(ma);
+		addMouseWheelListener(ma);
+	}
+
+	private static int clamp(int v, int a, int b) {
+		return Math.max(a, Math.min(b, v));
+	}
+
+	/**
+	 * Shows the image. If it has the aspect ratio of the one shown, it takes
+	 * over its displayed size and scroll position (a preview replaced by the
+	 * full render, a square image rotated); otherwise it is fitted to the
+	 * default height. It appears at once (blocky until its tiles are rendered);
+	 * the pyramid is built on a worker thread.
+	 */
+	void setImage(Image img) {
+		ImagePyramid reusable = img == this.source ? this.pyramid : null;
+		cancelPyramid();
+		if (reusable == null) {
+			this.tiles.clear();
+		}
+		int width = Math.max(1, img.getWidth(null));
+		int height = Math.max(1, img.getHeight(null));
+		// the zoom showing the new image at the displayed size, if its height comes out within a pixel
+		double kept = this.source == null ? 0 : this.zoom * this.imgW / width;
+		boolean sameAspect = kept > 0 && Math.abs(height * kept - this.dispH) <= 1;
+		this.source = img;
+		this.pyramid = reusable;
+		this.imgW = width;
+		this.imgH = height;
+		this.zoom = 0;
+		setZoom(sameAspect ? kept : fitZoom(), null);
+		if (reusable == null) {
+			buildPyramid(img);
+		}
+		// reset selection
+		clearSelection();
+	}
+
+	void clearImage() {
+		cancelPyramid();
+		this.source = null;
+		this.pyramid = null;
+		this.imgW = this.imgH = this.dispW = this.dispH = 0;
+		this.tiles.clear();
+		invalidateTiles();
+		setPreferredSize(new Dimension(0, 0));
+		clearSelection();
+		revalidate();
+	}
+
+	void clearSelection() {
+		this.sx = this.sy = this.ex = this.ey = -1;
+		repaint();
+	}
+
+	/**
+	 * Changes the zoom factor, keeping the image point under the anchor (in
+	 * this component's coordinates) in place, or the view position if null.
+	 */
+	void setZoom(double newZoom, Point anchor) {
+		if (this.source == null) {
+			return;
+		}
+		double fit = fitZoom();
+		newZoom = Math.max(fit / 4, Math.min(Math.max(MAX_ZOOM, fit), newZoom));
+		if (newZoom == this.zoom) {
+			return;
+		}
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+		Point anchorInViewport = anchor == null || viewport == null ? null
+				: SwingUtilities.convertPoint(this, anchor, viewport);
+		int oldW = this.dispW, oldH = this.dispH;
+
+		this.zoom = newZoom;
+		this.dispW = Math.max(1, (int) Math.round(this.imgW * newZoom));
+		this.dispH = Math.max(1, (int) Math.round(this.imgH * newZoom));
+		// keep the selection on the same image pixels
+		if (this.sx >= 0 && oldW > 0 && oldH > 0) {
+			this.sx = clamp((int) Math.round(this.sx * (double) this.dispW / oldW), 0, this.dispW - 1);
+			this.ex = clamp((int) Math.round(this.ex * (double) this.dispW / oldW), 0, this.dispW - 1);
+			this.sy = clamp((int) Math.round(this.sy * (double) this.dispH / oldH), 0, this.dispH - 1);
+			this.ey = clamp((int) Math.round(this.ey * (double) this.dispH / oldH), 0, this.dispH - 1);
+		}
+		invalidateTiles();
+		setPreferredSize(new Dimension(this.dispW, this.dispH));
+		revalidate();
+
+		if (anchorInViewport != null && oldW > 0 && oldH > 0) {
+			// lay out now, so the new position of the anchor is known
+			viewport.getParent().validate();
+			Point moved = SwingUtilities.convertPoint(this, (int) Math.round(anchor.x * (double) this.dispW / oldW),
+					(int) Math.round(anchor.y * (double) this.dispH / oldH), viewport.getView());
+			Dimension view = viewport.getViewSize();
+			Dimension extent = viewport.getExtentSize();
+			viewport.setViewPosition(new Point(clamp(moved.x - anchorInViewport.x, 0, Math.max(0, view.width - extent.width)),
+					clamp(moved.y - anchorInViewport.y, 0, Math.max(0, view.height - extent.height))));
+		}
+		repaint();
+	}
+
+	private double fitZoom() {
+		return (double) FIT_HEIGHT / this.imgH;
+	}
+
+	private void startPan(MouseEvent e) {
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+		if (viewport == null) {
+			return;
+		}
+		this.panStart = e.getLocationOnScreen();
+		this.panOrigin = viewport.getViewPosition();
+		setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+	}
+
+	private void pan(MouseEvent e) {
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+		Point now = e.getLocationOnScreen();
+		Dimension view = viewport.getViewSize();
+		Dimension extent = viewport.getExtentSize();
+		viewport.setViewPosition(new Point(
+				clamp(this.panOrigin.x - (now.x - this.panStart.x), 0, Math.max(0, view.width - extent.width)),
+				clamp(this.panOrigin.y - (now.y - this.panStart.y), 0, Math.max(0, view.height - extent.height))));
+	}
+
+	private void endPan() {
+		this.panStart = null;
+		this.panOrigin = null;
+		setCursor(Cursor.getDefaultCursor());
+	}
+
+	// --- pyramid and tiles
+
+	private void buildPyramid(Image img) {
+		this.pyramidBuilder = new SwingWorker<>() {
+			@Override
+			protected ImagePyramid doInBackground() {
+				return ImagePyramid.build(img, this::isCancelled);
+			}
+
+			@Override
+			protected void done() {
+				// a newer image may have been set meanwhile
+				if (isCancelled() || pyramidBuilder != this) {
+					return;
+				}
+				pyramidBuilder = null;
+				try {
+					pyramid = get();
+					repaint();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					// keep the blocky rendering
+					Logger.getGlobal().log(Level.WARNING, "Could not render preview", e.getCause());
+				}
+			}
+		};
+		this.pyramidBuilder.execute();
+	}
+
+	private void cancelPyramid() {
+		if (this.pyramidBuilder != null) {
+			this.pyramidBuilder.cancel(false);
+			this.pyramidBuilder = null;
+		}
+	}
+
+	// drops renders in flight; cached tiles of other zoom factors stay until evicted, so zooming back is free
+	private void invalidateTiles() {
+		this.generation++;
+		this.pending.clear();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g.create();
+		g2.setColor(getBackground());
+		Rectangle clip = g2.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		g2.fill(clip);
+		Rectangle visible = clip.intersection(new Rectangle(0, 0, this.dispW, this.dispH));
+		if (this.source != null && !visible.isEmpty()) {
+			for (int row = visible.y / TILE; row <= (visible.y + visible.height - 1) / TILE; row++) {
+				for (int column = visible.x / TILE; column <= (visible.x + visible.width - 1) / TILE; column++) {
+					paintTile(g2, new TileKey(this.zoom, column, row), visible);
+				}
+			}
+		}
+		if (sx >= 0 && ex >= 0) {
+			int x = Math.min(sx, ex);
+			int y = Math.min(sy, ey);
+			int w = Math.abs(ex - sx);
+			int h = Math.abs(ey - sy);
+			g2.setColor(new Color(0, 0, 0, 80));
+			g2.fillRect(x, y, w, h);
+			g2.setColor(Color.YELLOW);
+			g2.drawRect(x, y, w, h);
+		}
+		g2.dispose();
+	}
+
+	private void paintTile(Graphics2D g2, TileKey key, Rectangle visible) {
+		BufferedImage tile = this.tiles.get(key);
+		if (tile != null) {
+			g2.drawImage(tile, key.column() * TILE, key.row() * TILE, null);
+			return;
+		}
+		// stand-in until the tile is rendered: nearest neighbour reads one pixel per screen pixel
+		Rectangle area = tileBounds(key.column(), key.row(), this.dispW, this.dispH).intersection(visible);
+		Image from = this.pyramid != null ? this.pyramid.level(this.pyramid.levelFor(this.dispW, this.dispH))
+				: this.source;
+		if (from.getWidth(null) <= 0 || from.getHeight(null) <= 0) {
+			// not loaded yet; paint is called again once it is
+			from.getWidth(this);
+			return;
+		}
+		Graphics2D t = (Graphics2D) g2.create();
+		t.clip(area);
+		t.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		t.scale((double) this.dispW / from.getWidth(null), (double) this.dispH / from.getHeight(null));
+		t.drawImage(from, 0, 0, this);
+		t.dispose();
+		requestTile(key);
+	}
+
+	private void requestTile(TileKey key) {
+		if (this.pyramid == null || !this.pending.add(key)) {
+			return;
+		}
+		ImagePyramid from = this.pyramid;
+		long requested = this.generation;
+		int width = this.dispW, height = this.dispH;
+		this.queuedTiles.incrementAndGet();
+		this.renderer.execute(() -> {
+			this.queuedTiles.decrementAndGet();
+			// zoomed or replaced before the task started: the tile is no longer wanted
+			if (this.generation != requested) {
+				return;
+			}
+			BufferedImage tile;
+			try (Operation.Sample sample = RENDER_TILE.start()) {
+				tile = sample.done(renderTile(from, key, width, height));
+			}
+			SwingUtilities.invokeLater(() -> {
+				if (this.generation == requested) {
+					this.pending.remove(key);
+					this.tiles.put(key, tile);
+					repaint(key.column() * TILE, key.row() * TILE, tile.getWidth(), tile.getHeight());
+				}
+			});
+		});
+	}
+
+	// draws the tile's part of the image from the pyramid level just above the display size
+	private static BufferedImage renderTile(ImagePyramid pyramid, TileKey key, int width, int height) {
+		Rectangle bounds = tileBounds(key.column(), key.row(), width, height);
+		BufferedImage level = pyramid.level(pyramid.levelFor(width, height));
+		BufferedImage tile = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = tile.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				key.zoom() >= PIXELATED_ZOOM ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+						: RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.translate(-bounds.x, -bounds.y);
+		g.scale((double) width / level.getWidth(), (double) height / level.getHeight());
+		g.drawImage(level, 0, 0, null);
+		g.dispose();
+		return tile;
+	}
+
+	private static Rectangle tileBounds(int column, int row, int width, int height) {
+		int x = column * TILE;
+		int y = row * TILE;
+		return new Rectangle(x, y, Math.min(TILE, width - x), Math.min(TILE, height - y));
+	}
+
+	/**
+	 * Returns selection mapped to original image coordinates as int[]{x,y,w,h}
+	 * or null if no valid selection.
+	 */
+	int[] getSelectionInOriginalCoords() {
+		if (source == null || sx < 0)
+			return null;
+		int x = Math.min(sx, ex);
+		int y = Math.min(sy, ey);
+		int w = Math.abs(ex - sx);
+		int h = Math.abs(ey - sy);
+		if (w <= 0 || h <= 0)
+			return null;
+		double scaleX = (double) imgW / (double) dispW;
+		double scaleY = (double) imgH / (double) dispH;
+		int ox = (int) Math.round(x * scaleX);
+		int oy = (int) Math.round(y * scaleY);
+		int ow = (int) Math.round(w * scaleX);
+		int oh = (int) Math.round(h * scaleY);
+		// clamp
+		ox = Math.max(0, Math.min(ox, imgW - 1));
+		oy = Math.max(0, Math.min(oy, imgH - 1));
+		ow = Math.max(1, Math.min(ow, imgW - ox));
+		oh = Math.max(1, Math.min(oh, imgH - oy));
+		return new int[] { ox, oy, ow, oh };
+	}
+}
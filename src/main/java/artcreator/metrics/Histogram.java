@@ -0,0 +1,129 @@
+package artcreator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with bounded relative
+ * error, in the style of HdrHistogram.
+ *
+ * Values are counted in log-linear buckets: every power of two is split into
+ * 32 equal sub-buckets, so a reported percentile is at most about 3% above
+ * the true value, whatever the magnitude. Values up to 2^43 (about 2.4 hours
+ * in nanoseconds, 8 TB in bytes) are tracked; larger ones count into the top
+ * bucket, whose percentiles report the maximum. Recording is one atomic increment plus two adders and never
+ * allocates; the whole histogram takes about 10 KB.
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 43;
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Records one value; negative values count as 0. */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		this.counts.incrementAndGet(indexOf(v));
+		this.count.increment();
+		this.sum.add(v);
+		long seen = this.max.get();
+		while (v > seen && !this.max.compareAndSet(seen, v)) {
+			seen = this.max.get();
+		}
+	}
+
+	/** Copies the counters; percentiles of the copy are consistent with each other. */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = this.counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, this.sum.sum(), this.max.get());
+	}
+
+	// values below 32 are counted exactly, above that 32 buckets per power of two
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	// the largest value counted into the bucket
+	static long highestValueOf(int index) {
+		int shift = index / SUB_BUCKETS - 1;
+		if (shift < 0) {
+			return index;
+		}
+		long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/** Counters of a histogram at one point in time. Instances are immutable. */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getMean() {
+			return this.count == 0 ? 0 : this.sum / this.count;
+		}
+
+		public long getMax() {
+			return this.max;
+		}
+
+		public long getSum() {
+			return this.sum;
+		}
+
+		/**
+		 * The value below which the given share of recorded values lies.
+		 * @param quantile Between 0 and 1, e.g. 0.99.
+		 * @return The upper edge of the bucket holding that value (never above the maximum), 0 if empty.
+		 */
+		public long getValueAt(double quantile) {
+			if (quantile < 0 || quantile > 1) {
+				throw new IllegalArgumentException("Quantile out of range: " + quantile);
+			}
+			if (this.count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * this.count));
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= rank) {
+					return i == this.counts.length - 1 ? this.max : Math.min(highestValueOf(i), this.max);
+				}
+			}
+			return this.max;
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package artcreator.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Process-wide registry of operation timings, gauges and counters.
+ *
+ * <ul>
+ * <li>{@link Operation}s: latency and allocation histograms per call, e.g.
+ * every method of the Creator and Domain facades.</li>
+ * <li>Gauges: values read when reported, e.g. memory in use or queue depths.</li>
+ * <li>Counters: events, e.g. state transitions.</li>
+ * </ul>
+ *
+ * Everything is published through JMX (domain {@code artcreator}) and can be
+ * written to a text file periodically. System properties:
+ * {@value #ENABLED_PROPERTY} (default true) turns measuring off,
+ * {@value #FILE_PROPERTY} names the dump file and
+ * {@value #INTERVAL_PROPERTY} sets the dump period (default 60).
+ *
+ * Measuring a call costs two clock reads, two reads of the thread's
+ * allocation counter and a few atomic increments, well under a microsecond;
+ * nothing is allocated beyond the sample itself.
+ */
+public final class Metrics {
+
+	public static final String ENABLED_PROPERTY = "artcreator.metrics.enabled";
+	public static final String FILE_PROPERTY = "artcreator.metrics.file";
+	public static final String INTERVAL_PROPERTY = "artcreator.metrics.intervalSeconds";
+
+	private static final String JMX_DOMAIN = "artcreator";
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+	private static final Metrics GLOBAL = create();
+
+	private final boolean enabled;
+	// sorted, so reports list related names together
+	private final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+	private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+	private final MBeanServer server;
+	private ScheduledExecutorService dumper;
+	private Thread finalDump;
+
+	private Metrics(boolean enabled, MBeanServer server) {
+		this.enabled = enabled;
+		this.server = server;
+		register(new ValuesMBean(), "type=Metrics");
+	}
+
+	/** The registry of this process. */
+	public static Metrics global() {
+		return GLOBAL;
+	}
+
+	private static Metrics create() {
+		boolean enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+		Metrics metrics = new Metrics(enabled, enabled ? ManagementFactory.getPlatformMBeanServer() : null);
+		String file = System.getProperty(FILE_PROPERTY);
+		if (enabled && file != null) {
+			metrics.startDumping(Path.of(file), Duration.ofSeconds(Long.getLong(INTERVAL_PROPERTY, 60)));
+		}
+		return metrics;
+	}
+
+	/** Returns the operation of that name, creating and publishing it on first use. */
+	public Operation operation(String name) {
+		return this.operations.computeIfAbsent(name, n -> {
+			Operation operation = new Operation(n, this.enabled);
+			register(operation, "type=Operation,name=" + n);
+			return operation;
+		});
+	}
+
+	/** Returns the counter of that name, creating it on first use. */
+	public LongAdder counter(String name) {
+		return this.counters.computeIfAbsent(name, n -> new LongAdder());
+	}
+
+	/** Publishes a value that is read whenever metrics are reported; replaces a gauge of the same name. */
+	public void gauge(String name, LongSupplier value) {
+		this.gauges.put(name, value);
+	}
+
+	/** Removes a gauge, e.g. when the object it reads is discarded. */
+	public void removeGauge(String name) {
+		this.gauges.remove(name);
+	}
+
+	/** All metrics as text, one line each. */
+	public String report() {
+		StringBuilder out = new StringBuilder();
+		out.append("# artcreator metrics ").append(Instant.now()).append('\n');
+		out.append(String.format("%-32s %8s %6s %10s %10s %10s %10s %10s %10s %12s %11s%n", "operation", "count",
+				"errors", "mean", "p50", "p90", "p99", "p99.9", "max", "alloc/call", "last size"));
+		for (Operation operation : this.operations.values()) {
+			Histogram.Snapshot latency = operation.latency();
+			if (latency.getCount() == 0) {
+				continue;
+			}
+			out.append(String.format("%-32s %8d %6d %10s %10s %10s %10s %10s %10s %12s %11s%n", operation.getName(),
+					latency.getCount(), operation.getErrors(), millis(latency.getMean()),
+					millis(latency.getValueAt(0.5)), millis(latency.getValueAt(0.9)),
+					millis(latency.getValueAt(0.99)), millis(latency.getValueAt(0.999)), millis(latency.getMax()),
+					bytes(operation.allocated().getMean()),
+					operation.getLastWidth() == 0 ? "-" : operation.getLastWidth() + "x" + operation.getLastHeight()));
+		}
+		for (Map.Entry<String, LongSupplier> gauge : this.gauges.entrySet()) {
+			out.append("gauge   ").append(gauge.getKey()).append(" = ").append(read(gauge.getValue())).append('\n');
+		}
+		for (Map.Entry<String, LongAdder> counter : this.counters.entrySet()) {
+			out.append("counter ").append(counter.getKey()).append(" = ").append(counter.getValue().sum())
+					.append('\n');
+		}
+		return out.toString();
+	}
+
+	/** Writes {@link #report()} to the file, replacing it atomically. */
+	public void dump(Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, "metrics", ".tmp");
+		try {
+			Files.writeString(tmp, report(), StandardCharsets.UTF_8);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Dumps to the file every period and once more when the process exits. */
+	public synchronized void startDumping(Path file, Duration period) {
+		if (period.isZero() || period.isNegative()) {
+			throw new IllegalArgumentException("Dump period must be positive: " + period);
+		}
+		stopDumping();
+		this.dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Runnable dump = () -> {
+			try {
+				dump(file);
+			} catch (IOException | RuntimeException e) {
+				Logger.getGlobal().log(Level.WARNING, "Could not write metrics to " + file, e);
+			}
+		};
+		this.dumper.scheduleAtFixedRate(dump, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+		this.finalDump = new Thread(dump, "metrics-final-dump");
+		Runtime.getRuntime().addShutdownHook(this.finalDump);
+	}
+
+	/** Stops the periodic dump and the one at exit. */
+	public synchronized void stopDumping() {
+		if (this.dumper != null) {
+			this.dumper.shutdownNow();
+			this.dumper = null;
+		}
+		if (this.finalDump != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(this.finalDump);
+			} catch (IllegalStateException e) {
+				// the process is exiting, the hook runs anyway
+			}
+			this.finalDump = null;
+		}
+	}
+
+	/** Bytes allocated by the current thread so far, or -1 if the JVM cannot tell. */
+	static long allocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+					&& threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		} catch (UnsupportedOperationException | SecurityException e) {
+			Logger.getGlobal().log(Level.INFO, "Allocation metrics unavailable", e);
+		}
+		return null;
+	}
+
+	private void register(Object mbean, String properties) {
+		if (this.server == null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+			if (this.server.isRegistered(name)) {
+				this.server.unregisterMBean(name);
+			}
+			this.server.registerMBean(mbean, name);
+		} catch (JMException e) {
+			Logger.getGlobal().log(Level.WARNING, "Could not publish metrics " + properties, e);
+		}
+	}
+
+	private static String read(LongSupplier gauge) {
+		try {
+			return Long.toString(gauge.getAsLong());
+		} catch (RuntimeException e) {
+			return "n/a";
+		}
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3fms", nanos / 1e6);
+	}
+
+	private static String bytes(long bytes) {
+		return bytes < 1024 ? bytes + "B" : bytes < 1 << 20 ? bytes / 1024 + "KB" : bytes / (1 << 20) + "MB";
+	}
+
+	/** Gauges and counters as read-only JMX attributes of type long. */
+	private final class ValuesMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			LongSupplier gauge = gauges.get(attribute);
+			if (gauge != null) {
+				return gauge.getAsLong();
+			}
+			LongAdder counter = counters.get(attribute);
+			if (counter != null) {
+				return counter.sum();
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException | RuntimeException e) {
+					// left out, as the DynamicMBean contract allows
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[gauges.size() + counters.size()];
+			int i = 0;
+			for (String gauge : gauges.keySet()) {
+				attributes[i++] = new MBeanAttributeInfo(gauge, "long", "gauge", true, false, false);
+			}
+			for (String counter : counters.keySet()) {
+				if (i < attributes.length) {
+					attributes[i++] = new MBeanAttributeInfo(counter, "long", "counter", true, false, false);
+				}
+			}
+			return new MBeanInfo(Metrics.class.getName(), "Gauges and counters",
+					java.util.Arrays.copyOf(attributes, i), null, null, null);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package artcreator.metrics;
+
+import java.awt.image.RenderedImage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, allocation and result-size statistics of one operation, e.g.
+ * {@code creator.importImage}. Obtained from {@link Metrics#operation(String)};
+ * calls are measured with a {@link Sample}:
+ *
+ * <pre>
+ * try (Operation.Sample sample = IMPORT.start()) {
+ * 	return sample.done(impl.importImage(path));
+ * }
+ * </pre>
+ *
+ * A sample closed without {@code done} counts as an error. Thread-safe.
+ */
+public final class Operation implements OperationMXBean {
+
+	private final String name;
+	private final boolean enabled;
+	private final Histogram latency = new Histogram();
+	private final Histogram allocated = new Histogram();
+	private final LongAdder errors = new LongAdder();
+	// size of the last returned image: width << 32 | height
+	private volatile long lastSize;
+
+	Operation(String name, boolean enabled) {
+		this.name = name;
+		this.enabled = enabled;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	/** Starts measuring one call on the current thread. */
+	public Sample start() {
+		return this.enabled ? new Sample(this) : Sample.DISABLED;
+	}
+
+	/** Records a call measured elsewhere, e.g. one that spans threads. */
+	public void record(long nanos, boolean failed) {
+		this.latency.record(nanos);
+		if (failed) {
+			this.errors.increment();
+		}
+	}
+
+	public Histogram.Snapshot latency() {
+		return this.latency.snapshot();
+	}
+
+	public Histogram.Snapshot allocated() {
+		return this.allocated.snapshot();
+	}
+
+	private void record(long nanos, long allocatedBytes, boolean failed, Object result) {
+		record(nanos, failed);
+		if (allocatedBytes >= 0) {
+			this.allocated.record(allocatedBytes);
+		}
+		if (result instanceof RenderedImage image) {
+			this.lastSize = (long) image.getWidth() << 32 | image.getHeight();
+		}
+	}
+
+	// --- OperationMXBean
+
+	@Override
+	public long getCount() {
+		return this.latency.snapshot().getCount();
+	}
+
+	@Override
+	public long getErrors() {
+		return this.errors.sum();
+	}
+
+	@Override
+	public long getMeanNanos() {
+		return this.latency.snapshot().getMean();
+	}
+
+	@Override
+	public long getP50Nanos() {
+		return this.latency.snapshot().getValueAt(0.5);
+	}
+
+	@Override
+	public long getP90Nanos() {
+		return this.latency.snapshot().getValueAt(0.9);
+	}
+
+	@Override
+	public long getP99Nanos() {
+		return this.latency.snapshot().getValueAt(0.99);
+	}
+
+	@Override
+	public long getP999Nanos() {
+		return this.latency.snapshot().getValueAt(0.999);
+	}
+
+	@Override
+	public long getMaxNanos() {
+		return this.latency.snapshot().getMax();
+	}
+
+	@Override
+	public long getMeanAllocatedBytes() {
+		return this.allocated.snapshot().getMean();
+	}
+
+	@Override
+	public long getP99AllocatedBytes() {
+		return this.allocated.snapshot().getValueAt(0.99);
+	}
+
+	@Override
+	public long getTotalAllocatedBytes() {
+		return this.allocated.snapshot().getSum();
+	}
+
+	@Override
+	public int getLastWidth() {
+		return (int) (this.lastSize >>> 32);
+	}
+
+	@Override
+	public int getLastHeight() {
+		return (int) this.lastSize;
+	}
+
+	/** One measured call; close it when the call returns or throws. */
+	public static final class Sample implements AutoCloseable {
+
+		static final Sample DISABLED = new Sample(null);
+
+		private final Operation operation;
+		private final long start;
+		private final long startAllocated;
+		private boolean done;
+		private Object result;
+
+		private Sample(Operation operation) {
+			this.operation = operation;
+			this.startAllocated = operation == null ? 0 : Metrics.allocatedBytes();
+			this.start = operation == null ? 0 : System.nanoTime();
+		}
+
+		/** Marks the call successful and notes the size of the result if it is an image. */
+		public <T> T done(T result) {
+			if (this.operation != null) {
+				this.done = true;
+				this.result = result;
+			}
+			return result;
+		}
+
+		/** Marks a call without a result successful. */
+		public void done() {
+			if (this.operation != null) {
+				this.done = true;
+			}
+		}
+
+		@Override
+		public void close() {
+			if (this.operation == null) {
+				return;
+			}
+			long nanos = System.nanoTime() - this.start;
+			long allocatedBytes = this.startAllocated < 0 ? -1 : Metrics.allocatedBytes() - this.startAllocated;
+			this.operation.record(nanos, allocatedBytes, !this.done, this.result);
+		}
+	}
+}
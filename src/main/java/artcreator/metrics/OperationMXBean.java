@@ -0,0 +1,36 @@
+package artcreator.metrics;
+
+/**
+ * JMX view of one {@link Operation}. Times are in nanoseconds, allocations
+ * in bytes allocated by the calling thread.
+ */
+public interface OperationMXBean {
+
+	long getCount();
+
+	long getErrors();
+
+	long getMeanNanos();
+
+	long getP50Nanos();
+
+	long getP90Nanos();
+
+	long getP99Nanos();
+
+	long getP999Nanos();
+
+	long getMaxNanos();
+
+	long getMeanAllocatedBytes();
+
+	long getP99AllocatedBytes();
+
+	long getTotalAllocatedBytes();
+
+	/** Width of the image the last call returned, 0 if it returned none. */
+	int getLastWidth();
+
+	/** Height of the image the last call returned, 0 if it returned none. */
+	int getLastHeight();
+}
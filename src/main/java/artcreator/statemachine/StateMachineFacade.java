@@ -1,5 +1,7 @@
 package artcreator.statemachine;
 
+import java.util.concurrent.Executor;
+
 import artcreator.statemachine.impl.StateMachineImpl;
 import artcreator.statemachine.port.Observer;
 import artcreator.statemachine.port.State;
@@ -8,52 +10,54 @@ import artcreator.statemachine.port.Subject;
 
 public class StateMachineFacade implements StateMachineFactory, StateMachine, Subject{
 	
-	private StateMachineImpl stateMachine;
+	// created eagerly: the delegating methods below take no lock
+	private final StateMachineImpl stateMachine = new StateMachineImpl();
 
 	
 	@Override
-	public synchronized StateMachine stateMachine() {
-		if (this.stateMachine == null)
-			this.stateMachine = new StateMachineImpl();
+	public StateMachine stateMachine() {
 		return this;
 	}
 
 	@Override
-	public synchronized Subject subject() {
-		if (this.stateMachine == null)
-			this.stateMachine = new StateMachineImpl();
+	public Subject subject() {
 		return this;
 	}
 	
 	
 	
 	@Override
-	public synchronized void attach(Observer obs) {
+	public StateMachineFactory session() {
+		return new StateMachineFacade();
+	}
+
+	@Override
+	public void attach(Observer obs) {
 		this.stateMachine.attach(obs);
-		
 	}
 
 	@Override
-	public synchronized void detach(Observer obs) {
+	public void attach(Observer obs, Executor executor) {
+		this.stateMachine.attach(obs, executor);
+	}
+
+	@Override
+	public void detach(Observer obs) {
 		this.stateMachine.detach(obs);
 	}
 
 	@Override
-	public synchronized State getState() {
+	public State getState() {
 		return this.stateMachine.getState();
 	}
 
 	@Override
-	public synchronized boolean setState(State state) {
+	public boolean setState(State state) {
 		return this.stateMachine.setState(state);
 	}
 
-
-
-	
-
-	
-	
-	
-
+	@Override
+	public boolean compareAndSet(State expected, State next) {
+		return this.stateMachine.compareAndSet(expected, next);
+	}
 }
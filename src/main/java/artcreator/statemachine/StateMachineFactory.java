@@ -11,5 +11,11 @@ public interface StateMachineFactory {
 
 	Subject subject();
 
+	/**
+	 * Creates an independent state machine with its own state and observers,
+	 * e.g. for one Creator session. Sessions share no locks.
+	 */
+	StateMachineFactory session();
+
 
 }
@@ -1,27 +1,57 @@
 package artcreator.statemachine.impl;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import artcreator.metrics.Metrics;
 
 import artcreator.statemachine.port.Observer;
 import artcreator.statemachine.port.State;
 import artcreator.statemachine.port.State.S;
 
+/**
+ * State machine without locks: the current state is an atomic reference,
+ * observers live in a copy-on-write list and are notified outside of any
+ * lock. Observers attached with an executor get the state delivered there,
+ * coalesced: a slow observer only sees the latest state, never a backlog,
+ * and the last state it sees is the current one.
+ * Transitions into each state are counted in the metrics ("state.Name"),
+ * summed over all state machines.
+ */
 public class StateMachineImpl {
 
-	
-	private List<Observer> observers = new ArrayList<>();
+	// one counter per state, looked up once
+	private static final Map<State, LongAdder> TRANSITIONS = new ConcurrentHashMap<>();
+
+	private final List<Subscription> observers = new CopyOnWriteArrayList<>();
 
-	private State currentState = S.INITIAL_STATE;
+	private final AtomicReference<State> currentState = new AtomicReference<>(S.INITIAL_STATE);
 
 	public void attach(Observer obs) {
-		if (this.observers.add(obs))
-			obs.update(this.currentState);
+		subscribe(new Subscription(obs, null));
+	}
+
+	public void attach(Observer obs, Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Asynchronous delivery needs an executor.");
+		}
+		subscribe(new Subscription(obs, executor));
 	}
 
 	public void detach(Observer obs) {
-		if (this.observers.remove(obs))
-			obs.update(this.currentState);
+		for (Subscription subscription : this.observers) {
+			if (subscription.observer == obs && this.observers.remove(subscription)) {
+				subscription.offer(getState());
+				return;
+			}
+		}
 	}
 
 	public void detachAll() {
@@ -29,17 +59,80 @@ public class StateMachineImpl {
 	}
 
 	public State getState() {
-		return this.currentState;
+		return this.currentState.get();
 	}
 
 	public boolean setState(State state) {
 		if (state == null)
 			return false;
-		this.currentState = state;
-		this.observers.forEach(obs -> obs.update(this.currentState));
+		this.currentState.set(state);
+		count(state);
+		notifyObservers(state);
 		return true;
 	}
 
+	/**
+	 * Moves to {@code next} only if the current state is {@code expected}
+	 * (compared by identity); observers are notified on success.
+	 */
+	public boolean compareAndSet(State expected, State next) {
+		if (next == null || !this.currentState.compareAndSet(expected, next))
+			return false;
+		count(next);
+		notifyObservers(next);
+		return true;
+	}
+
+	private static void count(State state) {
+		TRANSITIONS.computeIfAbsent(state, s -> Metrics.global().counter("state." + s)).increment();
+	}
 
-	
+	private void subscribe(Subscription subscription) {
+		this.observers.add(subscription);
+		subscription.offer(getState());
+	}
+
+	private void notifyObservers(State state) {
+		for (Subscription subscription : this.observers) {
+			subscription.offer(state);
+		}
+	}
+
+	/** An observer plus its delivery mode. */
+	private final class Subscription {
+		final Observer observer;
+		// null: deliver inline on the calling thread
+		final Executor executor;
+		// a change not delivered yet, and the drain-loop counter (async only)
+		final AtomicBoolean pending = new AtomicBoolean();
+		final AtomicInteger wip = new AtomicInteger();
+
+		Subscription(Observer observer, Executor executor) {
+			this.observer = observer;
+			this.executor = executor;
+		}
+
+		void offer(State state) {
+			if (this.executor == null) {
+				this.observer.update(state);
+				return;
+			}
+			// only a signal: the drain reads the state itself, so a late offer of an
+			// older state (two racing transitions) cannot be the last one delivered
+			this.pending.set(true);
+			if (this.wip.getAndIncrement() == 0) {
+				this.executor.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			int missed = 1;
+			do {
+				if (this.pending.getAndSet(false)) {
+					this.observer.update(getState());
+				}
+				missed = this.wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
 }
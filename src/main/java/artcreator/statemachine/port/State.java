@@ -16,7 +16,9 @@ public interface State {
 		// Concrete States
 		NoImage(CreateTemplate),
 		ImageLoaded(CreateTemplate),
-		Processing(CreateTemplate),
+		// Sub-states of Processing (declared first: constants can only refer back)
+		GeneratingTemplate(CreateTemplate),
+		Processing(CreateTemplate, GeneratingTemplate),
 		TemplateReady(CreateTemplate);
 
 		private List<State> subStates;
@@ -24,16 +26,53 @@ public interface State {
 		// Initial state is NoImage
 		public static final S INITIAL_STATE = NoImage;
 
+		// The hierarchy is compiled once: bit i is set if this.isSuperStateOf(values()[i])
+		private long superOfMask;
+		// States of other types reachable through the hierarchy (normally none)
+		private List<State> foreignSubStates;
+
+		static {
+			if (values().length > Long.SIZE) {
+				throw new IllegalStateException("State hierarchy exceeds " + Long.SIZE + " states.");
+			}
+			for (S s : values()) {
+				List<State> foreign = new ArrayList<>();
+				s.superOfMask = s.closure(foreign);
+				s.foreignSubStates = foreign;
+			}
+		}
+
 		private S(State... subS) {
 			this.subStates = new ArrayList<>(Arrays.asList(subS));
 		}
 
+		// walks the declared sub-states; only runs during class initialization
+		private long closure(List<State> foreign) {
+			long mask = 1L << ordinal();
+			for (State state : this.subStates) {
+				if (state instanceof S) {
+					mask |= ((S) state).closure(foreign);
+				} else if (state != null) {
+					foreign.add(state);
+				}
+			}
+			return mask;
+		}
+
 		@Override
 		public boolean isSuperStateOf(State s) {
-			boolean result = (s == null) || (this == s);
-			for (State state : this.subStates)
-				result |= state.isSuperStateOf(s);
-			return result;
+			if (s == null) {
+				return true;
+			}
+			if (s instanceof S) {
+				return (this.superOfMask & (1L << ((S) s).ordinal())) != 0;
+			}
+			for (State state : this.foreignSubStates) {
+				if (state.isSuperStateOf(s)) {
+					return true;
+				}
+			}
+			return false;
 		}
 
 		@Override
@@ -41,4 +80,4 @@ public interface State {
 			return (state != null) && state.isSuperStateOf(this);
 		}
 	}
-}
\ No newline at end of file
+}
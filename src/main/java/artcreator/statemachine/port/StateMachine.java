@@ -4,6 +4,10 @@ public interface StateMachine {
 
 	State getState();
 	boolean setState(State state);
-	
-		
+
+	/**
+	 * Atomically moves to {@code next} if the current state is {@code expected}.
+	 * @return false if the state was something else; nothing changes then.
+	 */
+	boolean compareAndSet(State expected, State next);
 }
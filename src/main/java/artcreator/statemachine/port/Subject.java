@@ -1,9 +1,19 @@
 package artcreator.statemachine.port;
 
+import java.util.concurrent.Executor;
+
 public interface Subject {
 
 	void attach(Observer obs);
 
+	/**
+	 * Attaches an observer that is notified on the given executor (e.g.
+	 * {@code SwingUtilities::invokeLater}) instead of the thread changing the
+	 * state. Notifications are coalesced: if the observer falls behind, it
+	 * only receives the latest state.
+	 */
+	void attach(Observer obs, Executor executor);
+
 	void detach(Observer obs);
 	
 	State getState();
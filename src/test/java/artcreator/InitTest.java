@@ -27,8 +27,8 @@ class InitTest implements Observer {
 		Assertions.assertEquals(stateMachine, subject);
 		subject.attach(this);
 
-		Assertions.assertTrue(stateMachine.getState().isSubStateOf(S.CREATE_TEMPLATE));
-		Assertions.assertEquals(S.CREATE_TEMPLATE, this.s);
+		Assertions.assertEquals(S.INITIAL_STATE, stateMachine.getState());
+		Assertions.assertEquals(S.INITIAL_STATE, this.s);
 		subject.detach(this);
 
 		Domain domain = DomainFactory.FACTORY.domain();
@@ -37,8 +37,7 @@ class InitTest implements Observer {
 		Creator creator = CreatorFactory.FACTORY.creator();
 		Assertions.assertNotNull(creator);
 
-		creator.sysop("test");
-		Assertions.assertTrue(true);
+		Assertions.assertNull(creator.currentImage());
 
 	}
 
@@ -0,0 +1,304 @@
+package artcreator.creator.impl;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.DomainFactory;
+import artcreator.domain.port.Domain;
+import artcreator.domain.port.ImageTransform;
+import artcreator.domain.port.TransformCommand;
+
+class TransformationHistoryTest {
+
+	private static final int W = 64, H = 48;
+
+	private final Domain domain = DomainFactory.FACTORY.domain();
+
+	@Test
+	void randomEditsMatchEagerRendering() throws IOException {
+		for (long seed = 0; seed < 5; seed++) {
+			TransformationHistory history = new TransformationHistory(this.domain, Long.MAX_VALUE);
+			new Session(history, new Random(seed)).run(400, true);
+		}
+	}
+
+	@Test
+	void randomEditsMatchEagerRenderingWhileSpilling() throws IOException {
+		for (long seed = 10; seed < 15; seed++) {
+			Random rnd = new Random(seed);
+			TransformationHistory history = new TransformationHistory(this.domain, Long.MAX_VALUE);
+			Session session = new Session(history, rnd);
+			// room for one of the imported images besides the steps themselves
+			session.pixelBudget = this.domain.imageSize(image(rnd));
+			session.run(400, true);
+		}
+	}
+
+	@Test
+	void randomEditsMatchEagerRenderingWhileDroppingOldSteps() throws IOException {
+		int dropped = 0;
+		for (long seed = 20; seed < 25; seed++) {
+			Random rnd = new Random(seed);
+			TransformationHistory history = new TransformationHistory(this.domain,
+					this.domain.imageSize(image(rnd)) + 4096);
+			history.setSpilling(false);
+			dropped += new Session(history, rnd).run(400, false);
+		}
+		Assertions.assertTrue(dropped > 0);
+	}
+
+	@Test
+	void applyAfterUndoDropsTheRedoBranch() {
+		Random rnd = new Random(43);
+		BufferedImage a = image(rnd), b = image(rnd);
+		TransformationHistory history = new TransformationHistory(this.domain, Long.MAX_VALUE);
+		ImageTransform identity = this.domain.identityTransform(a);
+		ImageTransform rotated = identity.then(TransformCommand.ROTATE_LEFT);
+		history.record(a, identity, a, rotated);
+		history.record(a, rotated, b, this.domain.identityTransform(b));
+		long withB = history.memoryInUse();
+		history.undo();
+		history.undo();
+		Assertions.assertTrue(history.canRedo());
+		history.record(a, identity, a, identity.then(TransformCommand.MIRROR_VERTICAL));
+		Assertions.assertFalse(history.canRedo());
+		Assertions.assertNull(history.redo());
+		Assertions.assertEquals(1, history.size());
+		// the snapshot of b went with the redo branch
+		Assertions.assertTrue(history.memoryInUse() < withB);
+		history.clear();
+		Assertions.assertEquals(0, history.memoryInUse());
+	}
+
+	@Test
+	void spilledSnapshotsComeBack() throws IOException {
+		Random rnd = new Random(41);
+		long image = this.domain.imageSize(image(rnd));
+		TransformationHistory history = new TransformationHistory(this.domain, 2 * image + 4096);
+		List<BufferedImage> imports = imports(history, 10, rnd, false);
+		// the whole history is kept, mostly on disk
+		Assertions.assertEquals(9, history.size());
+		Assertions.assertTrue(history.memoryInUse() <= 2 * image + 4096);
+
+		for (int i = imports.size() - 2; i >= 0; i--) {
+			assertSamePixels(imports.get(i), history.resolve(history.undo().beforeImage));
+			Assertions.assertTrue(history.memoryInUse() <= 2 * image + 4096);
+		}
+		for (int i = 1; i < imports.size(); i++) {
+			assertSamePixels(imports.get(i), history.resolve(history.redo().afterImage));
+		}
+		history.clear();
+		Assertions.assertEquals(0, history.memoryInUse());
+	}
+
+	@Test
+	void unspillableSnapshotStaysOnTheHeap() throws IOException {
+		Random rnd = new Random(42);
+		long image = this.domain.imageSize(image(rnd));
+		// room for the image that cannot be spilled and one more
+		TransformationHistory history = new TransformationHistory(this.domain, 2 * image + 4096);
+		List<BufferedImage> imports = imports(history, 8, rnd, true);
+		// the other snapshots were still spilled, so no step had to be dropped
+		Assertions.assertEquals(7, history.size());
+		Assertions.assertTrue(history.memoryInUse() <= 2 * image + 4096);
+		for (int i = imports.size() - 2; i >= 0; i--) {
+			assertSamePixels(imports.get(i), history.resolve(history.undo().beforeImage));
+		}
+		history.clear();
+	}
+
+	/**
+	 * Drives the history like CreatorImpl does (source image + composed
+	 * transformation) and, next to it, renders every edit eagerly; undo and
+	 * redo must give the same pixels as the eager images they went back to.
+	 */
+	private final class Session {
+		private final TransformationHistory history;
+		private final Random rnd;
+		// imported again and again, so snapshots are shared between steps
+		private final BufferedImage[] imports;
+		private Object source;
+		private ImageTransform transform;
+		private BufferedImage eager;
+		private final Deque<BufferedImage> undone = new ArrayDeque<>(), redone = new ArrayDeque<>();
+		// if set, the budget is kept at this many bytes of snapshots on top of the steps' own cost
+		long pixelBudget;
+
+		Session(TransformationHistory history, Random rnd) {
+			this.history = history;
+			this.rnd = rnd;
+			this.imports = new BufferedImage[] { image(rnd), image(rnd, 30, 40, BufferedImage.TYPE_3BYTE_BGR),
+					image(rnd, 25, 25, BufferedImage.TYPE_INT_ARGB) };
+			this.source = this.eager = this.imports[0];
+			this.transform = domain.identityTransform(this.source);
+		}
+
+		// returns the number of steps the history dropped
+		int run(int steps, boolean keepsEveryStep) throws IOException {
+			int dropped = 0;
+			for (int i = 0; i < steps; i++) {
+				if (this.pixelBudget > 0) {
+					this.history.setBudgetBytes(
+							this.pixelBudget + (this.history.size() + 1) * TransformationHistory.STEP_OVERHEAD_BYTES);
+				}
+				int op = this.rnd.nextInt(10);
+				String what;
+				if (op < 6) {
+					TransformCommand command = command();
+					what = command.toString();
+					apply(command);
+				} else if (op == 6) {
+					what = "import";
+					importImage(this.imports[this.rnd.nextInt(this.imports.length)]);
+				} else if (op < 9) {
+					what = "undo";
+					undo();
+				} else {
+					what = "redo";
+					redo();
+				}
+				// dropped steps are the oldest ones
+				int undoable = this.history.size() - this.redone.size();
+				if (keepsEveryStep) {
+					Assertions.assertEquals(this.undone.size(), undoable, "step " + i + ", " + what);
+				}
+				while (this.undone.size() > undoable) {
+					this.undone.removeLast();
+					dropped++;
+				}
+				assertSamePixels(this.eager, domain.renderImage(this.source, this.transform));
+				if (this.pixelBudget > 0) {
+					Assertions.assertTrue(this.history.memoryInUse() <= this.history.getBudgetBytes(), "step " + i);
+				}
+			}
+			this.history.clear();
+			Assertions.assertEquals(0, this.history.memoryInUse());
+			return dropped;
+		}
+
+		private TransformCommand command() {
+			int w = this.eager.getWidth(), h = this.eager.getHeight();
+			int pick = this.rnd.nextInt(w < 4 || h < 4 ? 4 : 6);
+			return switch (pick) {
+				case 0 -> TransformCommand.ROTATE_LEFT;
+				case 1 -> TransformCommand.ROTATE_RIGHT;
+				case 2 -> TransformCommand.MIRROR_HORIZONTAL;
+				case 3 -> TransformCommand.MIRROR_VERTICAL;
+				case 4 -> TransformCommand.CROP_CENTER;
+				// may reach past the image: clamped
+				default -> new TransformCommand.Crop(this.rnd.nextInt(w / 2), this.rnd.nextInt(h / 2),
+						w / 2 + this.rnd.nextInt(w), h / 2 + this.rnd.nextInt(h));
+			};
+		}
+
+		private void apply(TransformCommand command) {
+			ImageTransform composed = this.transform.then(command);
+			this.history.record(this.source, this.transform, this.source, composed);
+			this.transform = composed;
+			push((BufferedImage) domain.transformImage(this.eager, command));
+		}
+
+		private void importImage(BufferedImage image) {
+			this.history.record(this.source, this.transform, image, domain.identityTransform(image));
+			this.source = image;
+			this.transform = domain.identityTransform(image);
+			push(image);
+		}
+
+		private void push(BufferedImage next) {
+			this.undone.push(this.eager);
+			this.redone.clear();
+			this.eager = next;
+		}
+
+		private void undo() throws IOException {
+			TransformationHistory.Step step = this.history.undo();
+			if (step == null) {
+				Assertions.assertTrue(this.undone.isEmpty());
+				return;
+			}
+			this.source = this.history.resolve(step.beforeImage);
+			this.transform = step.before;
+			this.redone.push(this.eager);
+			this.eager = this.undone.pop();
+		}
+
+		private void redo() throws IOException {
+			TransformationHistory.Step step = this.history.redo();
+			if (step == null) {
+				Assertions.assertTrue(this.redone.isEmpty());
+				return;
+			}
+			this.source = this.history.resolve(step.afterImage);
+			this.transform = step.after;
+			this.undone.push(this.eager);
+			this.eager = this.redone.pop();
+		}
+	}
+
+	// imports count distinct images one after another, like CreatorImpl.importImage; the first one banded if asked
+	private List<BufferedImage> imports(TransformationHistory history, int count, Random rnd, boolean bandedFirst) {
+		List<BufferedImage> images = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			BufferedImage next = i == 0 && bandedFirst ? banded(rnd) : image(rnd);
+			if (!images.isEmpty()) {
+				BufferedImage previous = images.get(images.size() - 1);
+				history.record(previous, this.domain.identityTransform(previous), next,
+						this.domain.identityTransform(next));
+			}
+			images.add(next);
+		}
+		return images;
+	}
+
+	private static void assertSamePixels(BufferedImage expected, Object actual) {
+		BufferedImage image = (BufferedImage) actual;
+		Assertions.assertEquals(expected.getWidth(), image.getWidth());
+		Assertions.assertEquals(expected.getHeight(), image.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				Assertions.assertEquals(expected.getRGB(x, y), image.getRGB(x, y), x + "," + y);
+			}
+		}
+	}
+
+	private static BufferedImage image(Random rnd) {
+		return image(rnd, W, H, BufferedImage.TYPE_INT_RGB);
+	}
+
+	private static BufferedImage image(Random rnd, int w, int h, int type) {
+		BufferedImage image = new BufferedImage(w, h, type);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				image.setRGB(x, y, 0xFF000000 | rnd.nextInt(1 << 24));
+			}
+		}
+		return image;
+	}
+
+	// one bank per channel: the spill store rejects it
+	private static BufferedImage banded(Random rnd) {
+		WritableRaster raster = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_BYTE, W, H, 3), null);
+		for (int y = 0; y < H; y++) {
+			for (int x = 0; x < W; x++) {
+				for (int band = 0; band < 3; band++) {
+					raster.setSample(x, y, band, rnd.nextInt(256));
+				}
+			}
+		}
+		return new BufferedImage(new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR).getColorModel(), raster, false,
+				null);
+	}
+}
@@ -0,0 +1,59 @@
+package artcreator.domain.impl;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.TemplateConfig.Dithering;
+
+class ErrorDiffusionTest {
+
+	// large enough for the wavefront to run on several workers
+	private static final int COLUMNS = 320, ROWS = 240;
+
+	@Test
+	void floydSteinbergIsDeterministic() {
+		assertSameAtAnyParallelism(Dithering.FLOYD_STEINBERG);
+	}
+
+	@Test
+	void atkinsonIsDeterministic() {
+		assertSameAtAnyParallelism(Dithering.ATKINSON);
+	}
+
+	private static void assertSameAtAnyParallelism(Dithering dithering) {
+		int[] rgb = gradient(new Random(9));
+		int[] palette = Palette.DEFAULT.getColors();
+		PaletteIndex index = new PaletteIndex.Linear(palette);
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool many = new ForkJoinPool(4);
+		try {
+			int[] expected = ErrorDiffusion.run(single, rgb, COLUMNS, ROWS, index, palette, dithering, () -> false);
+			// a race would show up in some of the runs, not necessarily the first
+			for (int run = 0; run < 10; run++) {
+				int[] actual = ErrorDiffusion.run(many, rgb, COLUMNS, ROWS, index, palette, dithering, () -> false);
+				Assertions.assertArrayEquals(expected, actual, dithering + ", run " + run);
+			}
+		} finally {
+			single.shutdown();
+			many.shutdown();
+		}
+	}
+
+	// smooth gradients with noise, so error is carried across many cells
+	private static int[] gradient(Random rnd) {
+		int[] rgb = new int[COLUMNS * ROWS];
+		for (int y = 0; y < ROWS; y++) {
+			for (int x = 0; x < COLUMNS; x++) {
+				int r = Math.min(255, x * 255 / COLUMNS + rnd.nextInt(8));
+				int g = Math.min(255, y * 255 / ROWS + rnd.nextInt(8));
+				int b = (x + y) * 255 / (COLUMNS + ROWS);
+				rgb[y * COLUMNS + x] = (r << 16) | (g << 8) | b;
+			}
+		}
+		return rgb;
+	}
+}
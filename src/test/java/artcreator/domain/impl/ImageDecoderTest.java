@@ -0,0 +1,117 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageDecoderTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void previewWithinBoundUsesThumbnail() throws IOException {
+		File file = jpegWithThumbnail(1600, 1200, 240, 180);
+		try (ImageDecoder decoder = ImageDecoder.open(file)) {
+			// the thumbnail is larger than asked for: scaled down to fit
+			BufferedImage preview = decoder.preview(200);
+			Assertions.assertEquals(200, preview.getWidth());
+			Assertions.assertEquals(150, preview.getHeight());
+			// exactly as large: used as it is
+			preview = decoder.preview(240);
+			Assertions.assertEquals(240, preview.getWidth());
+			Assertions.assertEquals(180, preview.getHeight());
+		}
+	}
+
+	@Test
+	void previewWithinBoundWithoutSuitableThumbnail() throws IOException {
+		File file = jpegWithThumbnail(1600, 1200, 240, 180);
+		try (ImageDecoder decoder = ImageDecoder.open(file)) {
+			for (int max : new int[] { 241, 500, 999, 1599 }) {
+				BufferedImage preview = decoder.preview(max);
+				Assertions.assertTrue(Math.max(preview.getWidth(), preview.getHeight()) <= max,
+						() -> max + ": " + preview.getWidth() + "x" + preview.getHeight());
+			}
+			Assertions.assertEquals(1600, decoder.preview(1600).getWidth());
+		}
+	}
+
+	@Test
+	void concurrentPreviewsOfSeveralFiles() throws Exception {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			File file = this.dir.resolve("image" + i + ".png").toFile();
+			ImageIO.write(image(300 + 10 * i, 200), "png", file);
+			files.add(file);
+		}
+		DomainImpl domain = new DomainImpl();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> previews = new ArrayList<>();
+			for (int run = 0; run < 60; run++) {
+				int i = run * 7 % files.size();
+				previews.add(pool.submit(() -> {
+					BufferedImage preview = (BufferedImage) domain.loadPreview(files.get(i).getPath(), 100);
+					// subsampled by ceil((300 + 10 i) / 100)
+					int step = (300 + 10 * i + 99) / 100;
+					Assertions.assertEquals((300 + 10 * i + step - 1) / step, preview.getWidth());
+					return null;
+				}));
+			}
+			for (Future<?> preview : previews) {
+				preview.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void previewRereadsAModifiedFile() throws Exception {
+		File file = this.dir.resolve("changing.png").toFile();
+		ImageIO.write(image(80, 60), "png", file);
+		DomainImpl domain = new DomainImpl();
+		Assertions.assertEquals(80, ((BufferedImage) domain.loadPreview(file.getPath(), 100)).getWidth());
+		ImageIO.write(image(90, 60), "png", file);
+		Assertions.assertTrue(file.setLastModified(file.lastModified() + 2000));
+		Assertions.assertEquals(90, ((BufferedImage) domain.loadPreview(file.getPath(), 100)).getWidth());
+	}
+
+	private File jpegWithThumbnail(int w, int h, int tw, int th) throws IOException {
+		File file = this.dir.resolve("thumb.jpg").toFile();
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+			writer.setOutput(out);
+			writer.write(new IIOImage(image(w, h), List.of(image(tw, th)), null));
+		} finally {
+			writer.dispose();
+		}
+		return file;
+	}
+
+	private static BufferedImage image(int w, int h) {
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				image.setRGB(x, y, (x * 255 / w) << 16 | (y * 255 / h) << 8);
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,125 @@
+package artcreator.domain.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.kernel.ColorSpaces;
+import artcreator.domain.port.Palette;
+
+class PaletteIndexTest {
+
+	// worst extra delta E of the 32^3 table seen over these palettes is about 9.4
+	private static final float LUT_BOUND = 12f;
+
+	@Test
+	void kdTreeMatchesBruteForce() {
+		Random rnd = new Random(6);
+		float[] lab = new float[3];
+		for (int[] colors : palettes(rnd)) {
+			PaletteIndex.LabKdTree tree = new PaletteIndex.LabKdTree(colors);
+			for (int k = 0; k < 20000; k++) {
+				// palette colors themselves hit exact ties with their duplicates
+				int c = k % 4 == 0 ? colors[rnd.nextInt(colors.length)] : rnd.nextInt(1 << 24);
+				int r = (c >> 16) & 0xFF, g = (c >> 8) & 0xFF, b = c & 0xFF;
+				Assertions.assertEquals(bruteForce(colors, r, g, b), tree.nearest(r, g, b, lab),
+						() -> colors.length + " colors, query " + Integer.toHexString(c));
+			}
+		}
+	}
+
+	@Test
+	void tiesGoToTheLowerIndex() {
+		int[] colors = { 0x000000, 0x808080, 0xFFFFFF, 0x808080, 0x000000 };
+		float[] lab = new float[3];
+		PaletteIndex tree = new PaletteIndex.LabKdTree(colors);
+		PaletteIndex linear = new PaletteIndex.Linear(colors);
+		Assertions.assertEquals(0, tree.nearest(0, 0, 0, lab));
+		Assertions.assertEquals(1, tree.nearest(0x80, 0x80, 0x80, lab));
+		Assertions.assertEquals(0, linear.nearest(0, 0, 0, lab));
+		Assertions.assertEquals(1, linear.nearest(0x80, 0x80, 0x80, lab));
+	}
+
+	@Test
+	void linearRowsMatchSingleLookups() {
+		Random rnd = new Random(7);
+		for (int[] colors : palettes(rnd)) {
+			PaletteIndex linear = new PaletteIndex.Linear(colors);
+			int[] rgb = new int[1000];
+			for (int i = 0; i < rgb.length; i++) {
+				rgb[i] = rnd.nextInt(1 << 24);
+			}
+			int[] out = new int[rgb.length + 3];
+			linear.nearestAll(rgb, 2, rgb.length - 2, out, 3, new float[3]);
+			for (int i = 2; i < rgb.length; i++) {
+				int p = rgb[i];
+				Assertions.assertEquals(linear.nearest((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF, null), out[i + 1]);
+			}
+		}
+	}
+
+	@Test
+	void lutErrorIsBounded() {
+		Random rnd = new Random(8);
+		float[] lab = new float[3];
+		for (int[] colors : palettes(rnd)) {
+			PaletteIndex.LabKdTree exact = new PaletteIndex.LabKdTree(colors);
+			PaletteIndex.Lut lut = new PaletteIndex.Lut(exact);
+			Assertions.assertTrue(lut.maxError() >= 0f && lut.maxError() <= LUT_BOUND,
+					() -> colors.length + " colors: maxError " + lut.maxError());
+			// off the measuring grid, too
+			for (int k = 0; k < 20000; k++) {
+				int r = rnd.nextInt(256), g = rnd.nextInt(256), b = rnd.nextInt(256);
+				ColorSpaces.toLab(r, g, b, lab, 0);
+				int best = exact.nearestLab(lab[0], lab[1], lab[2]);
+				int approx = lut.nearest(r, g, b, lab);
+				double extra = Math.sqrt(exact.distance(approx, lab[0], lab[1], lab[2]))
+						- Math.sqrt(exact.distance(best, lab[0], lab[1], lab[2]));
+				Assertions.assertTrue(extra <= LUT_BOUND, () -> colors.length + " colors: extra delta E " + extra);
+			}
+		}
+	}
+
+	@Test
+	void exactIndexesHaveNoError() {
+		Assertions.assertEquals(0f, new PaletteIndex.LabKdTree(Palette.DEFAULT.getColors()).maxError());
+		Assertions.assertEquals(0f, new PaletteIndex.Linear(Palette.DEFAULT.getColors()).maxError());
+	}
+
+	// CIE76: squared Euclidean distance in Lab, first minimum wins
+	private static int bruteForce(int[] colors, int r, int g, int b) {
+		float[] q = new float[3], p = new float[3];
+		ColorSpaces.toLab(r, g, b, q, 0);
+		int best = 0;
+		float bestDistance = Float.MAX_VALUE;
+		for (int i = 0; i < colors.length; i++) {
+			int c = colors[i];
+			ColorSpaces.toLab((c >> 16) & 0xFF, (c >> 8) & 0xFF, c & 0xFF, p, 0);
+			float dl = p[0] - q[0], da = p[1] - q[1], db = p[2] - q[2];
+			float d = dl * dl + da * da + db * db;
+			if (d < bestDistance) {
+				best = i;
+				bestDistance = d;
+			}
+		}
+		return best;
+	}
+
+	// the default palette, a single color, and random ones with duplicates spread through them
+	private static List<int[]> palettes(Random rnd) {
+		List<int[]> palettes = new ArrayList<>();
+		palettes.add(Palette.DEFAULT.getColors());
+		palettes.add(new int[] { 0x336699 });
+		for (int n : new int[] { 2, 8, 9, 33, 64, 256 }) {
+			int[] colors = new int[n];
+			for (int i = 0; i < n; i++) {
+				colors[i] = i > 0 && rnd.nextInt(4) == 0 ? colors[rnd.nextInt(i)] : rnd.nextInt(1 << 24);
+			}
+			palettes.add(colors);
+		}
+		return palettes;
+	}
+}
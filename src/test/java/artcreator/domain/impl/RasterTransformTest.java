@@ -0,0 +1,109 @@
+package artcreator.domain.impl;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.port.Orientation;
+
+class RasterTransformTest {
+
+	private static final int W = 37, H = 23;
+
+	@Test
+	void orientMatchesAffineDraw() throws NoninvertibleTransformException {
+		Random rnd = new Random(1);
+		BufferedImage[] images = { new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB),
+				new BufferedImage(W, H, BufferedImage.TYPE_3BYTE_BGR),
+				new BufferedImage(W, H, BufferedImage.TYPE_BYTE_GRAY), interleavedRgb(W, H), bandedRgb(W, H) };
+		for (BufferedImage image : images) {
+			fill(image, rnd);
+			// the whole image and a subimage whose raster starts at (5, 3) of its parent
+			for (BufferedImage src : new BufferedImage[] { image, image.getSubimage(5, 3, W - 9, H - 7) }) {
+				for (Orientation o : Orientation.values()) {
+					BufferedImage actual = RasterTransform.orient(src, o);
+					BufferedImage expected = draw(src, o);
+					assertSamePixels(expected, actual, "type " + image.getType() + ", " + src.getWidth() + "x"
+							+ src.getHeight() + ", " + o);
+				}
+			}
+		}
+	}
+
+	@Test
+	void customTypesAreCustom() {
+		Assertions.assertEquals(BufferedImage.TYPE_CUSTOM, interleavedRgb(1, 1).getType());
+		Assertions.assertEquals(BufferedImage.TYPE_CUSTOM, bandedRgb(1, 1).getType());
+	}
+
+	// nearest-neighbour draw with the quadrant transform that maps the source onto the result
+	private static BufferedImage draw(BufferedImage src, Orientation o) throws NoninvertibleTransformException {
+		int w = src.getWidth(), h = src.getHeight();
+		int dw = o.swapsAxes() ? h : w, dh = o.swapsAxes() ? w : h;
+		// result -> source in continuous coordinates; -1 entries count from the far edge
+		double tx = (o.m00 < 0 || o.m01 < 0) ? w : 0;
+		double ty = (o.m10 < 0 || o.m11 < 0) ? h : 0;
+		AffineTransform toSource = new AffineTransform(o.m00, o.m10, o.m01, o.m11, tx, ty);
+		BufferedImage dest = RasterTransform.createCompatible(src, dw, dh);
+		Graphics2D g = dest.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g.drawImage(src, toSource.createInverse(), null);
+		g.dispose();
+		return dest;
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String what) {
+		Assertions.assertEquals(expected.getWidth(), actual.getWidth(), what);
+		Assertions.assertEquals(expected.getHeight(), actual.getHeight(), what);
+		Raster e = expected.getRaster(), a = actual.getRaster();
+		int w = expected.getWidth(), h = expected.getHeight();
+		Assertions.assertArrayEquals(e.getPixels(0, 0, w, h, (int[]) null), a.getPixels(0, 0, w, h, (int[]) null),
+				what);
+	}
+
+	private static void fill(BufferedImage image, Random rnd) {
+		WritableRaster raster = image.getRaster();
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				for (int b = 0; b < raster.getNumBands(); b++) {
+					raster.setSample(x, y, b, rnd.nextInt(256));
+				}
+			}
+		}
+	}
+
+	// RGB in byte order R, G, B: handled by the byte path, but not a predefined type
+	private static BufferedImage interleavedRgb(int w, int h) {
+		PixelInterleavedSampleModel sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, w, h, 3, 3 * w,
+				new int[] { 0, 1, 2 });
+		return custom(sm);
+	}
+
+	// one bank per channel: only the generic path can handle it
+	private static BufferedImage bandedRgb(int w, int h) {
+		return custom(new BandedSampleModel(DataBuffer.TYPE_BYTE, w, h, 3));
+	}
+
+	private static BufferedImage custom(SampleModel sm) {
+		ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+				ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+		return new BufferedImage(cm, Raster.createWritableRaster(sm, null), false, null);
+	}
+}
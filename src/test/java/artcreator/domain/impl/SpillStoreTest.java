@@ -0,0 +1,156 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SpillStoreTest {
+
+	private final SpillStore store = new SpillStore();
+	private final List<SpillStore.Spilled> spilled = new ArrayList<>();
+
+	@AfterEach
+	void releaseAll() throws IOException {
+		this.spilled.forEach(this.store::release);
+		if (this.store.file() != null) {
+			Files.deleteIfExists(this.store.file());
+		}
+	}
+
+	@Test
+	void restoresWhatWasSpilled() throws IOException {
+		Random rnd = new Random(31);
+		int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+				BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY };
+		for (int type : types) {
+			BufferedImage image = image(type, 37, 23, rnd);
+			assertSamePixels(image, this.store.restore(spill(image)));
+			// a subimage spills only its own pixels
+			BufferedImage sub = image.getSubimage(5, 3, 20, 11);
+			SpillStore.Spilled handle = spill(sub);
+			Assertions.assertEquals(DecodedImageCache.sizeOf(image(type, 20, 11, rnd)), handle.length(), "type " + type);
+			assertSamePixels(sub, this.store.restore(handle));
+		}
+	}
+
+	@Test
+	void releasedRegionsAreReused() throws IOException {
+		Random rnd = new Random(32);
+		SpillStore.Spilled a = spill(image(BufferedImage.TYPE_INT_RGB, 100, 50, rnd));
+		SpillStore.Spilled b = spill(image(BufferedImage.TYPE_INT_RGB, 100, 50, rnd));
+		SpillStore.Spilled c = spill(image(BufferedImage.TYPE_BYTE_GRAY, 100, 50, rnd));
+		long usage = this.store.diskUsage();
+		Assertions.assertEquals(a.length() + b.length() + c.length(), usage);
+
+		// freed in the middle: the same size fits again, then two smaller ones
+		release(b);
+		BufferedImage again = image(BufferedImage.TYPE_INT_RGB, 100, 50, rnd);
+		SpillStore.Spilled d = spill(again);
+		Assertions.assertEquals(usage, this.store.diskUsage());
+		release(d);
+		BufferedImage half = image(BufferedImage.TYPE_INT_RGB, 50, 50, rnd);
+		SpillStore.Spilled e = spill(half), f = spill(half);
+		Assertions.assertEquals(usage, this.store.diskUsage());
+
+		// every handle still reads its own pixels
+		assertSamePixels(half, this.store.restore(f));
+		release(e);
+		release(f);
+		SpillStore.Spilled g = spill(again);
+		assertSamePixels(again, this.store.restore(g));
+		Assertions.assertEquals(usage, this.store.diskUsage());
+	}
+
+	@Test
+	void fileShrinksAsImagesAreReleased() throws IOException {
+		Random rnd = new Random(33);
+		SpillStore.Spilled[] handles = new SpillStore.Spilled[6];
+		for (int i = 0; i < handles.length; i++) {
+			handles[i] = spill(image(i % 2 == 0 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR, 64, 48,
+					rnd));
+		}
+		long full = this.store.diskUsage();
+		Assertions.assertEquals(full, Files.size(this.store.file()));
+
+		// a region in the middle is kept for reuse, the file does not shrink yet
+		release(handles[4]);
+		Assertions.assertEquals(full, this.store.diskUsage());
+		// the last one frees the tail together with the free region before it
+		release(handles[5]);
+		long tail = full - handles[4].length() - handles[5].length();
+		Assertions.assertEquals(tail, this.store.diskUsage());
+		Assertions.assertEquals(tail, Files.size(this.store.file()));
+
+		// an image kept for long only pins its own bytes
+		for (int i = 1; i < 4; i++) {
+			release(handles[i]);
+		}
+		Assertions.assertEquals(handles[0].length(), this.store.diskUsage());
+		Assertions.assertEquals(handles[0].length(), Files.size(this.store.file()));
+		release(handles[0]);
+		Assertions.assertEquals(0, Files.size(this.store.file()));
+	}
+
+	@Test
+	void failedSpillTakesNoSpace() throws IOException {
+		Random rnd = new Random(34);
+		spill(image(BufferedImage.TYPE_INT_RGB, 30, 20, rnd));
+		long usage = this.store.diskUsage();
+		Assertions.assertThrows(IOException.class, () -> this.store.spill(banded(30, 20)));
+		Assertions.assertEquals(usage, this.store.diskUsage());
+	}
+
+	private SpillStore.Spilled spill(BufferedImage image) throws IOException {
+		SpillStore.Spilled handle = this.store.spill(image);
+		this.spilled.add(handle);
+		return handle;
+	}
+
+	private void release(SpillStore.Spilled handle) {
+		this.store.release(handle);
+		this.spilled.remove(handle);
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+		Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+		Assertions.assertEquals(expected.getColorModel(), actual.getColorModel());
+		Raster e = expected.getRaster(), a = actual.getRaster();
+		Assertions.assertArrayEquals(e.getPixels(e.getMinX(), e.getMinY(), e.getWidth(), e.getHeight(), (int[]) null),
+				a.getPixels(a.getMinX(), a.getMinY(), a.getWidth(), a.getHeight(), (int[]) null));
+	}
+
+	private static BufferedImage image(int type, int w, int h, Random rnd) {
+		BufferedImage image = new BufferedImage(w, h, type);
+		WritableRaster raster = image.getRaster();
+		int[] bits = raster.getSampleModel().getSampleSize();
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				for (int band = 0; band < bits.length; band++) {
+					raster.setSample(x, y, band, rnd.nextInt(1 << bits[band]));
+				}
+			}
+		}
+		return image;
+	}
+
+	// one bank per channel, which the store cannot write
+	private static BufferedImage banded(int w, int h) {
+		BufferedImage rgb = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+		ColorModel cm = rgb.getColorModel();
+		WritableRaster raster = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_BYTE, w, h, 3), null);
+		return new BufferedImage(cm, raster, false, null);
+	}
+}
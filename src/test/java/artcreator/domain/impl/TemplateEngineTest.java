@@ -0,0 +1,130 @@
+package artcreator.domain.impl;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+import artcreator.domain.port.TemplateConfig;
+import artcreator.domain.port.TemplateConfig.Dithering;
+import artcreator.domain.port.TemplateConfig.Matching;
+
+class TemplateEngineTest {
+
+	private static final int W = 400, H = 300;
+
+	private final ForkJoinPool pool = new ForkJoinPool(2);
+
+	@AfterEach
+	void shutDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	void interleavedSourcesKeepTheirIntegralImages() {
+		Random rnd = new Random(13);
+		BufferedImage a = image(rnd), b = image(rnd);
+		long one = IntegralImage.bytes(W, H);
+		TemplateEngine engine = new TemplateEngine(this.pool, 2 * one);
+		TemplateEngine plain = new TemplateEngine(this.pool, 0);
+		Map<BufferedImage, Object> versions = Map.of(a, new Object(), b, new Object());
+		// two sessions taking turns, each cropping its own image
+		for (int i = 0; i < 12; i++) {
+			for (BufferedImage source : new BufferedImage[] { a, b }) {
+				BufferedImage crop = source.getSubimage(rnd.nextInt(100), rnd.nextInt(100), 200 + rnd.nextInt(100),
+						150 + rnd.nextInt(50));
+				int columns = 10 + rnd.nextInt(60), rows = 10 + rnd.nextInt(40);
+				Assertions.assertArrayEquals(plain.cellColors(crop, null, columns, rows, () -> false),
+						engine.cellColors(crop, versions.get(source), columns, rows, () -> false), "step " + i);
+			}
+		}
+		Assertions.assertEquals(2 * one, engine.integralBytes());
+		Assertions.assertEquals(0, plain.integralBytes());
+	}
+
+	@Test
+	void integralImagesStayWithinTheBudget() {
+		Random rnd = new Random(14);
+		long one = IntegralImage.bytes(W, H);
+		TemplateEngine engine = new TemplateEngine(this.pool, one);
+		BufferedImage[] sources = { image(rnd), image(rnd), image(rnd) };
+		for (int i = 0; i < 3; i++) {
+			for (BufferedImage source : sources) {
+				engine.cellColors(source.getSubimage(i, i, W - 2 * i, H - 2 * i), source, 20, 15, () -> false);
+				Assertions.assertTrue(engine.integralBytes() <= one);
+			}
+		}
+		Assertions.assertEquals(one, engine.integralBytes());
+	}
+
+	@Test
+	void cachedStagesGiveTheSameTemplates() {
+		Random rnd = new Random(15);
+		BufferedImage source = image(rnd);
+		TemplateEngine engine = new TemplateEngine(this.pool, Long.MAX_VALUE);
+		TemplateEngine plain = new TemplateEngine(this.pool, 0);
+		for (int i = 0; i < 20; i++) {
+			BufferedImage crop = source.getSubimage(rnd.nextInt(50), rnd.nextInt(50), 300, 200);
+			TemplateConfig config = new TemplateConfig(10 + rnd.nextInt(3) * 20, 0, Palette.DEFAULT,
+					Matching.values()[rnd.nextInt(Matching.values().length)],
+					Dithering.values()[rnd.nextInt(Dithering.values().length)]);
+			Template expected = new TemplateEngine(this.pool, 0).generate(crop, null, config, () -> false);
+			for (TemplateEngine e : new TemplateEngine[] { engine, plain }) {
+				Template actual = e.generate(crop, "unchanged", config, () -> false);
+				for (int r = 0; r < expected.getRows(); r++) {
+					for (int c = 0; c < expected.getColumns(); c++) {
+						Assertions.assertEquals(expected.getCell(c, r), actual.getCell(c, r), config + " " + c + "," + r);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void changedPixelsGiveANewGrid() {
+		Random rnd = new Random(16);
+		BufferedImage source = image(rnd);
+		TemplateEngine engine = new TemplateEngine(this.pool, Long.MAX_VALUE);
+		Object before = new Object();
+		BufferedImage crop = source.getSubimage(40, 30, 300, 200);
+		// twice, so the second grid comes from an integral image
+		int[] old = engine.cellColors(crop, before, 30, 20, () -> false).clone();
+		Assertions.assertArrayEquals(old, engine.cellColors(source.getSubimage(40, 30, 300, 200), before, 30, 20,
+				() -> false));
+		Template oldTemplate = engine.generate(crop, before, TemplateConfig.defaults(), () -> false);
+
+		// the caller draws into the image
+		Graphics2D g = source.createGraphics();
+		g.setColor(Color.MAGENTA);
+		g.fillRect(0, 0, W / 2, H);
+		g.dispose();
+		int[] expected = new TemplateEngine(this.pool, 0).cellColors(crop, null, 30, 20, () -> false);
+		Assertions.assertFalse(Arrays.equals(old, expected));
+
+		// a new version, or none, never gives the old grid or template
+		for (Object version : new Object[] { new Object(), null }) {
+			Assertions.assertArrayEquals(expected, engine.cellColors(crop, version, 30, 20, () -> false));
+			Template template = engine.generate(crop, version, TemplateConfig.defaults(), () -> false);
+			Assertions.assertNotEquals(oldTemplate.getCell(0, 0), template.getCell(0, 0));
+		}
+	}
+
+	private static BufferedImage image(Random rnd) {
+		BufferedImage image = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < H; y++) {
+			for (int x = 0; x < W; x++) {
+				image.setRGB(x, y, (x * 255 / W) << 16 | (y * 255 / H) << 8 | rnd.nextInt(256));
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,166 @@
+package artcreator.domain.impl;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import artcreator.domain.port.Palette;
+import artcreator.domain.port.Template;
+
+class TemplateExportTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void pngReadsBackAtEveryBitDepth() throws IOException {
+		// 1, 2, 4 and 8 bits per index, then RGB; odd widths end scanlines mid-byte
+		for (int colors : new int[] { 2, 3, 4, 11, 16, 200, 300 }) {
+			for (int cellSize : new int[] { 1, 3 }) {
+				Template template = template(new Random(colors), 37, 23, colors);
+				File file = this.dir.resolve("template.png").toFile();
+				TemplateExport.write(template, file, cellSize);
+				assertPixels(template, cellSize, ImageIO.read(file));
+			}
+		}
+	}
+
+	@Test
+	void pngSpreadsOverSeveralDataChunks() throws IOException {
+		// random RGB cells barely compress: well over one 64 KB chunk
+		Template template = template(new Random(51), 400, 300, 300, 1);
+		File file = this.dir.resolve("large.png").toFile();
+		TemplateExport.write(template, file, 1);
+		String png = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+		Assertions.assertTrue(png.indexOf("IDAT") != png.lastIndexOf("IDAT"));
+		assertPixels(template, 1, ImageIO.read(file));
+	}
+
+	@Test
+	void pdfCrossReferenceMatchesObjects() throws IOException, DataFormatException {
+		// tiled onto several pages
+		Template template = template(new Random(52), 120, 90, 40);
+		File file = this.dir.resolve("template.pdf").toFile();
+		TemplateExport.write(template, file, 12);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		String pdf = new String(bytes, StandardCharsets.ISO_8859_1);
+
+		Matcher start = Pattern.compile("startxref\n(\\d+)\n%%EOF\n$").matcher(pdf);
+		Assertions.assertTrue(start.find());
+		int xref = Integer.parseInt(start.group(1));
+		Matcher table = Pattern.compile("\\Gxref\n0 (\\d+)\n0000000000 65535 f \n").matcher(pdf);
+		Assertions.assertTrue(table.find(xref), "no xref at " + xref);
+		int size = Integer.parseInt(table.group(1));
+		Matcher trailer = Pattern.compile("trailer\n<< /Size (\\d+) ").matcher(pdf);
+		Assertions.assertTrue(trailer.find(xref));
+		Assertions.assertEquals(size, Integer.parseInt(trailer.group(1)));
+
+		int[] offsets = new int[size];
+		for (int i = 1, at = table.end(); i < size; i++, at += 20) {
+			String entry = pdf.substring(at, at + 20);
+			Assertions.assertTrue(entry.matches("\\d{10} 00000 n \n"), entry);
+			offsets[i] = Integer.parseInt(entry.substring(0, 10));
+			Assertions.assertTrue(pdf.startsWith(i + " 0 obj\n", offsets[i]), "object " + i + " at " + offsets[i]);
+		}
+
+		// every content stream is exactly as long as its separate /Length object says
+		Matcher stream = Pattern.compile("\\d+ 0 obj\n<< /Length (\\d+) 0 R /Filter /FlateDecode >>\nstream\n")
+				.matcher(pdf);
+		int streams = 0;
+		while (stream.find()) {
+			int lengthObject = Integer.parseInt(stream.group(1));
+			Matcher length = Pattern.compile("\\G" + lengthObject + " 0 obj\n(\\d+)\nendobj\n").matcher(pdf);
+			Assertions.assertTrue(length.find(offsets[lengthObject]));
+			int n = Integer.parseInt(length.group(1));
+			Assertions.assertTrue(pdf.startsWith("\nendstream\n", stream.end() + n));
+			Inflater inflater = new Inflater();
+			inflater.setInput(bytes, stream.end(), n);
+			byte[] content = new byte[1 << 16];
+			while (!inflater.finished()) {
+				Assertions.assertTrue(inflater.inflate(content) > 0 || inflater.finished(), "truncated stream");
+			}
+			Assertions.assertEquals(0, inflater.getRemaining());
+			inflater.end();
+			streams++;
+		}
+		Assertions.assertTrue(streams > 1, "pages: " + streams);
+	}
+
+	@Test
+	void failedExportKeepsTheExistingFile() throws IOException {
+		Path file = this.dir.resolve("keep.png");
+		Files.writeString(file, "previous export");
+		Template template = template(new Random(53), 100, 10, 16);
+		// wider than a PNG can be: fails after the export has started
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> TemplateExport.write(template, file.toFile(), Integer.MAX_VALUE / 50));
+		Assertions.assertEquals("previous export", Files.readString(file));
+		Assertions.assertEquals(List.of(file), files());
+	}
+
+	@Test
+	void exportReplacesTheExistingFile() throws IOException {
+		Path file = this.dir.resolve("replace.png");
+		Files.writeString(file, "previous export");
+		Template template = template(new Random(54), 20, 10, 16);
+		TemplateExport.write(template, file.toFile(), 2);
+		assertPixels(template, 2, ImageIO.read(file.toFile()));
+		Assertions.assertEquals(List.of(file), files());
+	}
+
+	private List<Path> files() throws IOException {
+		try (Stream<Path> files = Files.list(this.dir)) {
+			return files.toList();
+		}
+	}
+
+	private static void assertPixels(Template template, int cellSize, BufferedImage image) {
+		Assertions.assertEquals(template.getColumns() * cellSize, image.getWidth());
+		Assertions.assertEquals(template.getRows() * cellSize, image.getHeight());
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int expected = template.getPalette().getColor(template.getCell(x / cellSize, y / cellSize));
+				Assertions.assertEquals(expected, image.getRGB(x, y) & 0xFFFFFF, x + "," + y);
+			}
+		}
+	}
+
+	// runs of random length, so both dense rows and long runs occur
+	private static Template template(Random rnd, int columns, int rows, int colors) {
+		return template(rnd, columns, rows, colors, 3);
+	}
+
+	// a new color at every cell with a chance of 1 in runLength
+	private static Template template(Random rnd, int columns, int rows, int colors, int runLength) {
+		String[] names = new String[colors];
+		int[] palette = new int[colors];
+		for (int i = 0; i < colors; i++) {
+			names[i] = "Farbe " + i;
+			palette[i] = rnd.nextInt(1 << 24);
+		}
+		int[] cells = new int[columns * rows];
+		for (int i = 0, index = 0; i < cells.length; i++) {
+			if (rnd.nextInt(runLength) == 0) {
+				index = rnd.nextInt(colors);
+			}
+			cells[i] = index;
+		}
+		return new Template(columns, rows, new Palette(names, palette), cells);
+	}
+}
@@ -0,0 +1,122 @@
+package artcreator.domain.kernel;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PixelKernelsTest {
+
+	private final PixelKernels scalar = PixelKernels.scalar();
+	private PixelKernels vector;
+
+	@BeforeEach
+	void vectorKernels() {
+		Assumptions.assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+				"started without jdk.incubator.vector");
+		this.vector = PixelKernels.vector();
+	}
+
+	@Test
+	void sumCellsAgree() {
+		Random rnd = new Random(21);
+		for (int round = 0; round < 200; round++) {
+			int columns = 1 + rnd.nextInt(40);
+			int width = columns + rnd.nextInt(1000);
+			int offset = rnd.nextInt(50);
+			int[] row = randomPixels(rnd, offset + width + rnd.nextInt(50));
+			int[] x0 = new int[columns], x1 = new int[columns];
+			for (int c = 0; c < columns; c++) {
+				x0[c] = c * width / columns;
+				x1[c] = (c + 1) * width / columns;
+			}
+			long[][] expected = sums(columns, rnd.nextLong()), actual = copy(expected);
+			this.scalar.sumCells(row, offset, x0, x1, expected[0], expected[1], expected[2]);
+			this.vector.sumCells(row, offset, x0, x1, actual[0], actual[1], actual[2]);
+			for (int channel = 0; channel < 3; channel++) {
+				Assertions.assertArrayEquals(expected[channel], actual[channel], "round " + round);
+			}
+		}
+	}
+
+	@Test
+	void toLabAgreesWithinTolerance() {
+		Random rnd = new Random(22);
+		int[] rgb = randomPixels(rnd, 100_003);
+		int from = 7, to = rgb.length - 5;
+		float[] expected = new float[3 * rgb.length], actual = new float[3 * rgb.length];
+		this.scalar.toLab(rgb, from, to, expected);
+		this.vector.toLab(rgb, from, to, actual);
+		for (int i = 0; i < expected.length; i++) {
+			// outside [from, to) nothing is written
+			if (i < 3 * from || i >= 3 * to) {
+				Assertions.assertEquals(0f, actual[i], "index " + i);
+			} else {
+				Assertions.assertEquals(expected[i], actual[i], PixelKernels.LAB_TOLERANCE, "index " + i);
+			}
+		}
+	}
+
+	@Test
+	void nearestRgbAgrees() {
+		Random rnd = new Random(23);
+		for (int round = 0; round < 50; round++) {
+			int size = 1 + rnd.nextInt(64);
+			int[] reds = new int[size], greens = new int[size], blues = new int[size];
+			for (int i = 0; i < size; i++) {
+				// few levels, so ties are common
+				reds[i] = rnd.nextInt(4) * 85;
+				greens[i] = rnd.nextInt(4) * 85;
+				blues[i] = rnd.nextInt(4) * 85;
+			}
+			int[] rgb = randomPixels(rnd, 1000 + rnd.nextInt(100));
+			int from = rnd.nextInt(20), count = rgb.length - from - rnd.nextInt(20), outFrom = rnd.nextInt(10);
+			int[] expected = new int[outFrom + count], actual = new int[outFrom + count];
+			this.scalar.nearestRgb(rgb, from, count, reds, greens, blues, expected, outFrom);
+			this.vector.nearestRgb(rgb, from, count, reds, greens, blues, actual, outFrom);
+			Assertions.assertArrayEquals(expected, actual, "round " + round);
+		}
+	}
+
+	@Test
+	void halveAgrees() {
+		Random rnd = new Random(24);
+		for (int round = 0; round < 50; round++) {
+			int width = 1 + rnd.nextInt(100), height = 1 + rnd.nextInt(30);
+			int srcStride = 2 * width + rnd.nextInt(5), dstStride = width + rnd.nextInt(5);
+			int srcOffset = rnd.nextInt(10), dstOffset = rnd.nextInt(10);
+			int[] src = randomPixels(rnd, srcOffset + 2 * height * srcStride);
+			int[] expected = new int[dstOffset + height * dstStride], actual = expected.clone();
+			this.scalar.halve(src, srcOffset, srcStride, expected, dstOffset, dstStride, width, height);
+			this.vector.halve(src, srcOffset, srcStride, actual, dstOffset, dstStride, width, height);
+			Assertions.assertArrayEquals(expected, actual, "round " + round);
+		}
+	}
+
+	// with random alpha, which every kernel ignores
+	private static int[] randomPixels(Random rnd, int length) {
+		int[] pixels = new int[length];
+		for (int i = 0; i < length; i++) {
+			pixels[i] = rnd.nextInt();
+		}
+		return pixels;
+	}
+
+	// sums already holding something: kernels add to them
+	private static long[][] sums(int columns, long seed) {
+		Random rnd = new Random(seed);
+		long[][] sums = new long[3][columns];
+		for (long[] channel : sums) {
+			for (int c = 0; c < columns; c++) {
+				channel[c] = rnd.nextInt(1 << 20);
+			}
+		}
+		return sums;
+	}
+
+	private static long[][] copy(long[][] sums) {
+		return new long[][] { sums[0].clone(), sums[1].clone(), sums[2].clone() };
+	}
+}
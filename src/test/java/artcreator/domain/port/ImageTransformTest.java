@@ -0,0 +1,106 @@
+package artcreator.domain.port;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.domain.impl.DomainImpl;
+
+class ImageTransformTest {
+
+	private static final String[] ORIENTATIONS = { "rotate_left", "rotate_right", "mirror_horizontal",
+			"mirror_vertical" };
+
+	private final DomainImpl domain = new DomainImpl();
+
+	@Test
+	void composedSequenceMatchesStepwise() {
+		Random rnd = new Random(2);
+		for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR }) {
+			BufferedImage src = image(41, 29, type, rnd);
+			for (int run = 0; run < 200; run++) {
+				List<String> steps = new ArrayList<>();
+				BufferedImage stepwise = src;
+				ImageTransform composed = ImageTransform.identity(src.getWidth(), src.getHeight());
+				for (int i = 1 + rnd.nextInt(8); i > 0; i--) {
+					String step = randomStep(rnd, stepwise.getWidth(), stepwise.getHeight());
+					steps.add(step);
+					stepwise = (BufferedImage) this.domain.transformImage(stepwise, TransformCommand.parse(step));
+					composed = composed.then(step);
+					Assertions.assertEquals(stepwise.getWidth(), composed.width(), steps::toString);
+					Assertions.assertEquals(stepwise.getHeight(), composed.height(), steps::toString);
+				}
+				assertSamePixels(stepwise, (BufferedImage) this.domain.renderImage(src, composed), steps.toString());
+			}
+		}
+	}
+
+	@Test
+	void cropAfterRotationIsInResultCoordinates() {
+		BufferedImage src = image(40, 20, BufferedImage.TYPE_INT_RGB, new Random(3));
+		// after a right turn the image is 20x40; its top left 5x10 is the bottom left 10x5 of the source
+		ImageTransform t = ImageTransform.identity(40, 20).then("rotate_right").then("crop:0,0,5,10");
+		Assertions.assertEquals(Orientation.ROTATE_RIGHT, t.getOrientation());
+		Assertions.assertEquals(0, t.getCropX());
+		Assertions.assertEquals(15, t.getCropY());
+		Assertions.assertEquals(10, t.getCropWidth());
+		Assertions.assertEquals(5, t.getCropHeight());
+		BufferedImage out = (BufferedImage) this.domain.renderImage(src, t);
+		Assertions.assertEquals(src.getRGB(0, 19), out.getRGB(0, 0));
+		Assertions.assertEquals(src.getRGB(9, 15), out.getRGB(4, 9));
+	}
+
+	@Test
+	void cropIsClampedToTheResult() {
+		ImageTransform t = ImageTransform.identity(10, 8).then("rotate_left").crop(5, 7, 100, 100);
+		Assertions.assertEquals(3, t.width());
+		Assertions.assertEquals(3, t.height());
+		Assertions.assertTrue(t.isCropped());
+	}
+
+	@Test
+	void fourTurnsAreTheIdentity() {
+		ImageTransform t = ImageTransform.identity(10, 8);
+		for (int i = 0; i < 4; i++) {
+			t = t.then("rotate_left");
+		}
+		Assertions.assertTrue(t.isIdentity());
+		Assertions.assertEquals(ImageTransform.identity(10, 8), t);
+	}
+
+	private static String randomStep(Random rnd, int w, int h) {
+		switch (rnd.nextInt(6)) {
+			case 0:
+				return "crop_center";
+			case 1:
+				int x = rnd.nextInt(w), y = rnd.nextInt(h);
+				return "crop:" + x + "," + y + "," + (1 + rnd.nextInt(w - x)) + "," + (1 + rnd.nextInt(h - y));
+			default:
+				return ORIENTATIONS[rnd.nextInt(ORIENTATIONS.length)];
+		}
+	}
+
+	private static BufferedImage image(int w, int h, int type, Random rnd) {
+		BufferedImage image = new BufferedImage(w, h, type);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				image.setRGB(x, y, rnd.nextInt());
+			}
+		}
+		return image;
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String what) {
+		Assertions.assertEquals(expected.getWidth(), actual.getWidth(), what);
+		Assertions.assertEquals(expected.getHeight(), actual.getHeight(), what);
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				Assertions.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), what);
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package artcreator.domain.port;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateTest {
+
+	private static final int COLUMNS = 70, ROWS = 40;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void denseOneByteRoundTrip() throws IOException {
+		assertRoundTrip(palette(16), noise(16), false);
+	}
+
+	@Test
+	void runsOneByteRoundTrip() throws IOException {
+		assertRoundTrip(palette(16), stripes(16), true);
+	}
+
+	@Test
+	void denseTwoByteRoundTrip() throws IOException {
+		assertRoundTrip(palette(300), noise(300), false);
+	}
+
+	@Test
+	void runsTwoByteRoundTrip() throws IOException {
+		assertRoundTrip(palette(300), stripes(300), true);
+	}
+
+	@Test
+	void rejectsRunTableNotEndingAtRunCount() throws IOException {
+		assertRejected(new Template(COLUMNS, ROWS, palette(16), stripes(16)), file -> {
+			int at = runTable(file);
+			file.putInt(at + 4 * ROWS, file.getInt(24) - 1);
+		});
+	}
+
+	@Test
+	void rejectsRunEndsOutOfOrder() throws IOException {
+		assertRejected(new Template(COLUMNS, ROWS, palette(16), stripes(16)), file -> {
+			int ends = runTable(file) + 4 * (ROWS + 1);
+			// the second run of the first row ends where the first one does
+			file.putInt(ends + 4, file.getInt(ends));
+		});
+	}
+
+	@Test
+	void rejectsRowNotEndingAtLastColumn() throws IOException {
+		assertRejected(new Template(COLUMNS, ROWS, palette(16), stripes(16)), file -> {
+			int at = runTable(file);
+			int lastOfFirstRow = file.getInt(at + 4) - 1;
+			file.putInt(at + 4 * (ROWS + 1) + 4 * lastOfFirstRow, COLUMNS - 1);
+		});
+	}
+
+	@Test
+	void rejectsIndexOutsidePalette() throws IOException {
+		assertRejected(new Template(COLUMNS, ROWS, palette(16), noise(16)), file -> {
+			// the first cell of the dense section
+			file.put(file.capacity() - COLUMNS * ROWS, (byte) 200);
+		});
+	}
+
+	@Test
+	void rejectsWrongColorCounts() throws IOException {
+		assertRejected(new Template(COLUMNS, ROWS, palette(16), noise(16)), file -> {
+			int counts = 32 + 4 * 16;
+			file.putInt(counts, file.getInt(counts) + 1);
+		});
+	}
+
+	@Test
+	void rejectsTruncatedFile() throws IOException {
+		byte[] bytes = bytes(new Template(COLUMNS, ROWS, palette(16), noise(16)));
+		Path file = this.dir.resolve("truncated.tpl");
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+		Assertions.assertThrows(IOException.class, () -> Template.read(file));
+	}
+
+	private void assertRoundTrip(Palette palette, int[] cells, boolean runs) throws IOException {
+		Template written = new Template(COLUMNS, ROWS, palette, cells);
+		Assertions.assertEquals(runs, written.isRunLengthEncoded());
+		Path file = this.dir.resolve("template.tpl");
+		Files.write(file, bytes(written));
+		Template read = Template.read(file);
+		Assertions.assertEquals(runs, read.isRunLengthEncoded());
+		Assertions.assertEquals(palette, read.getPalette());
+		Assertions.assertEquals(written.getCellBytes(), read.getCellBytes());
+		Assertions.assertArrayEquals(written.getColorCounts(), read.getColorCounts());
+		for (Template t : new Template[] { written, read }) {
+			for (int r = 0; r < ROWS; r++) {
+				for (int c = 0; c < COLUMNS; c++) {
+					int at = r * COLUMNS;
+					int end = c + 1;
+					while (end < COLUMNS && cells[at + end] == cells[at + c]) {
+						end++;
+					}
+					Assertions.assertEquals(cells[at + c], t.getCell(c, r), "cell " + c + "," + r);
+					Assertions.assertEquals(end, t.runEnd(c, r), "run end " + c + "," + r);
+				}
+			}
+		}
+	}
+
+	private void assertRejected(Template template, Consumer<ByteBuffer> corruption) throws IOException {
+		ByteBuffer file = ByteBuffer.wrap(bytes(template));
+		corruption.accept(file);
+		Path path = this.dir.resolve("corrupt.tpl");
+		Files.write(path, file.array());
+		Assertions.assertThrows(IOException.class, () -> Template.read(path));
+	}
+
+	// start of the run table: the sections after it are run ends and padded indices
+	private static int runTable(ByteBuffer file) {
+		int runs = file.getInt(24), indexBytes = file.get(21);
+		return file.capacity() - ((runs * indexBytes + 3) & ~3) - 4 * runs - 4 * (ROWS + 1);
+	}
+
+	private static byte[] bytes(Template template) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		template.writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static Palette palette(int size) {
+		Random rnd = new Random(size);
+		String[] names = new String[size];
+		int[] colors = new int[size];
+		for (int i = 0; i < size; i++) {
+			names[i] = "Farbe " + i;
+			colors[i] = rnd.nextInt(1 << 24);
+		}
+		return new Palette(names, colors);
+	}
+
+	// every cell random: no runs worth storing
+	private static int[] noise(int size) {
+		Random rnd = new Random(11);
+		int[] cells = new int[COLUMNS * ROWS];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = rnd.nextInt(size);
+		}
+		return cells;
+	}
+
+	// a few runs of random length per row, using high indices too
+	private static int[] stripes(int size) {
+		Random rnd = new Random(12);
+		int[] cells = new int[COLUMNS * ROWS];
+		for (int r = 0; r < ROWS; r++) {
+			int index = size - 1;
+			for (int c = 0; c < COLUMNS; c++) {
+				if (c > 0 && rnd.nextInt(12) == 0) {
+					index = rnd.nextInt(size);
+				}
+				cells[r * COLUMNS + c] = index;
+			}
+		}
+		return cells;
+	}
+}
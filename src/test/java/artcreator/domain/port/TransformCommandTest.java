@@ -0,0 +1,81 @@
+package artcreator.domain.port;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TransformCommandTest {
+
+	private static final List<TransformCommand> ALL = List.of(TransformCommand.ROTATE_LEFT,
+			TransformCommand.ROTATE_RIGHT, TransformCommand.MIRROR_HORIZONTAL, TransformCommand.MIRROR_VERTICAL,
+			TransformCommand.CROP_CENTER, new TransformCommand.Crop(0, 0, 1, 1),
+			new TransformCommand.Crop(12, 34, 560, 78));
+
+	@Test
+	void toStringParsesBack() {
+		for (TransformCommand command : ALL) {
+			Assertions.assertEquals(command, TransformCommand.parse(command.toString()));
+		}
+		Assertions.assertEquals("crop:12,34,560,78", new TransformCommand.Crop(12, 34, 560, 78).toString());
+	}
+
+	@Test
+	void parseAllKeepsOrderAndSkipsBlanks() {
+		StringBuilder recipe = new StringBuilder();
+		for (TransformCommand command : ALL) {
+			recipe.append(command).append(";  ;");
+		}
+		Assertions.assertEquals(ALL, TransformCommand.parseAll(recipe.toString()));
+		Assertions.assertEquals(List.of(TransformCommand.ROTATE_LEFT), TransformCommand.parseAll("rotate_left"));
+	}
+
+	@Test
+	void namesAreCaseInsensitive() {
+		Assertions.assertSame(TransformCommand.ROTATE_LEFT, TransformCommand.parse("  ROTATE_Left "));
+		Assertions.assertSame(TransformCommand.MIRROR_VERTICAL, TransformCommand.parse("Mirror_Vertical"));
+		Assertions.assertSame(TransformCommand.CROP_CENTER, TransformCommand.parse("CROP_CENTER"));
+		Assertions.assertEquals(new TransformCommand.Crop(1, 2, 3, 4), TransformCommand.parse("CROP: 1, 2 ,3,4 "));
+	}
+
+	@Test
+	void mirrorMeansHorizontal() {
+		Assertions.assertSame(TransformCommand.MIRROR_HORIZONTAL, TransformCommand.parse("mirror"));
+		Assertions.assertSame(TransformCommand.MIRROR_HORIZONTAL, TransformCommand.parse("MIRROR"));
+	}
+
+	@Test
+	void cropStringsAreClampedAsBefore() {
+		Assertions.assertEquals(new TransformCommand.Crop(0, 0, 10, 10), TransformCommand.parse("crop:-5,0,10,10"));
+		Assertions.assertEquals(new TransformCommand.Crop(0, 0, 1, 1), TransformCommand.parse("crop:-1,-1,0,-7"));
+		// clamped to the image when applied
+		ImageTransform cropped = ImageTransform.identity(20, 10).then("crop:-5,-5,100,3");
+		Assertions.assertEquals(20, cropped.width());
+		Assertions.assertEquals(3, cropped.height());
+	}
+
+	@Test
+	void invalidOperationsAreRejected() {
+		assertRejected("spin", "Unknown transformation: spin");
+		assertRejected("crop:1,2,3", "Unknown transformation: crop:1,2,3");
+		assertRejected("crop:1,2,3,4,5", "Unknown transformation: crop:1,2,3,4,5");
+		assertRejected("crop:a,2,3,4", "Invalid crop parameters: For input string: \"a\"");
+		IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+				() -> TransformCommand.parseAll(" ; ;"));
+		Assertions.assertEquals("No transformation given.", e.getMessage());
+		e = Assertions.assertThrows(IllegalArgumentException.class,
+				() -> TransformCommand.parseAll("rotate_left;spin"));
+		Assertions.assertEquals("Unknown transformation: spin", e.getMessage());
+		// the record itself stays strict
+		e = Assertions.assertThrows(IllegalArgumentException.class, () -> new TransformCommand.Crop(-1, 0, 5, 5));
+		Assertions.assertEquals("Invalid crop rectangle: -1,0,5,5", e.getMessage());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TransformCommand.Rotate(null));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TransformCommand.Mirror(null));
+	}
+
+	private static void assertRejected(String operation, String message) {
+		IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+				() -> TransformCommand.parse(operation));
+		Assertions.assertEquals(message, e.getMessage());
+	}
+}
@@ -0,0 +1,82 @@
+package artcreator.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+	@Test
+	void smallValuesAreExact() {
+		for (int v = 0; v < 32; v++) {
+			Assertions.assertEquals(v, Histogram.indexOf(v));
+			Assertions.assertEquals(v, Histogram.highestValueOf(v));
+		}
+		Assertions.assertEquals(32, Histogram.indexOf(32));
+		Assertions.assertEquals(63, Histogram.indexOf(63));
+		Assertions.assertEquals(64, Histogram.indexOf(64));
+		Assertions.assertEquals(64, Histogram.indexOf(65));
+		Assertions.assertEquals(65, Histogram.highestValueOf(64));
+	}
+
+	@Test
+	void bucketsAreContiguous() {
+		Assertions.assertEquals(0, Histogram.indexOf(0));
+		for (int i = 0; i < Histogram.BUCKETS - 1; i++) {
+			long highest = Histogram.highestValueOf(i);
+			Assertions.assertEquals(i, Histogram.indexOf(highest), "bucket " + i);
+			Assertions.assertEquals(i + 1, Histogram.indexOf(highest + 1), "bucket " + i);
+		}
+	}
+
+	@Test
+	void powersOfTwoStayWithinThreePercent() {
+		for (int k = 1; k <= 43; k++) {
+			long p = 1L << k;
+			for (long v : new long[] { p - 1, p, p + 1 }) {
+				long highest = Histogram.highestValueOf(Histogram.indexOf(v));
+				Assertions.assertTrue(highest >= v && highest - v <= v / 32, v + " -> " + highest);
+			}
+		}
+		Assertions.assertEquals(Histogram.BUCKETS - 1, Histogram.indexOf((1L << 44) - 1));
+		Assertions.assertEquals(Histogram.BUCKETS - 1, Histogram.indexOf(1L << 44));
+		Assertions.assertEquals(Histogram.BUCKETS - 1, Histogram.indexOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	void percentilesAreBoundedByTheTrueValue() {
+		Random rnd = new Random(20);
+		Histogram histogram = new Histogram();
+		long[] values = new long[20000];
+		for (int i = 0; i < values.length; i++) {
+			// spread over all magnitudes
+			values[i] = rnd.nextLong() >>> (21 + rnd.nextInt(43));
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		Assertions.assertEquals(values.length, snapshot.getCount());
+		Assertions.assertEquals(values[values.length - 1], snapshot.getMax());
+		for (double q : new double[] { 0, 0.001, 0.1, 0.5, 0.9, 0.99, 0.999, 1 }) {
+			long exact = values[(int) Math.max(0, Math.ceil(q * values.length) - 1)];
+			long reported = snapshot.getValueAt(q);
+			Assertions.assertTrue(reported >= exact && reported - exact <= exact / 32,
+					"p" + q + ": " + reported + " for " + exact);
+		}
+		Assertions.assertEquals(snapshot.getMax(), snapshot.getValueAt(1));
+	}
+
+	@Test
+	void valuesBeyondTheRangeReportTheMaximum() {
+		Histogram histogram = new Histogram();
+		histogram.record(1L << 50);
+		histogram.record(-5);
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		Assertions.assertEquals(0, snapshot.getValueAt(0.5));
+		Assertions.assertEquals(1L << 50, snapshot.getValueAt(0.99));
+		Assertions.assertEquals(0, new Histogram().snapshot().getValueAt(0.5));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAt(1.5));
+	}
+}
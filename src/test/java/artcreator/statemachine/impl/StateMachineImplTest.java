@@ -0,0 +1,83 @@
+package artcreator.statemachine.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import artcreator.statemachine.port.State;
+import artcreator.statemachine.port.State.S;
+
+class StateMachineImplTest {
+
+	private static final S[] STATES = { S.NoImage, S.ImageLoaded, S.Processing, S.TemplateReady };
+
+	@Test
+	void asyncObserverEndsOnTheCurrentState() throws Exception {
+		ExecutorService delivery = Executors.newSingleThreadExecutor();
+		try {
+			for (int round = 0; round < 200; round++) {
+				StateMachineImpl machine = new StateMachineImpl();
+				List<State> seen = new ArrayList<>();
+				// notified first: widens the gap between a transition and its async offer
+				machine.attach(state -> LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(20_000)));
+				machine.attach(seen::add, delivery);
+				race(machine, round % 2 == 0);
+				// the delivery thread runs tasks in order: once this one ran, every drain has
+				delivery.submit(() -> {
+				}).get();
+				State last = seen.get(seen.size() - 1);
+				Assertions.assertSame(machine.getState(), last, "round " + round);
+			}
+		} finally {
+			delivery.shutdown();
+		}
+	}
+
+	@Test
+	void inlineObserverSeesEveryTransition() {
+		StateMachineImpl machine = new StateMachineImpl();
+		List<State> seen = new ArrayList<>();
+		machine.attach(seen::add);
+		machine.setState(S.ImageLoaded);
+		Assertions.assertFalse(machine.compareAndSet(S.NoImage, S.Processing));
+		Assertions.assertTrue(machine.compareAndSet(S.ImageLoaded, S.Processing));
+		Assertions.assertEquals(List.of(S.NoImage, S.ImageLoaded, S.Processing), seen);
+	}
+
+	// four threads changing the state at once, by setState or compareAndSet
+	private static void race(StateMachineImpl machine, boolean compareAndSet) throws InterruptedException {
+		int threads = 4;
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					for (int i = 0; i < 50; i++) {
+						S next = STATES[rnd.nextInt(STATES.length)];
+						if (compareAndSet) {
+							machine.compareAndSet(machine.getState(), next);
+						} else {
+							machine.setState(next);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+			thread.start();
+		}
+		start.countDown();
+		done.await();
+	}
+}